@@ -28,17 +28,21 @@ import org.apache.commons.lang3.Validate;
  */
 public final class Activity {
     private final Node node;
-    private final Instant time;
+    private final long time; // nanos since epoch (see Times), avoids holding on to an Instant per touch
 
     /**
      * Constructs a {@link Activity} object.
      * @param node node
      * @param time time
      * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code time} is outside of the range that can be held as nanoseconds since the epoch
      */
     Activity(Node node, Instant time) {
+        this(node, Times.toNanos(time));
+    }
+
+    Activity(Node node, long time) {
         Validate.notNull(node);
-        Validate.notNull(time);
         this.node = node;
         this.time = time;
     }
@@ -56,6 +60,10 @@ public final class Activity {
      * @return time
      */
     public Instant getTime() {
+        return Times.toInstant(time);
+    }
+
+    long getTimeNanos() {
         return time;
     }
 
@@ -63,7 +71,7 @@ public final class Activity {
     public int hashCode() {
         int hash = 3;
         hash = 31 * hash + Objects.hashCode(this.node);
-        hash = 31 * hash + Objects.hashCode(this.time);
+        hash = 31 * hash + Long.hashCode(this.time);
         return hash;
     }
 
@@ -79,7 +87,7 @@ public final class Activity {
         if (!Objects.equals(this.node, other.node)) {
             return false;
         }
-        if (!Objects.equals(this.time, other.time)) {
+        if (this.time != other.time) {
             return false;
         }
         return true;
@@ -87,7 +95,7 @@ public final class Activity {
 
     @Override
     public String toString() {
-        return "Activity{" + "node=" + node + ", time=" + time + '}';
+        return "Activity{" + "node=" + node + ", time=" + getTime() + '}';
     }
     
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.util.List;
+
+interface ActivityStore {
+    // Storage for the entries of a node set (see NodeLeastRecentSet / NodeMostRecentSet). Entries are addressed by position, and the node
+    // set is responsible for keeping them in order. Implementations may hand back new Node / Activity objects on every read rather than the
+    // ones that were inserted (see PackedActivityStore).
+    //
+    // Reads must not change the state of the store, so that a store can be read from multiple threads at once (see Router.findAll()).
+
+    int indexOf(Id id); // position of entry with id, or -1 if not found
+
+    long getTime(int idx);
+
+    String getLink(int idx);
+
+    Node getNode(int idx);
+
+    Activity get(int idx);
+
+    List<Activity> dump(); // all entries, in order
+
+    Activity insert(int idx, Node node, long time); // returns inserted entry
+
+    void remove(int idx);
+
+    int size();
+}
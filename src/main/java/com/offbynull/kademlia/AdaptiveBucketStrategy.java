@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * K-bucket strategy that sizes each k-bucket based on how much churn it's been seeing.
+ * <p>
+ * Feed this strategy the changes from operations performed on a router (see {@link #recordTouch(com.offbynull.kademlia.RouterChangeSet) }
+ * and {@link #recordStale(com.offbynull.kademlia.RouterChangeSet) }), and periodically call {@link #adapt(java.util.List) } followed by
+ * {@link Router#reconfigure() } to apply the new sizes. For each k-bucket, {@link #adapt(java.util.List) } looks at the rates observed
+ * since the last call ...
+ * <ul>
+ * <li>stale rate (nodes marked stale per touch) -- if high, nodes in the k-bucket are dying off often, so the k-bucket grows by 1 to keep
+ * enough live nodes around for lookups to succeed.</li>
+ * <li>replace rate (stale nodes replaced by cache nodes per touch) -- if high, the replacement cache is being drained often, so the
+ * replacement cache grows by 1.</li>
+ * </ul>
+ * If both rates are low, the k-bucket and its replacement cache both shrink by 1. Sizes are always kept between the minimum and maximum
+ * parameters. The total number of slots (k-bucket + replacement cache) across all k-buckets is capped -- if the cap is exceeded, slots are
+ * taken away from the k-buckets with the lowest churn first (replacement cache slots before k-bucket slots).
+ * <p>
+ * Adapted parameters keep the storage types (see {@link KBucketParameters#KBucketParameters(int, int, boolean, boolean) }) of
+ * {@code minimum}.
+ * @author Kasra Faghihi
+ */
+public final class AdaptiveBucketStrategy implements RouteTreeBucketStrategy {
+    private static final double HIGH_RATE = 0.25;
+    private static final double LOW_RATE = 0.05;
+
+    private final KBucketParameters minimum;
+    private final KBucketParameters maximum;
+    private final int maxTotalSlots;
+
+    private final HashMap<BitString, KBucketParameters> parameters; // prefix to current parameters (if missing, minimum is used)
+    private final HashMap<BitString, Rates> rates; // prefix to rates observed since last adapt
+
+    /**
+     * Constructs a {@link AdaptiveBucketStrategy} object. All k-buckets start off with {@code minimum}.
+     * @param minimum smallest k-bucket and replacement cache sizes to shrink to
+     * @param maximum largest k-bucket and replacement cache sizes to grow to
+     * @param maxTotalSlots maximum number of nodes that can be held across all k-buckets and replacement caches
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code minimum}'s k-bucket size is {@code 0}, if any part of {@code minimum} is larger than the
+     * same part of {@code maximum}, or if {@code maxTotalSlots} is negative
+     */
+    public AdaptiveBucketStrategy(KBucketParameters minimum, KBucketParameters maximum, int maxTotalSlots) {
+        Validate.notNull(minimum);
+        Validate.notNull(maximum);
+        Validate.isTrue(minimum.getBucketSize() > 0);
+        Validate.isTrue(minimum.getBucketSize() <= maximum.getBucketSize());
+        Validate.isTrue(minimum.getCacheSize() <= maximum.getCacheSize());
+        Validate.isTrue(maxTotalSlots >= 0);
+
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.maxTotalSlots = maxTotalSlots;
+        this.parameters = new HashMap<>();
+        this.rates = new HashMap<>();
+    }
+
+    @Override
+    public KBucketParameters getBucketParameters(BitString prefix) {
+        Validate.notNull(prefix);
+        return parameters.getOrDefault(prefix, minimum);
+    }
+
+    /**
+     * Records the changes from touching a node.
+     * @param changeSet changes returned by {@link Router#touch(java.time.Instant, com.offbynull.kademlia.Node) }
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public void recordTouch(RouterChangeSet changeSet) {
+        Validate.notNull(changeSet);
+
+        RouteTreeChangeSet routeTreeChangeSet = changeSet.getRouteTreeChangeSet();
+        Rates prefixRates = rates.computeIfAbsent(routeTreeChangeSet.getKBucketPrefix(), x -> new Rates());
+        prefixRates.touches++;
+        prefixRates.replaces += routeTreeChangeSet.getKBucketChangeSet().getBucketChangeSet().viewRemoved().size();
+    }
+
+    /**
+     * Records the changes from marking a node as stale.
+     * @param changeSet changes returned by {@link Router#stale(com.offbynull.kademlia.Node) } (or by
+     * {@link Router#unresponsive(java.time.Instant, com.offbynull.kademlia.Node) } if the node ended up being marked as stale)
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public void recordStale(RouterChangeSet changeSet) {
+        Validate.notNull(changeSet);
+
+        RouteTreeChangeSet routeTreeChangeSet = changeSet.getRouteTreeChangeSet();
+        Rates prefixRates = rates.computeIfAbsent(routeTreeChangeSet.getKBucketPrefix(), x -> new Rates());
+        prefixRates.stales++;
+        prefixRates.replaces += routeTreeChangeSet.getKBucketChangeSet().getBucketChangeSet().viewRemoved().size();
+    }
+
+    /**
+     * Recalculates k-bucket parameters from the rates observed since the last invocation of this method. Call
+     * {@link Router#reconfigure() } afterwards to apply the new parameters to existing k-buckets.
+     * @param prefixes prefixes of all k-buckets in the route tree (see {@link Router#dumpBucketPrefixes() }) -- used to cap the total
+     * number of slots
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     */
+    public void adapt(List<BitString> prefixes) {
+        Validate.notNull(prefixes);
+        Validate.noNullElements(prefixes);
+
+        // Grow or shrink based on rates
+        List<BitString> byChurn = new ArrayList<>(prefixes.size());
+        HashMap<BitString, Double> churns = new HashMap<>();
+        for (BitString prefix : prefixes) {
+            KBucketParameters current = getBucketParameters(prefix);
+            int bucketSize = current.getBucketSize();
+            int cacheSize = current.getCacheSize();
+
+            Rates prefixRates = rates.get(prefix);
+            double churn = 0.0;
+            if (prefixRates != null && prefixRates.touches > 0) {
+                double staleRate = (double) prefixRates.stales / prefixRates.touches;
+                double replaceRate = (double) prefixRates.replaces / prefixRates.touches;
+                churn = staleRate + replaceRate;
+
+                if (staleRate >= HIGH_RATE) {
+                    bucketSize++;
+                }
+                if (replaceRate >= HIGH_RATE) {
+                    cacheSize++;
+                }
+                if (staleRate < LOW_RATE && replaceRate < LOW_RATE) {
+                    bucketSize--;
+                    cacheSize--;
+                }
+            }
+
+            bucketSize = Math.max(minimum.getBucketSize(), Math.min(maximum.getBucketSize(), bucketSize));
+            cacheSize = Math.max(minimum.getCacheSize(), Math.min(maximum.getCacheSize(), cacheSize));
+            parameters.put(prefix, new KBucketParameters(bucketSize, cacheSize, current.isPacked(), current.isOffHeapCache()));
+
+            churns.put(prefix, churn);
+            byChurn.add(prefix);
+        }
+        rates.clear();
+
+        // Prefixes that aren't in the route tree anymore (e.g. k-bucket was split) shouldn't hang around
+        parameters.keySet().retainAll(churns.keySet());
+
+        // Enforce cap by taking slots away from the lowest churn k-buckets first
+        byChurn.sort((x, y) -> Double.compare(churns.get(x), churns.get(y)));
+        long totalSlots = 0L;
+        for (BitString prefix : prefixes) {
+            KBucketParameters current = parameters.get(prefix);
+            totalSlots += current.getBucketSize() + current.getCacheSize();
+        }
+        for (BitString prefix : byChurn) {
+            if (totalSlots <= maxTotalSlots) {
+                break;
+            }
+
+            KBucketParameters current = parameters.get(prefix);
+            long excess = totalSlots - maxTotalSlots;
+            int cacheReduction = (int) Math.min(excess, current.getCacheSize() - minimum.getCacheSize());
+            excess -= cacheReduction;
+            int bucketReduction = (int) Math.min(excess, current.getBucketSize() - minimum.getBucketSize());
+
+            parameters.put(prefix, new KBucketParameters(
+                    current.getBucketSize() - bucketReduction,
+                    current.getCacheSize() - cacheReduction,
+                    current.isPacked(),
+                    current.isOffHeapCache()));
+            totalSlots -= cacheReduction + bucketReduction;
+        }
+    }
+
+    private static final class Rates {
+        private int touches;
+        private int stales;
+        private int replaces;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.time.Duration;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Unresponsive node parameters. Dictates how long a {@link Router} locks a node that failed to respond, and how many times in a row a node
+ * can fail to respond before it gets marked as stale.
+ * <p>
+ * Each time a node fails to respond, it gets locked for an exponentially increasing backoff interval: {@code initialLockDuration} the
+ * first time, {@code initialLockDuration * 2} the second time, {@code initialLockDuration * 4} the third time, etc.. (capped at
+ * {@code maxLockDuration}). Once a node fails to respond more than {@code maxUnresponsiveCount} times in a row, it gets marked as stale.
+ * <p>
+ * Class is immutable.
+ * @author Kasra Faghihi
+ */
+public final class BackoffParameters {
+
+    private final Duration initialLockDuration;
+    private final Duration maxLockDuration;
+    private final int maxUnresponsiveCount;
+
+    /**
+     * Construct a {@link BackoffParameters} object.
+     * @param initialLockDuration duration to lock a node for the first time it fails to respond
+     * @param maxLockDuration maximum duration to lock a node for
+     * @param maxUnresponsiveCount maximum number of times in a row a node can fail to respond before it gets marked as stale ({@code 0}
+     * means mark as stale on the first failure, without ever locking)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if any duration is less than 1 millisecond, if {@code initialLockDuration > maxLockDuration}, or if
+     * {@code maxUnresponsiveCount} is negative
+     */
+    public BackoffParameters(Duration initialLockDuration, Duration maxLockDuration, int maxUnresponsiveCount) {
+        Validate.notNull(initialLockDuration);
+        Validate.notNull(maxLockDuration);
+        Validate.isTrue(initialLockDuration.toMillis() > 0L);
+        Validate.isTrue(maxLockDuration.compareTo(initialLockDuration) >= 0);
+        Validate.isTrue(maxUnresponsiveCount >= 0);
+        this.initialLockDuration = initialLockDuration;
+        this.maxLockDuration = maxLockDuration;
+        this.maxUnresponsiveCount = maxUnresponsiveCount;
+    }
+
+    Duration getInitialLockDuration() {
+        return initialLockDuration;
+    }
+
+    Duration getMaxLockDuration() {
+        return maxLockDuration;
+    }
+
+    int getMaxUnresponsiveCount() {
+        return maxUnresponsiveCount;
+    }
+
+    Duration getLockDuration(int unresponsiveCount) { // lock duration for the nth time in a row a node failed to respond (starts at 1)
+        Validate.isTrue(unresponsiveCount > 0);
+
+        // double until we hit the cap -- done in a loop rather than shifting so that it's impossible to overflow
+        Duration duration = initialLockDuration;
+        for (int i = 1; i < unresponsiveCount && duration.compareTo(maxLockDuration) < 0; i++) {
+            duration = duration.multipliedBy(2L);
+        }
+
+        return duration.compareTo(maxLockDuration) > 0 ? maxLockDuration : duration;
+    }
+}
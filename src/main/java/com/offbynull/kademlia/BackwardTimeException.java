@@ -37,7 +37,7 @@ public final class BackwardTimeException extends IllegalArgumentException {
         Validate.notNull(previousTime);
         Validate.notNull(inputTime);
         // what's the point of throwing an exception for going backwards in time if you're going forward in time?
-        Validate.isTrue(!inputTime.isBefore(previousTime));
+        Validate.isTrue(inputTime.isBefore(previousTime));
         this.previousTime = previousTime;
         this.inputTime = inputTime;
     }
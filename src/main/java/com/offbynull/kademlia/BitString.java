@@ -288,6 +288,35 @@ public final class BitString implements Serializable {
         return (data >>> offset) & mask;
     }
     
+    // Packs the raw bits of this bitstring in to 64-bit words, 8 bytes per word with the first byte in the lowest bits of the word. Used
+    // by packed k-bucket storage to hold on to IDs without holding on to objects. Words are only meaningful to unpackWords() and for
+    // equality checks against other packed bitstrings of the same length.
+    void packWords(long[] dst, int dstOffset) {
+        int byteIdx = 0;
+        int wordCount = calculateRequiredWordCount(bitLength);
+        for (int i = 0; i < wordCount; i++) {
+            long word = 0L;
+            int end = Math.min(byteIdx + 8, data.length);
+            for (int shift = 0; byteIdx < end; byteIdx++, shift += 8) {
+                word |= (data[byteIdx] & 0xFFL) << shift;
+            }
+            dst[dstOffset + i] = word;
+        }
+    }
+
+    // Inverse of packWords().
+    static BitString unpackWords(long[] src, int srcOffset, int bitLength) {
+        byte[] arr = new byte[calculateRequiredByteArraySize(bitLength)];
+        for (int i = 0; i < arr.length; i++) {
+            arr[i] = (byte) (src[srcOffset + (i >>> 3)] >>> ((i & 7) << 3));
+        }
+        return new BitString(arr, bitLength);
+    }
+
+    static int calculateRequiredWordCount(int bitLength) {
+        return (bitLength + 63) >>> 6;
+    }
+
     private static int calculateRequiredByteArraySize(int bitLength) {
         Validate.inclusiveBetween(0, Integer.MAX_VALUE, bitLength);
         
@@ -583,6 +612,26 @@ public final class BitString implements Serializable {
         return new BitString(dataCopy, end);
     }
 
+    // appends the lowest len bits of bits to a copy of this bitstring, most significant of those bits first (same order as
+    // Id.createFromLong()) -- avoids creating an intermediate bitstring to append
+    BitString appendBits(long bits, int len) {
+        Validate.isTrue(len >= 0 && len <= Long.SIZE);
+
+        int end = bitLength + len;
+        byte[] dataCopy = Arrays.copyOf(data, calculateRequiredByteArraySize(end));
+        for (int i = 0; i < len; i++) {
+            int pos = bitLength + i;
+            int bitMask = 1 << (pos % 8);
+            if (((bits >>> (len - 1 - i)) & 1L) != 0L) {
+                dataCopy[pos / 8] |= bitMask;
+            } else {
+                dataCopy[pos / 8] &= ~bitMask;
+            }
+        }
+
+        return new BitString(dataCopy, end);
+    }
+
     /**
      * Gets the maximum bit length for this bitstring.
      * @return max bit length for bitstring
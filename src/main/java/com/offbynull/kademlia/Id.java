@@ -215,6 +215,16 @@ public final class Id implements Serializable {
         return bitString;
     }
 
+    // see BitString.packWords()
+    void packWords(long[] dst, int dstOffset) {
+        bitString.packWords(dst, dstOffset);
+    }
+
+    // see BitString.unpackWords()
+    static Id unpackWords(long[] src, int srcOffset, int bitLength) {
+        return new Id(BitString.unpackWords(src, srcOffset, bitLength));
+    }
+
     @Override
     public int hashCode() {
         int hash = 3;
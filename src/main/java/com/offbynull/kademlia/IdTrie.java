@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Set of IDs that can be searched for the IDs closest to some target ID (by XOR metric).
+ * <p>
+ * IDs are held in a PATRICIA trie -- a binary trie where chains of single-child nodes are collapsed, so that each internal node sits at
+ * the first bit where the IDs underneath it differ. Every ID under the branch that matches the target's bit at an internal node is closer
+ * to the target than every ID under the other branch. So, walking the trie by always taking the matching branch first visits IDs from
+ * closest to furthest, and finding the {@code n} closest IDs only ever touches one path down the trie plus the internal nodes above the
+ * IDs that get returned: O(bitLength + n) no matter how many IDs are held.
+ * <p>
+ * Internal nodes are held as parallel primitive arrays rather than as objects, so the only object held per ID is the ID itself.
+ * <p>
+ * This class is not thread-safe.
+ * @author Kasra Faghihi
+ */
+public final class IdTrie {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int EMPTY = Integer.MIN_VALUE; // root of empty trie
+    private static final int NONE = -1; // no internal node / end of free list
+
+    // references to trie nodes are ints -- a reference >= 0 is the index of an internal node, and a reference < 0 is the index of a leaf
+    // bitwise-inverted (~ref gives back leaf index)
+    private final int bitLength;
+    private final Id allZerosId;
+    private int root;
+    private int size;
+
+    private int[] bits; // internal node to the bit offset it branches on
+    private int[] zeroChildren; // internal node to the branch for IDs with a 0 at that bit (doubles as the free list link if freed)
+    private int[] oneChildren; // internal node to the branch for IDs with a 1 at that bit
+    private int nodeCount; // internal nodes that have been handed out (indices >= this have never been used)
+    private int freeNodeHead;
+
+    private Id[] leaves; // leaf to ID (null if freed)
+    private int[] freeLeaves; // stack of leaves that have been freed and can be reused
+    private int freeLeafCount;
+    private int leafCount; // leaves that have been handed out (indices >= this have never been used)
+
+    /**
+     * Constructs a {@link IdTrie} object.
+     * @param bitLength bitlength of the IDs to hold
+     * @throws IllegalArgumentException if {@code bitLength} is {@code 0} or less
+     */
+    public IdTrie(int bitLength) {
+        Validate.isTrue(bitLength > 0);
+        this.bitLength = bitLength;
+        this.allZerosId = Id.create(new byte[(bitLength + 7) / 8], bitLength);
+        this.root = EMPTY;
+
+        this.bits = new int[INITIAL_CAPACITY];
+        this.zeroChildren = new int[INITIAL_CAPACITY];
+        this.oneChildren = new int[INITIAL_CAPACITY];
+        this.freeNodeHead = NONE;
+
+        this.leaves = new Id[INITIAL_CAPACITY];
+        this.freeLeaves = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds an ID.
+     * @param id ID to add
+     * @return {@code true} if this trie didn't already contain {@code id}, {@code false} otherwise
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code id} doesn't match the bitlength this trie was constructed with
+     */
+    public boolean add(Id id) {
+        Validate.notNull(id);
+        InternalValidate.matchesLength(bitLength, id);
+
+        if (root == EMPTY) {
+            root = ~allocateLeaf(id);
+            size++;
+            return true;
+        }
+
+        // Go down to the leaf that shares the longest prefix with id, then find the first bit where they differ. Bits skipped by the walk
+        // don't matter, because every ID under an internal node shares them.
+        Id closest = leaves[~findLeaf(id)];
+        int branchBit = id.getSharedPrefixLength(closest);
+        if (branchBit == bitLength) {
+            return false; // already in trie
+        }
+
+        // Go back down to the point where that bit belongs and splice in a new internal node
+        int parent = NONE;
+        boolean parentSide = false;
+        int ref = root;
+        while (ref >= 0 && bits[ref] < branchBit) {
+            parent = ref;
+            parentSide = getBit(id, bits[ref]);
+            ref = parentSide ? oneChildren[ref] : zeroChildren[ref];
+        }
+
+        int leafRef = ~allocateLeaf(id);
+        boolean side = getBit(id, branchBit);
+        int node = allocateNode(branchBit, side ? ref : leafRef, side ? leafRef : ref);
+        if (parent == NONE) {
+            root = node;
+        } else {
+            setChild(parent, parentSide, node);
+        }
+
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes an ID.
+     * @param id ID to remove
+     * @return {@code true} if this trie contained {@code id}, {@code false} otherwise
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code id} doesn't match the bitlength this trie was constructed with
+     */
+    public boolean remove(Id id) {
+        Validate.notNull(id);
+        InternalValidate.matchesLength(bitLength, id);
+
+        if (root == EMPTY) {
+            return false;
+        }
+
+        int grandparent = NONE;
+        boolean grandparentSide = false;
+        int parent = NONE;
+        boolean parentSide = false;
+        int ref = root;
+        while (ref >= 0) {
+            grandparent = parent;
+            grandparentSide = parentSide;
+            parent = ref;
+            parentSide = getBit(id, bits[ref]);
+            ref = parentSide ? oneChildren[ref] : zeroChildren[ref];
+        }
+
+        if (!leaves[~ref].equals(id)) {
+            return false;
+        }
+        freeLeaf(~ref);
+
+        // Parent is left with a single child, so collapse it by having its other child take its place
+        if (parent == NONE) {
+            root = EMPTY;
+        } else {
+            int sibling = parentSide ? zeroChildren[parent] : oneChildren[parent];
+            if (grandparent == NONE) {
+                root = sibling;
+            } else {
+                setChild(grandparent, grandparentSide, sibling);
+            }
+            freeNode(parent);
+        }
+
+        size--;
+        return true;
+    }
+
+    /**
+     * Checks if an ID is in this trie.
+     * @param id ID to check for
+     * @return {@code true} if this trie contains {@code id}, {@code false} otherwise
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code id} doesn't match the bitlength this trie was constructed with
+     */
+    public boolean contains(Id id) {
+        Validate.notNull(id);
+        InternalValidate.matchesLength(bitLength, id);
+
+        return root != EMPTY && leaves[~findLeaf(id)].equals(id);
+    }
+
+    /**
+     * Get the number of IDs in this trie.
+     * @return number of IDs in this trie
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the IDs closest to some target ID (by XOR metric). Runs in O(bitLength + max).
+     * @param id target ID
+     * @param max maximum number of IDs to return
+     * @return up to {@code max} IDs in this trie, ordered from closest to {@code id} to furthest from {@code id}
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code max} is negative
+     * @throws IdLengthMismatchException if the bitlength of {@code id} doesn't match the bitlength this trie was constructed with
+     */
+    public List<Id> nearest(Id id, int max) {
+        Validate.notNull(id);
+        Validate.isTrue(max >= 0);
+        InternalValidate.matchesLength(bitLength, id);
+
+        List<Id> ret = new ArrayList<>(Math.min(max, size));
+        if (max > 0) {
+            visit(root, id, true, x -> {
+                ret.add(x);
+                return ret.size() < max;
+            });
+        }
+        return ret;
+    }
+
+    /**
+     * Get the IDs that start with some prefix.
+     * @param prefix prefix to check for
+     * @return IDs in this trie that start with {@code prefix}, ordered by their bits
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if the bitlength of {@code prefix} is larger than the bitlength this trie was constructed with
+     */
+    public List<Id> getWithPrefix(BitString prefix) {
+        Validate.notNull(prefix);
+        Validate.isTrue(prefix.getBitLength() <= bitLength);
+
+        List<Id> ret = new ArrayList<>();
+        if (root == EMPTY) {
+            return ret;
+        }
+
+        // Go down to the subtree whose IDs all share the first prefix-length bits, then make sure those bits actually are prefix (the
+        // walk skips over bits)
+        int prefixLength = prefix.getBitLength();
+        int ref = root;
+        while (ref >= 0 && bits[ref] < prefixLength) {
+            ref = prefix.getBit(bits[ref]) ? oneChildren[ref] : zeroChildren[ref];
+        }
+
+        int leafRef = ref;
+        while (leafRef >= 0) {
+            leafRef = zeroChildren[leafRef];
+        }
+        Id leaf = leaves[~leafRef];
+        for (int i = 0; i < prefixLength; i++) {
+            if (getBit(leaf, i) != prefix.getBit(i)) {
+                return ret;
+            }
+        }
+
+        visit(ref, allZerosId, true, x -> ret.add(x)); // closest to all zeros first is plain bit order
+        return ret;
+    }
+
+    /**
+     * Visits IDs from closest to furthest from some target ID (by XOR metric), stopping once the visitor returns {@code false}.
+     * @param id target ID
+     * @param visitor invoked with each ID, returns {@code false} to stop
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code id} doesn't match the bitlength this trie was constructed with
+     */
+    public void visitNearest(Id id, Predicate<Id> visitor) {
+        Validate.notNull(id);
+        Validate.notNull(visitor);
+        InternalValidate.matchesLength(bitLength, id);
+
+        visit(root, id, true, visitor);
+    }
+
+    /**
+     * Visits IDs from furthest to closest from some target ID (by XOR metric), stopping once the visitor returns {@code false}.
+     * @param id target ID
+     * @param visitor invoked with each ID, returns {@code false} to stop
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code id} doesn't match the bitlength this trie was constructed with
+     */
+    public void visitFurthest(Id id, Predicate<Id> visitor) {
+        Validate.notNull(id);
+        Validate.notNull(visitor);
+        InternalValidate.matchesLength(bitLength, id);
+
+        visit(root, id, false, visitor);
+    }
+
+    private void visit(int start, Id id, boolean nearestFirst, Predicate<Id> visitor) {
+        if (start == EMPTY) {
+            return;
+        }
+
+        // Bits branched on strictly increase going down, so a path down the trie never has more than bitLength internal nodes -- that's
+        // also the most branches that can be waiting on the stack at any one time
+        int[] pending = new int[bitLength + 1];
+        int pendingCount = 0;
+        pending[pendingCount++] = start;
+        while (pendingCount > 0) {
+            int ref = pending[--pendingCount];
+            while (ref >= 0) {
+                boolean firstSide = getBit(id, bits[ref]) == nearestFirst; // side matching id's bit is closer
+                pending[pendingCount++] = firstSide ? zeroChildren[ref] : oneChildren[ref];
+                ref = firstSide ? oneChildren[ref] : zeroChildren[ref];
+            }
+            if (!visitor.test(leaves[~ref])) {
+                return;
+            }
+        }
+    }
+
+    private int findLeaf(Id id) { // leaf reached by following id's bits, trie must not be empty
+        int ref = root;
+        while (ref >= 0) {
+            ref = getBit(id, bits[ref]) ? oneChildren[ref] : zeroChildren[ref];
+        }
+        return ref;
+    }
+
+    private void setChild(int node, boolean side, int child) {
+        if (side) {
+            oneChildren[node] = child;
+        } else {
+            zeroChildren[node] = child;
+        }
+    }
+
+    private int allocateNode(int bit, int zeroChild, int oneChild) {
+        int node;
+        if (freeNodeHead != NONE) {
+            node = freeNodeHead;
+            freeNodeHead = zeroChildren[node];
+        } else {
+            if (nodeCount == bits.length) {
+                int newCapacity = bits.length * 2;
+                bits = Arrays.copyOf(bits, newCapacity);
+                zeroChildren = Arrays.copyOf(zeroChildren, newCapacity);
+                oneChildren = Arrays.copyOf(oneChildren, newCapacity);
+            }
+            node = nodeCount;
+            nodeCount++;
+        }
+
+        bits[node] = bit;
+        zeroChildren[node] = zeroChild;
+        oneChildren[node] = oneChild;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        zeroChildren[node] = freeNodeHead;
+        freeNodeHead = node;
+    }
+
+    private int allocateLeaf(Id id) {
+        int leaf;
+        if (freeLeafCount > 0) {
+            freeLeafCount--;
+            leaf = freeLeaves[freeLeafCount];
+        } else {
+            if (leafCount == leaves.length) {
+                int newCapacity = leaves.length * 2;
+                leaves = Arrays.copyOf(leaves, newCapacity);
+                freeLeaves = Arrays.copyOf(freeLeaves, newCapacity);
+            }
+            leaf = leafCount;
+            leafCount++;
+        }
+
+        leaves[leaf] = id;
+        return leaf;
+    }
+
+    private void freeLeaf(int leaf) {
+        leaves[leaf] = null;
+        freeLeaves[freeLeafCount] = leaf;
+        freeLeafCount++;
+    }
+
+    private static boolean getBit(Id id, int offset) {
+        return id.getBitString().getBit(offset);
+    }
+}
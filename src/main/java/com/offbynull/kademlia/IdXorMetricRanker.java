@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Ranks batches of IDs by their distance (by XOR metric) to a pre-defined ID. Equivalent to sorting with {@link IdXorMetricComparator},
+ * but meant for ranking large batches of IDs (e.g. the nodes returned by a round of lookups) in one go.
+ * <p>
+ * IDs are first packed in to a flat {@code long[]} (see {@link #pack(java.util.List) }), where each ID takes up {@link #getWordCount() }
+ * consecutive words and the ID's first bit is the highest bit of its first word. Laid out like that, the XOR of an ID's words against the
+ * pre-defined ID's words is the distance itself, and comparing distances is a plain unsigned comparison of words. Ranking a batch is then
+ * a single tight pass over primitive arrays to calculate distances followed by a bounded heap selection of the closest, rather than one
+ * comparator call (and the bit-by-bit extraction that comes with it) per pair of IDs.
+ * <p>
+ * Class is immutable.
+ * @author Kasra Faghihi
+ */
+public final class IdXorMetricRanker {
+    private final int bitLength;
+    private final int wordCount;
+    private final long[] baseWords;
+
+    /**
+     * Constructs a {@link IdXorMetricRanker} object.
+     * @param baseId ID to calculate distance against
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public IdXorMetricRanker(Id baseId) {
+        Validate.notNull(baseId);
+        this.bitLength = baseId.getBitLength();
+        this.wordCount = BitString.calculateRequiredWordCount(bitLength);
+        this.baseWords = new long[wordCount];
+        packInto(baseId, baseWords, 0);
+    }
+
+    /**
+     * Get the number of words each ID takes up once packed.
+     * @return number of words per packed ID
+     */
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Packs IDs in to a flat array of words, in the layout expected by {@link #distances(long[]) } and {@link #rank(long[], int) }.
+     * @param ids IDs to pack
+     * @return {@code ids} packed, with the ID at index {@code i} starting at word {@code i * getWordCount()}
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IdLengthMismatchException if the bitlength of any ID in {@code ids} doesn't match the bitlength of the ID being ranked
+     * against
+     */
+    public long[] pack(List<Id> ids) {
+        Validate.notNull(ids);
+        Validate.noNullElements(ids);
+
+        long[] packed = new long[ids.size() * wordCount];
+        int offset = 0;
+        for (Id id : ids) {
+            InternalValidate.matchesLength(bitLength, id);
+            packInto(id, packed, offset);
+            offset += wordCount;
+        }
+        return packed;
+    }
+
+    /**
+     * Calculates the distance of each packed ID to the ID being ranked against. Distances are in the same layout as the packed IDs, and
+     * comparing them word by word (unsigned) gives the same result as {@link IdXorMetricComparator}.
+     * @param packedIds IDs packed by {@link #pack(java.util.List) }
+     * @return distances of {@code packedIds}
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if the length of {@code packedIds} isn't a multiple of {@link #getWordCount() }
+     */
+    public long[] distances(long[] packedIds) {
+        Validate.notNull(packedIds);
+        Validate.isTrue(packedIds.length % wordCount == 0);
+
+        long[] ret = new long[packedIds.length];
+        if (wordCount == 1) { // common case of IDs that fit in a single word -- simple loop that the JIT can unroll / vectorize
+            long baseWord = baseWords[0];
+            for (int i = 0; i < packedIds.length; i++) {
+                ret[i] = packedIds[i] ^ baseWord;
+            }
+        } else {
+            for (int i = 0; i < packedIds.length; i += wordCount) {
+                for (int w = 0; w < wordCount; w++) {
+                    ret[i + w] = packedIds[i + w] ^ baseWords[w];
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Ranks packed IDs by their distance to the ID being ranked against. Runs in O(n log max).
+     * @param packedIds IDs packed by {@link #pack(java.util.List) }
+     * @param max maximum number of IDs to return
+     * @return indices (in to the list that was packed) of the up to {@code max} closest IDs, ordered from closest to furthest -- IDs
+     * of the same distance are ordered by index
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code max} is negative, or if the length of {@code packedIds} isn't a multiple of
+     * {@link #getWordCount() }
+     */
+    public int[] rank(long[] packedIds, int max) {
+        Validate.isTrue(max >= 0);
+        long[] dists = distances(packedIds);
+
+        // Bounded max-heap holding the closest found so far, with the furthest of them at the top. An index only gets in if it's closer
+        // than the top, so most of a large batch is rejected with a single comparison.
+        int count = packedIds.length / wordCount;
+        int[] heap = new int[Math.min(max, count)];
+        int heapSize = 0;
+        for (int i = 0; i < count; i++) {
+            if (heapSize < heap.length) {
+                heap[heapSize] = i;
+                siftUp(dists, heap, heapSize);
+                heapSize++;
+            } else if (heapSize > 0 && compare(dists, i, heap[0]) < 0) {
+                heap[0] = i;
+                siftDown(dists, heap, heapSize, 0);
+            }
+        }
+
+        // Pop furthest off the top in to the back, leaving the heap ordered closest to furthest
+        while (heapSize > 1) {
+            heapSize--;
+            int top = heap[0];
+            heap[0] = heap[heapSize];
+            heap[heapSize] = top;
+            siftDown(dists, heap, heapSize, 0);
+        }
+        return heap;
+    }
+
+    /**
+     * Ranks IDs by their distance to the ID being ranked against. Equivalent to packing {@code ids} and calling
+     * {@link #rank(long[], int) }.
+     * @param ids IDs to rank
+     * @param max maximum number of IDs to return
+     * @return up to {@code max} closest IDs, ordered from closest to furthest
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if {@code max} is negative
+     * @throws IdLengthMismatchException if the bitlength of any ID in {@code ids} doesn't match the bitlength of the ID being ranked
+     * against
+     */
+    public List<Id> rank(List<Id> ids, int max) {
+        int[] indices = rank(pack(ids), max);
+        List<Id> ret = new ArrayList<>(indices.length);
+        for (int idx : indices) {
+            ret.add(ids.get(idx));
+        }
+        return ret;
+    }
+
+    // the ID's first bit goes in to the highest bit of the first word, so unsigned word order is bit string order
+    private void packInto(Id id, long[] dst, int dstOffset) {
+        id.packWords(dst, dstOffset); // first bit ends up in lowest bit of first word (see BitString.packWords())
+        for (int w = 0; w < wordCount; w++) {
+            dst[dstOffset + w] = Long.reverse(dst[dstOffset + w]);
+        }
+        int unusedBits = wordCount * Long.SIZE - bitLength;
+        if (unusedBits > 0) {
+            dst[dstOffset + wordCount - 1] &= -1L << unusedBits;
+        }
+    }
+
+    // compares a distance in dists1 against a distance in dists2 (both of wordCount words), negative if the first is closer
+    static int compareDistances(long[] dists1, int offset1, long[] dists2, int offset2, int wordCount) {
+        for (int w = 0; w < wordCount; w++) {
+            int res = Long.compareUnsigned(dists1[offset1 + w], dists2[offset2 + w]);
+            if (res != 0) {
+                return res;
+            }
+        }
+        return 0;
+    }
+
+    private int compare(long[] dists, int idx1, int idx2) {
+        int res = compareDistances(dists, idx1 * wordCount, dists, idx2 * wordCount, wordCount);
+        return res != 0 ? res : Integer.compare(idx1, idx2);
+    }
+
+    private void siftUp(long[] dists, int[] heap, int pos) {
+        int idx = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (compare(dists, heap[parent], idx) >= 0) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = idx;
+    }
+
+    private void siftDown(long[] dists, int[] heap, int size, int pos) {
+        int idx = heap[pos];
+        while (true) {
+            int child = pos * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && compare(dists, heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (compare(dists, heap[child], idx) <= 0) {
+                break;
+            }
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = idx;
+    }
+}
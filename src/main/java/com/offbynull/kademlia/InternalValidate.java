@@ -21,6 +21,11 @@ import org.apache.commons.lang3.Validate;
 
 final class InternalValidate {
 
+    // Arguments are validated once, at the public entry point. Internal entry points (called only from within this package, with arguments
+    // that have already been validated) skip re-validating unless this is set. Turn it on with -Dcom.offbynull.kademlia.debug=true when
+    // tracking down a bug in this package.
+    static final boolean DEBUG = Boolean.getBoolean("com.offbynull.kademlia.debug");
+
     private InternalValidate() {
         // do nothing
     }
@@ -69,6 +74,22 @@ final class InternalValidate {
         }
     }
 
+    static void forwardTime(long previousTime, long currentTime) { // nanos since epoch (see Times)
+        if (currentTime < previousTime) {
+            throw new BackwardTimeException(Times.toInstant(previousTime), Times.toInstant(currentTime));
+        }
+    }
+
+    // same as forwardTime(), but lets through times that are up to tolerance (nanos) before previousTime
+    static void forwardTime(long previousTime, long currentTime, long tolerance) { // nanos since epoch (see Times)
+        if (currentTime < previousTime) {
+            long behind = previousTime - currentTime; // negative if overflowed, in which case it's way outside of any tolerance
+            if (behind < 0L || behind > tolerance) {
+                throw new BackwardTimeException(Times.toInstant(previousTime), Times.toInstant(currentTime));
+            }
+        }
+    }
+
     static void matchesPrefix(BitString expectedPrefix, Id id) {
         // throws illegalstateexception, because if you made it to this point you should never encounter these conditions
         Validate.validState(id != null);
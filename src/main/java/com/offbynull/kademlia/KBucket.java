@@ -16,6 +16,7 @@
  */
 package com.offbynull.kademlia;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import static java.util.Collections.emptyList;
@@ -25,6 +26,7 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Supplier;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 
@@ -49,6 +51,8 @@ public final class KBucket {
     // the way thigns are done, cache and bucket should never contain the same node id at the same time
     private final NodeLeastRecentSet bucket;
     private final NodeMostRecentSet cache;
+    private final Supplier<ActivityStore> bucketStoreFactory; // storage for bucket / cache, handed down to k-buckets generated by split()
+    private final Supplier<ActivityStore> cacheStoreFactory;
     
     // i thought about using predicates instead of internally holding on to this information in the sets below but accepting predicates from
     // the outside introduces problems: 1. design becomes more convoluted / less understandable 2. the logic for which an item is determined
@@ -59,7 +63,10 @@ public final class KBucket {
     private final Set<Id> staleSet; // stale nodes are returned by dumpBucket?
     private final Set<Id> lockSet; // locked nodes aren't returned by dumpBucket?
 
-    private Instant lastTouchAttemptTime;
+    private long lastTouchAttemptTime; // nanos since epoch (see Times)
+    private long touchTolerance; // nanos, how far before lastTouchAttemptTime a touch is allowed to be (see setTouchTolerance())
+
+    private long version; // bumped on every modification, so cached reads of this k-bucket can tell if they're still valid
 
     /**
      * Constructs a {@link KBucket} object.
@@ -72,6 +79,11 @@ public final class KBucket {
      * {@code 0}
      */
     public KBucket(Id baseId, BitString prefix, int maxBucketSize, int maxCacheSize) {
+        this(baseId, prefix, maxBucketSize, maxCacheSize, ObjectActivityStore::new, ObjectActivityStore::new);
+    }
+
+    KBucket(Id baseId, BitString prefix, int maxBucketSize, int maxCacheSize,
+            Supplier<ActivityStore> bucketStoreFactory, Supplier<ActivityStore> cacheStoreFactory) {
         Validate.notNull(baseId);
         Validate.isTrue(prefix.getBitLength() <= baseId.getBitLength());
         // Let this thru anyways, because without it bucket splitting logic will become slightly more convolouted. That is, in a certain
@@ -84,12 +96,14 @@ public final class KBucket {
 
         this.baseId = baseId;
         this.prefix = prefix;
-        this.bucket = new NodeLeastRecentSet(baseId, maxBucketSize);
-        this.cache = new NodeMostRecentSet(baseId, maxCacheSize);
+        this.bucketStoreFactory = bucketStoreFactory;
+        this.cacheStoreFactory = cacheStoreFactory;
+        this.bucket = new NodeLeastRecentSet(baseId, maxBucketSize, bucketStoreFactory.get());
+        this.cache = new NodeMostRecentSet(baseId, maxCacheSize, cacheStoreFactory.get());
         this.staleSet = new LinkedHashSet<>(); // maintain order they're added, when replacing we want to replace oldest stale first
         this.lockSet = new HashSet<>();
         
-        lastTouchAttemptTime = Instant.MIN;
+        lastTouchAttemptTime = Times.MIN;
     }
 
     /**
@@ -108,11 +122,13 @@ public final class KBucket {
      * @param node node which issued the request or response
      * @return changes to collection of stored nodes and replacement cache
      * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code time} is outside of the range that can be held as nanoseconds since the epoch
      * @throws IdLengthMismatchException if the bitlength of {@code node}'s ID doesn't match the bitlength of the owning node's ID (the ID
      * of the node this k-bucket belongs to)
      * @throws BaseIdMatchException if {@code node}'s ID is the same as the owning node's ID (the ID of the node this k-bucket belongs to)
      * @throws IdPrefixMismatchException if {@code node}'s ID doesn't match the prefix required by this k-bucket
-     * @throws BackwardTimeException if {@code time} is less than the time used in the previous invocation of this method
+     * @throws BackwardTimeException if {@code time} is less than the latest time used in previous invocations of this method by more
+     * than the touch tolerance (see {@link #setTouchTolerance(java.time.Duration) })
      * @throws LinkMismatchException if this k-bucket already contains a node with {@code node}'s ID but with a different link (SPECIAL
      * CASE: If the contained node is marked as stale, this exception will not be thrown. Since the node is marked as stale, it means it
      * should have been replaced but the replacement cache was empty. As such, this case is treated as if this were a new node replacing
@@ -123,21 +139,46 @@ public final class KBucket {
         Validate.notNull(time);
         Validate.notNull(node);
 
-        Id nodeId = node.getId();
+        long timeNanos = Times.toNanos(time);
+        validateTouch(timeNanos, node);
+        return touch(timeNanos, node);
+    }
 
-        InternalValidate.matchesLength(baseId.getBitLength(), nodeId);
-        InternalValidate.notMatchesBase(baseId, nodeId);
-        InternalValidate.matchesPrefix(prefix, nodeId);
+    // internal entry point, caller must have validated arguments (see InternalValidate) -- time is nanos since epoch (see Times)
+    KBucketChangeSet touch(long time, Node node) {
+        return touch(time, node, false);
+    }
 
-        InternalValidate.forwardTime(lastTouchAttemptTime, time); // time must be >= lastUpdatedTime
-        lastTouchAttemptTime = time;
+    // same as touch(long, Node), but if replaceLink is true and the bucket has a node with node's ID but a different link, that node gets
+    // replaced by node rather than a LinkMismatchException being thrown -- the replacement is touched like any other node, so it moves to
+    // the most recently seen end of the bucket
+    KBucketChangeSet touch(long time, Node node, boolean replaceLink) {
+        if (InternalValidate.DEBUG) {
+            Validate.notNull(node);
+            validateTouch(time, node);
+        }
+        version++;
+
+        Id nodeId = node.getId();
+
+        boolean late = time < lastTouchAttemptTime; // within touch tolerance, otherwise it wouldn't have made it here
+        lastTouchAttemptTime = Math.max(lastTouchAttemptTime, time);
         
         // Touch the bucket
         //
         // SPECIAL CASE: If the touch is from a ID that's in the stale set but has a different link, let it through (DO NOT THROW A
         // LINKMISMATCHEXCEPTION). Since the ID is marked as being stale, it means it needs to be replaced but there were no other items in
         // the cache to replace it with. As such, just treat it as if we're replacing an item with a new cache item.
-        ActivityChangeSet bucketTouchRes = bucket.touch(time, node, staleSet.contains(nodeId));
+        //
+        // SPECIAL CASE: If the touch is late and it's for a new node but the bucket is full, don't touch the bucket. The late node would go
+        // in before the latest node in the bucket, which would force that node out -- nodes in the bucket never get pushed out by new
+        // nodes, so send it to the cache like it would've had it came in on time.
+        ActivityChangeSet bucketTouchRes;
+        if (late && bucket.size() >= bucket.maxSize() && bucket.get(nodeId) == null) {
+            bucketTouchRes = ActivityChangeSet.NO_CHANGE;
+        } else {
+            bucketTouchRes = bucket.touch(time, node, replaceLink || staleSet.contains(nodeId));
+        }
         Validate.validState(bucketTouchRes.viewRemoved().isEmpty()); // sanity check, should never remove anything when touching bucket
         if (!bucketTouchRes.viewAdded().isEmpty() || !bucketTouchRes.viewUpdated().isEmpty()) {
             // node was added to bucket, or node was already in bucket and was updated
@@ -171,6 +212,27 @@ public final class KBucket {
         return new KBucketChangeSet(bucketTouchRes, cacheTouchRes);
     }
     
+    /**
+     * Sets how far back in time touches are allowed to go. By default, the time passed in to
+     * {@link #touch(java.time.Instant, com.offbynull.kademlia.Node) } must never be before the time used in a previous invocation (any
+     * touch that goes backwards in time gets rejected). If touches are coming in from multiple sources (e.g. timestamped on different
+     * threads), they may arrive slightly out of order.
+     * <p>
+     * With a touch tolerance set, touches that are late by no more than {@code tolerance} are accepted and placed in the position they
+     * would have been in had they arrived on time. A node that's touched late never has its time moved backwards (if the node was touched
+     * at a later time than the late touch, the late touch only has the same effect as a touch at that later time) and a late touch never
+     * pushes a node out of a full k-bucket (it goes in to the replacement cache instead).
+     * @param tolerance how far before the latest touch time a touch is allowed to be, or {@link Duration#ZERO} to reject all touches that
+     * go backwards in time
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code tolerance} is negative
+     */
+    public void setTouchTolerance(Duration tolerance) {
+        Validate.notNull(tolerance);
+        Validate.isTrue(!tolerance.isNegative());
+        touchTolerance = tolerance.toNanos();
+    }
+
     /**
      * Marks a node within this k-bucket as stale (meaning that you're no longer able to communicate with it), evicting it and replacing it
      * with the most recent node in the replacement cache. If the replacement cache is empty, the node is marked as stale and will be
@@ -195,6 +257,7 @@ public final class KBucket {
         // there's no time param here because technically because it isn't needed. marking a node as stale doesn't mean that it recieved
         // comm, as such it's wrong to update its time.
         Validate.notNull(node);
+        version++;
         
         Id nodeId = node.getId();
 
@@ -242,6 +305,7 @@ public final class KBucket {
      */
     public void lock(Node node) {
         Validate.notNull(node);
+        version++;
         
         Id nodeId = node.getId();
 
@@ -271,6 +335,7 @@ public final class KBucket {
      */
     public void unlock(Node node) {
         Validate.notNull(node);
+        version++;
         
         Id nodeId = node.getId();
 
@@ -284,6 +349,120 @@ public final class KBucket {
         lockSet.remove(nodeId); // remove from lock set, it's fine if it's already in the lockset
     }
 
+    // Bulk-loads an empty k-bucket. Equivalent to calling touch() for each entry in order, but without the per-touch scans. Entries must
+    // be sorted by time (earliest first), have unique IDs, and match this k-bucket's prefix.
+    //
+    // When touching in time order, the bucket keeps the first nodes it sees (it only ever discards nodes that were touched after it
+    // filled up) and the cache keeps the last nodes it sees. So the first maxBucketSize entries go in to the bucket, and the last
+    // maxCacheSize entries of whatever's left go in to the cache.
+    KBucketChangeSet load(List<Activity> sortedEntries) {
+        Validate.notNull(sortedEntries);
+        version++;
+        Validate.validState(bucket.size() == 0 && cache.size() == 0); // must be empty
+        for (Activity entry : sortedEntries) {
+            Id nodeId = entry.getNode().getId();
+            InternalValidate.matchesLength(baseId.getBitLength(), nodeId);
+            InternalValidate.notMatchesBase(baseId, nodeId);
+            InternalValidate.matchesPrefix(prefix, nodeId);
+        }
+
+        int size = sortedEntries.size();
+        int bucketCount = Math.min(size, bucket.maxSize());
+        int cacheCount = Math.min(size - bucketCount, cache.maxSize());
+        List<Activity> bucketEntries = new ArrayList<>(sortedEntries.subList(0, bucketCount));
+        List<Activity> cacheEntries = new ArrayList<>(sortedEntries.subList(size - cacheCount, size));
+
+        bucket.load(bucketEntries);
+        cache.load(cacheEntries);
+
+        if (size > 0) {
+            long lastTime = sortedEntries.get(size - 1).getTimeNanos();
+            InternalValidate.forwardTime(lastTouchAttemptTime, lastTime); // time must be >= lastUpdatedTime
+            lastTouchAttemptTime = lastTime;
+        }
+
+        return new KBucketChangeSet(ActivityChangeSet.added(bucketEntries), ActivityChangeSet.added(cacheEntries));
+    }
+
+    // true if touching node would push it in to the cache rather than the bucket (bucket is full, nothing in it is stale, and node isn't
+    // already in it)
+    boolean isFullFor(Node node) {
+        Validate.notNull(node);
+        return bucket.size() >= bucket.maxSize() && staleSet.isEmpty() && bucket.get(node.getId()) == null;
+    }
+
+    int getMaxBucketSize() {
+        return bucket.maxSize();
+    }
+
+    int getMaxCacheSize() {
+        return cache.maxSize();
+    }
+
+    private void validateTouch(long time, Node node) {
+        Id nodeId = node.getId();
+
+        InternalValidate.matchesLength(baseId.getBitLength(), nodeId);
+        InternalValidate.notMatchesBase(baseId, nodeId);
+        InternalValidate.matchesPrefix(prefix, nodeId);
+
+        InternalValidate.forwardTime(lastTouchAttemptTime, time, touchTolerance); // time must be >= lastUpdatedTime - touchTolerance
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    // Applies a touch that a route tree held back (see RouteTree.setTouchCoalescing()). The node must already be in the bucket (not the
+    // cache) and not be stale or locked. Unlike touch(), time may be before the last touch -- the node gets moved to wherever it would
+    // have been had it been touched at that time.
+    void applyHeldTouch(long time, Node node) {
+        version++;
+        ActivityChangeSet res = bucket.touch(time, node, false);
+        Validate.validState(res.viewUpdated().size() == 1); // sanity check, must have already been in bucket
+        lastTouchAttemptTime = Math.max(lastTouchAttemptTime, time);
+    }
+
+    // Empties this k-bucket without reporting anything. Used when this k-bucket gets replaced in a route tree (e.g. by the k-buckets it
+    // was split in to), so that the references it holds in a shared link table get released.
+    void discard() {
+        version++;
+        bucket.resize(0);
+        cache.resize(0);
+        staleSet.clear();
+        lockSet.clear();
+    }
+
+    // node with id in either bucket or cache, or null if this k-bucket doesn't contain it
+    Activity get(Id id) {
+        Activity entry = bucket.getActivity(id);
+        return entry != null ? entry : cache.getActivity(id);
+    }
+
+    // node with id in bucket (not cache), or null if the bucket doesn't contain it
+    Node getBucketNode(Id id) {
+        return bucket.get(id);
+    }
+
+    boolean isInCache(Id id) {
+        return cache.getActivity(id) != null;
+    }
+
+    boolean isInStaleSet(Id id) {
+        return staleSet.contains(id);
+    }
+
+    boolean isInLockSet(Id id) {
+        return lockSet.contains(id);
+    }
+
+    // throws NodeNotFoundException if node isn't in bucket, or LinkMismatchException if node in bucket has a different link
+    boolean isStale(Node node) {
+        Validate.notNull(node);
+        InternalValidate.exists(node, bucket);
+        return staleSet.contains(node.getId());
+    }
+
     // return is left=removed right=added
     private ImmutablePair<Activity, Activity> replaceNextStaleNodeWithCacheNode() {
         if (staleSet.isEmpty()) {
@@ -313,7 +492,7 @@ public final class KBucket {
         Validate.validState(cacheRemoveRes.viewRemoved().size() == 1); // sanity check, should always remove 1 node
         Activity cacheEntry = cacheRemoveRes.viewRemoved().get(0);
         try {
-            bucketTouchRes = bucket.touch(cacheEntry.getTime(), cacheEntry.getNode(), false);
+            bucketTouchRes = bucket.touch(cacheEntry.getTimeNanos(), cacheEntry.getNode(), false);
         } catch (LinkMismatchException ece) {
             // should never throw EntryConflictException
             throw new IllegalStateException(ece);
@@ -371,8 +550,9 @@ public final class KBucket {
         for (int i = 0; i < len; i++) {
             BitString numAsBitString = toBitString(i, bitCount);
             BitString appendedBitString = prefix.appendBits(numAsBitString);
-            newKBuckets[i] = new KBucket(baseId, appendedBitString, maxBucketSize, maxCacheSize);
+            newKBuckets[i] = new KBucket(baseId, appendedBitString, maxBucketSize, maxCacheSize, bucketStoreFactory, cacheStoreFactory);
             newKBuckets[i].lastTouchAttemptTime = lastTouchAttemptTime; // keep touch attempt time updated
+            newKBuckets[i].touchTolerance = touchTolerance;
         }
         
         
@@ -392,7 +572,7 @@ public final class KBucket {
             // Touch bucket and mark as stale
             ActivityChangeSet res;
             try {
-                res = newKBuckets[idx].bucket.touch(entry.getTime(), node, false);
+                res = newKBuckets[idx].bucket.touch(entry.getTimeNanos(), node, false);
                 // FYI: If there are stale items, it means the cache is empty. Otherwise they would have been replaced if as soon as a cache
                 // node entered the bucket.
                 if (staleSet.contains(id)) {
@@ -426,7 +606,7 @@ public final class KBucket {
             // Touch cache
             ActivityChangeSet res;
             try {
-                res = newKBuckets[idx].cache.touch(entry.getTime(), node, false);
+                res = newKBuckets[idx].cache.touch(entry.getTimeNanos(), node, false);
             } catch (LinkMismatchException ece) {
                 // should never happen
                 throw new IllegalStateException(ece);
@@ -458,6 +638,7 @@ public final class KBucket {
      */
     public KBucketChangeSet resizeBucket(int maxSize) {
         Validate.isTrue(maxSize >= 0);
+        version++;
         
         if (maxSize <= bucket.maxSize()) {
             // reducing space
@@ -468,8 +649,9 @@ public final class KBucket {
             Validate.validState(res.viewAdded().isEmpty());
             Validate.validState(res.viewUpdated().isEmpty());
             
-            // all nodes that were removed from bucket need to also be removed in staleness set
+            // all nodes that were removed from bucket need to also be removed in staleness set and lock set
             res.viewRemoved().forEach(x -> staleSet.remove(x.getNode().getId()));
+            res.viewRemoved().forEach(x -> lockSet.remove(x.getNode().getId()));
             
             return new KBucketChangeSet(res, ActivityChangeSet.NO_CHANGE);
         } else {
@@ -495,6 +677,7 @@ public final class KBucket {
      */
     public KBucketChangeSet resizeCache(int maxSize) {
         Validate.isTrue(maxSize >= 0);
+        version++;
         
         ActivityChangeSet res = cache.resize(maxSize);
         return new KBucketChangeSet(ActivityChangeSet.NO_CHANGE, res);
@@ -547,6 +730,11 @@ public final class KBucket {
      * @return last node touch time
      */
     public Instant getLatestBucketActivityTime() {
+        long time = bucket.lastestActivityTime();
+        return time == Times.MIN ? null : Times.toInstant(time);
+    }
+
+    long getLatestBucketActivityTimeNanos() { // Times.MIN if bucket is empty
         return bucket.lastestActivityTime();
     }
 
@@ -555,7 +743,8 @@ public final class KBucket {
      * @return last cache touch time
      */
     public Instant getLatestCacheActivityTime() {
-        return cache.lastestActivityTime();
+        long time = cache.lastestActivityTime();
+        return time == Times.MIN ? null : Times.toInstant(time);
     }
 
     /**
@@ -584,7 +773,7 @@ public final class KBucket {
             // move
             ActivityChangeSet addRes;
             try {
-                addRes = bucket.touch(entryToMove.getTime(), entryToMove.getNode(), false);
+                addRes = bucket.touch(entryToMove.getTimeNanos(), entryToMove.getNode(), false);
             } catch (LinkMismatchException ece) {
                 // This should never happen. The way the logic in this class is written, you should never have an entry with the same id in
                 // the cache and the bucket at the same time. As such, it's impossible to encounter a conflict.
@@ -629,7 +818,7 @@ public final class KBucket {
     @Override
     public String toString() {
         return "KBucket{" + "baseId=" + baseId + ", prefix=" + prefix + ", bucket=" + bucket + ", cache=" + cache + ", staleSet=" + staleSet
-                + ", lastUpdateTime=" + lastTouchAttemptTime + '}';
+                + ", lastUpdateTime=" + Times.toInstant(lastTouchAttemptTime) + '}';
     }
     
     
@@ -26,19 +26,62 @@ public final class KBucketParameters {
 
     private final int bucketSize;
     private final int cacheSize;
+    private final boolean packed;
+    private final boolean offHeapCache;
 
     /**
-     * Construct a {@link KBucketParameters} object.
+     * Construct a {@link KBucketParameters} object. Equivalent to calling {@code new KBucketParameters(bucketSize, cacheSize, false)}.
      *
      * @param bucketSize maximum number of nodes k-bucket can hold
      * @param cacheSize maximum number of cache nodes k-bucket can hold
      * @throws IllegalArgumentException if any numeric argument is negative
      */
     public KBucketParameters(int bucketSize, int cacheSize) {
+        this(bucketSize, cacheSize, false);
+    }
+
+    /**
+     * Construct a {@link KBucketParameters} object.
+     * <p>
+     * If {@code packed} is {@code true}, the k-bucket holds its nodes in parallel arrays of primitives (IDs as packed 64-bit words, times
+     * as longs, and links as indices in to a link table shared by all k-buckets in the route tree) rather than as objects, bringing the
+     * cost of each node down to a few dozen bytes. The trade-off is that nodes handed back by the k-bucket are rebuilt on every read, so
+     * they're equal to but never the same objects as the nodes that were touched. Only applies when the k-bucket is created -- a k-bucket
+     * keeps whatever storage it was created with (k-buckets generated by splitting keep the storage of the k-bucket that was split).
+     *
+     * @param bucketSize maximum number of nodes k-bucket can hold
+     * @param cacheSize maximum number of cache nodes k-bucket can hold
+     * @param packed if {@code true}, k-bucket uses packed storage
+     * @throws IllegalArgumentException if any numeric argument is negative
+     */
+    public KBucketParameters(int bucketSize, int cacheSize, boolean packed) {
+        this(bucketSize, cacheSize, packed, false);
+    }
+
+    /**
+     * Construct a {@link KBucketParameters} object.
+     * <p>
+     * If {@code offHeapCache} is {@code true}, the k-bucket's replacement cache is held outside of the Java heap (in direct memory) as
+     * fixed-size records linked together in order of recency, regardless of {@code packed}. Since off-heap nodes never have to be traced by
+     * the garbage collector, the replacement cache can be made very large (e.g. thousands of nodes per k-bucket) without causing long
+     * garbage collection pauses. Links of up to {@value OffHeapActivityStore#MAX_INLINE_LINK_BYTES} bytes (UTF-8) are held off-heap along
+     * with the rest of the node, longer links are held on-heap. As with packed storage, nodes handed back from the replacement cache are
+     * rebuilt on every read. Direct memory is reclaimed once the k-bucket is garbage collected, so you may need to raise the JVM's direct
+     * memory limit ({@code -XX:MaxDirectMemorySize}).
+     *
+     * @param bucketSize maximum number of nodes k-bucket can hold
+     * @param cacheSize maximum number of cache nodes k-bucket can hold
+     * @param packed if {@code true}, k-bucket uses packed storage (see {@link #KBucketParameters(int, int, boolean) })
+     * @param offHeapCache if {@code true}, k-bucket's replacement cache is held off-heap
+     * @throws IllegalArgumentException if any numeric argument is negative
+     */
+    public KBucketParameters(int bucketSize, int cacheSize, boolean packed, boolean offHeapCache) {
         Validate.isTrue(bucketSize >= 0);
         Validate.isTrue(cacheSize >= 0);
         this.bucketSize = bucketSize;
         this.cacheSize = cacheSize;
+        this.packed = packed;
+        this.offHeapCache = offHeapCache;
     }
 
     int getBucketSize() {
@@ -48,4 +91,12 @@ public final class KBucketParameters {
     int getCacheSize() {
         return cacheSize;
     }
+
+    boolean isPacked() {
+        return packed;
+    }
+
+    boolean isOffHeapCache() {
+        return offHeapCache;
+    }
 }
\ No newline at end of file
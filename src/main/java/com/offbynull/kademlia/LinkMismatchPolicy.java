@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+/**
+ * How a {@link Router} handles a touch from a node that has the same ID as a node in one of its k-buckets but a different link (e.g. a
+ * peer whose address changed because of NAT rebinding).
+ * @author Kasra Faghihi
+ */
+public enum LinkMismatchPolicy {
+    /**
+     * Reject the touch -- {@link Router#touch(java.time.Instant, com.offbynull.kademlia.Node) } throws a {@link LinkMismatchException}
+     * and {@link Router#tryTouch(java.time.Instant, com.offbynull.kademlia.Node) } returns {@link RouterStatus#LINK_MISMATCH}.
+     */
+    REJECT,
+    /**
+     * Accept the touch -- the node in the k-bucket is replaced by the node that touched. The touch counts as a normal touch, so the node
+     * moves to the most recently seen end of the k-bucket like it would for any other touch. Only its lock state carries over (e.g. if it
+     * was locked it stays locked).
+     */
+    REPLACE
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.util.Arrays;
+import org.apache.commons.lang3.Validate;
+
+final class LinkTable {
+    // Interns links for packed k-bucket storage (see PackedActivityStore). Each distinct link gets an int index, reference counted by the
+    // number of entries pointing at it, and the index gets recycled once nothing points at it anymore. Lookups go through an open-addressed
+    // hash table (linear probing) of indices rather than a HashMap, so that a link costs a few slots in primitive arrays instead of a map
+    // entry and a boxed integer.
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] links; // index to link, null if index is free
+    private int[] refCounts; // index to number of references held on that index
+    private int[] freeIndices; // stack of indices that have been released and can be reused
+    private int freeCount;
+    private int usedCount; // number of indices handed out so far (indices >= this have never been used)
+
+    private int[] slots; // hash table, each slot is (index + 1) or 0 if empty
+    private int size; // number of links currently in the table
+
+    LinkTable() {
+        links = new String[INITIAL_CAPACITY];
+        refCounts = new int[INITIAL_CAPACITY];
+        freeIndices = new int[INITIAL_CAPACITY];
+        slots = new int[INITIAL_CAPACITY * 2];
+    }
+
+    public int acquire(String link) { // returns index for link, adding it if it isn't already in the table
+        Validate.notNull(link);
+
+        int mask = slots.length - 1;
+        int slot = home(link, mask);
+        while (slots[slot] != 0) {
+            int idx = slots[slot] - 1;
+            if (links[idx].equals(link)) {
+                refCounts[idx]++;
+                return idx;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int idx;
+        if (freeCount > 0) {
+            freeCount--;
+            idx = freeIndices[freeCount];
+        } else {
+            if (usedCount == links.length) {
+                int newCapacity = links.length * 2;
+                links = Arrays.copyOf(links, newCapacity);
+                refCounts = Arrays.copyOf(refCounts, newCapacity);
+                freeIndices = Arrays.copyOf(freeIndices, newCapacity);
+            }
+            idx = usedCount;
+            usedCount++;
+        }
+
+        links[idx] = link;
+        refCounts[idx] = 1;
+        slots[slot] = idx + 1;
+        size++;
+
+        if (size * 2 > slots.length) { // keep load factor at or below 0.5
+            rehash(slots.length * 2);
+        }
+
+        return idx;
+    }
+
+    public void release(int idx) { // drops a reference to index, removing the link once nothing references it
+        Validate.validState(idx >= 0 && idx < usedCount && links[idx] != null); // sanity check
+
+        refCounts[idx]--;
+        if (refCounts[idx] > 0) {
+            return;
+        }
+
+        int mask = slots.length - 1;
+        int slot = home(links[idx], mask);
+        while (slots[slot] != idx + 1) {
+            slot = (slot + 1) & mask;
+        }
+
+        // Backward shift deletion -- pull back entries further along the probe sequence so that lookups never hit a gap before reaching
+        // their entry
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (slots[next] == 0) {
+                break;
+            }
+            int nextHome = home(links[slots[next] - 1], mask);
+            boolean stays = slot <= next
+                    ? slot < nextHome && nextHome <= next
+                    : slot < nextHome || nextHome <= next;
+            if (stays) {
+                continue;
+            }
+            slots[slot] = slots[next];
+            slot = next;
+        }
+        slots[slot] = 0;
+
+        links[idx] = null;
+        freeIndices[freeCount] = idx;
+        freeCount++;
+        size--;
+    }
+
+    public String get(int idx) {
+        return links[idx];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash(int newSlotCount) {
+        int mask = newSlotCount - 1;
+        int[] newSlots = new int[newSlotCount];
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] == 0) {
+                continue;
+            }
+            int slot = home(links[slots[i] - 1], mask);
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = slots[i];
+        }
+        slots = newSlots;
+    }
+
+    private static int home(String link, int mask) {
+        int hash = link.hashCode();
+        hash ^= hash >>> 16; // spread upper bits, same as HashMap
+        return hash & mask;
+    }
+}
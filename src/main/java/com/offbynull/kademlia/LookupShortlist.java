@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import static java.util.Collections.singletonList;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Shortlist of candidate nodes for a Kademlia lookup -- the closest nodes (by XOR metric, same ordering as {@link IdXorMetricComparator})
+ * to some target ID seen so far, each tracked by its query state (see {@link LookupState}).
+ * <p>
+ * The shortlist is bounded: it only holds on to the closest {@code capacity} candidates, and candidates pushed past that are dropped.
+ * Candidates are deduplicated by ID. Candidates that fail are taken out of the shortlist (so the candidates behind them move up) but are
+ * remembered, so they never get added back in.
+ * <p>
+ * Candidates are held in parallel arrays ordered by distance, with each candidate's distance pre-calculated and packed in to words (see
+ * {@link IdXorMetricRanker}). Adding a batch of candidates ranks the batch in O(batch log capacity), stops at the first candidate that's
+ * further than everything in a full shortlist, and binary searches each remaining candidate in to place. The closest un-queried candidate
+ * and the closest candidate that hasn't responded are tracked by cursors, so {@link #isFinished() } is O(1). {@link #next() } and
+ * {@link #responded(com.offbynull.kademlia.Id) } move a cursor forward by scanning past candidates that have already been queried /
+ * have already responded, which is O(capacity) in the worst case. Cursors only ever move forward until a candidate gets added in front of
+ * them or the candidate they point to gets removed, so over a lookup the scans add up to roughly one pass over the shortlist for every
+ * such candidate rather than one pass per call.
+ * <p>
+ * This class is not thread-safe.
+ * @author Kasra Faghihi
+ */
+public final class LookupShortlist {
+    private final int bitLength;
+    private final int k;
+    private final int capacity;
+    private final int wordCount;
+    private final IdXorMetricRanker ranker;
+
+    private final Node[] nodes; // ordered closest to furthest
+    private final long[] distances; // distance of each node (wordCount words per node)
+    private final LookupState[] states; // state of each node (never FAILED, failed nodes are removed)
+    private int size;
+
+    private int firstUnqueried; // index of closest UNQUERIED node, or size if none
+    private int firstUnresponded; // index of closest node that isn't RESPONDED, or size if none
+    private int inFlightCount;
+
+    private final HashSet<Id> failedIds;
+
+    /**
+     * Constructs a {@link LookupShortlist} object.
+     * @param targetId ID being looked up
+     * @param k number of closest candidates that need to respond before the lookup is finished
+     * @param capacity maximum number of candidates to hold on to (candidates beyond the {@code k} closest are kept as backups in case
+     * closer candidates fail)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code k} is {@code 0} or less, or if {@code capacity < k}
+     */
+    public LookupShortlist(Id targetId, int k, int capacity) {
+        Validate.notNull(targetId);
+        Validate.isTrue(k > 0);
+        Validate.isTrue(capacity >= k);
+
+        this.bitLength = targetId.getBitLength();
+        this.k = k;
+        this.capacity = capacity;
+        this.ranker = new IdXorMetricRanker(targetId);
+        this.wordCount = ranker.getWordCount();
+
+        this.nodes = new Node[capacity];
+        this.distances = new long[capacity * wordCount];
+        this.states = new LookupState[capacity];
+
+        this.failedIds = new HashSet<>();
+    }
+
+    /**
+     * Adds candidates (e.g. the nodes returned in a response). Candidates already in this shortlist, candidates that have previously
+     * failed, and candidates that are further than every candidate in a full shortlist are ignored.
+     * @param candidates candidates to add
+     * @return number of candidates added
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IdLengthMismatchException if the bitlength of any ID in {@code candidates} doesn't match the bitlength of the target ID
+     */
+    public int add(List<Node> candidates) {
+        Validate.notNull(candidates);
+        Validate.noNullElements(candidates);
+
+        List<Id> ids = new ArrayList<>(candidates.size());
+        for (Node candidate : candidates) {
+            ids.add(candidate.getId());
+        }
+        long[] packed = ranker.pack(ids);
+        long[] batchDistances = ranker.distances(packed);
+        int[] order = ranker.rank(packed, capacity); // anything past the closest capacity of the batch can't get in
+
+        int added = 0;
+        for (int idx : order) {
+            int offset = idx * wordCount;
+            if (size == capacity && compareToEntry(batchDistances, offset, size - 1) >= 0) {
+                break; // batch is in order, so everything else in it is further away as well
+            }
+
+            int pos = search(batchDistances, offset);
+            if (pos >= 0) { // distance is unique to an ID, so same distance means same ID
+                continue;
+            }
+            if (failedIds.contains(ids.get(idx))) {
+                continue;
+            }
+
+            if (size == capacity) {
+                removeAt(size - 1);
+            }
+            insertAt(-pos - 1, candidates.get(idx), batchDistances, offset);
+            added++;
+        }
+        return added;
+    }
+
+    /**
+     * Gets the closest un-queried candidate and marks it as {@link LookupState#IN_FLIGHT}.
+     * @return closest un-queried candidate, or {@code null} if there are no un-queried candidates
+     */
+    public Node next() {
+        if (firstUnqueried == size) {
+            return null;
+        }
+
+        int pos = firstUnqueried;
+        states[pos] = LookupState.IN_FLIGHT;
+        inFlightCount++;
+        firstUnqueried = scanForUnqueried(pos + 1);
+        return nodes[pos];
+    }
+
+    /**
+     * Marks an {@link LookupState#IN_FLIGHT} candidate as {@link LookupState#RESPONDED}.
+     * @param id ID of candidate
+     * @return {@code true} if the candidate was marked, {@code false} if it isn't in this shortlist or isn't in flight
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code id} doesn't match the bitlength of the target ID
+     */
+    public boolean responded(Id id) {
+        int pos = indexOf(id);
+        if (pos < 0 || states[pos] != LookupState.IN_FLIGHT) {
+            return false;
+        }
+
+        states[pos] = LookupState.RESPONDED;
+        inFlightCount--;
+        if (pos == firstUnresponded) {
+            firstUnresponded = scanForUnresponded(pos + 1);
+        }
+        return true;
+    }
+
+    /**
+     * Marks an {@link LookupState#IN_FLIGHT} candidate as {@link LookupState#FAILED}. The candidate is removed from this shortlist and
+     * will be ignored if added again.
+     * @param id ID of candidate
+     * @return {@code true} if the candidate was marked, {@code false} if it isn't in this shortlist or isn't in flight
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code id} doesn't match the bitlength of the target ID
+     */
+    public boolean failed(Id id) {
+        int pos = indexOf(id);
+        if (pos < 0 || states[pos] != LookupState.IN_FLIGHT) {
+            return false;
+        }
+
+        removeAt(pos);
+        failedIds.add(id);
+        return true;
+    }
+
+    /**
+     * Get the state of a candidate.
+     * @param id ID of candidate
+     * @return state of candidate, or {@code null} if the candidate isn't in this shortlist and hasn't failed
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code id} doesn't match the bitlength of the target ID
+     */
+    public LookupState getState(Id id) {
+        int pos = indexOf(id);
+        if (pos >= 0) {
+            return states[pos];
+        }
+        return failedIds.contains(id) ? LookupState.FAILED : null;
+    }
+
+    /**
+     * Checks if the lookup is finished -- the {@code k} closest candidates (or all candidates, if there are less than {@code k}) have
+     * responded.
+     * @return {@code true} if the lookup is finished, {@code false} otherwise
+     */
+    public boolean isFinished() {
+        return firstUnresponded >= Math.min(k, size);
+    }
+
+    /**
+     * Get the {@code k} closest candidates (or all candidates, if there are less than {@code k}). Once this shortlist is finished (see
+     * {@link #isFinished() }), all of these candidates have responded.
+     * @return {@code k} closest candidates, ordered from closest to furthest
+     */
+    public List<Node> getClosest() {
+        return new ArrayList<>(Arrays.asList(nodes).subList(0, Math.min(k, size)));
+    }
+
+    /**
+     * Get the number of candidates that are {@link LookupState#IN_FLIGHT}.
+     * @return number of candidates in flight
+     */
+    public int getInFlightCount() {
+        return inFlightCount;
+    }
+
+    /**
+     * Get the number of candidates in this shortlist (failed candidates aren't included).
+     * @return number of candidates in this shortlist
+     */
+    public int size() {
+        return size;
+    }
+
+    private int indexOf(Id id) {
+        Validate.notNull(id);
+        InternalValidate.matchesLength(bitLength, id);
+
+        long[] distance = ranker.distances(ranker.pack(singletonList(id)));
+        int pos = search(distance, 0);
+        return pos >= 0 ? pos : -1;
+    }
+
+    // binary search, same return convention as Arrays.binarySearch()
+    private int search(long[] dists, int offset) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int res = compareToEntry(dists, offset, mid);
+            if (res > 0) {
+                low = mid + 1;
+            } else if (res < 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private int compareToEntry(long[] dists, int offset, int pos) {
+        return IdXorMetricRanker.compareDistances(dists, offset, distances, pos * wordCount, wordCount);
+    }
+
+    private void insertAt(int pos, Node node, long[] dists, int offset) {
+        System.arraycopy(nodes, pos, nodes, pos + 1, size - pos);
+        System.arraycopy(states, pos, states, pos + 1, size - pos);
+        System.arraycopy(distances, pos * wordCount, distances, (pos + 1) * wordCount, (size - pos) * wordCount);
+        nodes[pos] = node;
+        states[pos] = LookupState.UNQUERIED;
+        System.arraycopy(dists, offset, distances, pos * wordCount, wordCount);
+        size++;
+
+        // New node is un-queried, so it becomes the cursor if it went in at or before the cursor -- otherwise the cursor didn't shift
+        if (pos <= firstUnqueried) {
+            firstUnqueried = pos;
+        }
+        if (pos <= firstUnresponded) {
+            firstUnresponded = pos;
+        }
+    }
+
+    private void removeAt(int pos) {
+        if (states[pos] == LookupState.IN_FLIGHT) {
+            inFlightCount--;
+        }
+
+        System.arraycopy(nodes, pos + 1, nodes, pos, size - pos - 1);
+        System.arraycopy(states, pos + 1, states, pos, size - pos - 1);
+        System.arraycopy(distances, (pos + 1) * wordCount, distances, pos * wordCount, (size - pos - 1) * wordCount);
+        size--;
+        nodes[size] = null;
+        states[size] = null;
+
+        // Cursors past the removed node shift down by 1, a cursor at the removed node moves to the next match from there
+        if (pos < firstUnqueried) {
+            firstUnqueried--;
+        } else if (pos == firstUnqueried) {
+            firstUnqueried = scanForUnqueried(pos);
+        }
+        if (pos < firstUnresponded) {
+            firstUnresponded--;
+        } else if (pos == firstUnresponded) {
+            firstUnresponded = scanForUnresponded(pos);
+        }
+    }
+
+    private int scanForUnqueried(int from) {
+        int pos = from;
+        while (pos < size && states[pos] != LookupState.UNQUERIED) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private int scanForUnresponded(int from) {
+        int pos = from;
+        while (pos < size && states[pos] == LookupState.RESPONDED) {
+            pos++;
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+/**
+ * State of a candidate node in a {@link LookupShortlist}.
+ * @author Kasra Faghihi
+ */
+public enum LookupState {
+    /**
+     * Candidate hasn't been sent a query yet.
+     */
+    UNQUERIED,
+    /**
+     * Candidate has been sent a query and hasn't responded yet (see {@link LookupShortlist#next() }).
+     */
+    IN_FLIGHT,
+    /**
+     * Candidate has responded to its query (see {@link LookupShortlist#responded(com.offbynull.kademlia.Id) }).
+     */
+    RESPONDED,
+    /**
+     * Candidate failed to respond to its query (see {@link LookupShortlist#failed(com.offbynull.kademlia.Id) }).
+     */
+    FAILED
+}
@@ -0,0 +1,564 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A {@link ValueStore} that keeps values off-heap, in memory-mapped append-only segment files. Only a compact index (key to segment
+ * offset) is kept on the heap.
+ * <p>
+ * Every change (put / remove / eviction) is appended as a record to the newest segment. Once the newest segment fills up, a new one is
+ * created. Records that are no longer needed (replaced, removed, evicted, or expired) stay in their segment as garbage until
+ * {@link #compact() } is called, which copies whatever is still live out of the oldest segment and deletes it. Since segments are files,
+ * values survive restarts: constructing a store on a directory that already has segments in it will load them back up. Loaded values that
+ * are past their time-to-live get removed on the next call to {@link #expire(java.time.Instant) }.
+ * <p>
+ * Size is bounded by the number of bytes taken up by live records. Garbage isn't included, meaning disk usage may go above this bound until
+ * {@link #compact() } is called.
+ * <p>
+ * Writes aren't forced to disk until {@link #close() } is called -- if the process crashes, whether or not the latest changes made it to
+ * disk is up to the OS. Records that were only partially written are detected (via checksum) and ignored when loading.
+ * @author Kasra Faghihi
+ */
+public final class MappedValueStore implements ValueStore, Closeable {
+    private static final int SLOT_COUNT = 4096;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private static final byte PUT_TYPE = 1;
+    private static final byte REMOVE_TYPE = 2;
+
+    // record layout: length (int) | crc of everything after crc (int) | type (byte) | expiration seconds (long) | expiration nanos (int) |
+    // key | value
+    private static final int LENGTH_OFFSET = 0;
+    private static final int CRC_OFFSET = 4;
+    private static final int TYPE_OFFSET = 8;
+    private static final int EXPIRATION_SECONDS_OFFSET = 9;
+    private static final int EXPIRATION_NANOS_OFFSET = 17;
+    private static final int KEY_OFFSET = 21;
+
+    private final Id baseId;
+    private final Path directory;
+    private final int segmentSize;
+    private final long maxBytes;
+    private final int keyLength;
+    private final IdXorMetricComparator distanceComparator;
+
+    private final ArrayDeque<Segment> segments; // oldest to newest, last one is the one being written to
+    private final HashMap<Id, Entry> entries;
+    private final IdTrie keys; // for closest key / furthest key lookups
+    private final TimerWheel<Id> expirations;
+    private long liveBytes;
+    private long writtenBytes;
+
+    private Instant lastTime;
+    private boolean closed;
+
+    /**
+     * Constructs a {@link MappedValueStore} object. If {@code directory} already contains segments from a previous store, those segments
+     * are loaded back up.
+     * @param baseId ID of the node that this store is for
+     * @param directory directory to keep segment files in (must exist)
+     * @param segmentSize size of each segment file (values larger than a segment can't be stored)
+     * @param maxBytes maximum number of bytes this store can use for live records
+     * @param resolution granularity of expirations (values may expire up to this much later than their time-to-live)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code segmentSize} is too small to hold a record with an empty value, if {@code maxBytes} is
+     * negative, or if {@code resolution} is less than 1 millisecond
+     * @throws IOException if an I/O error occurs while creating or loading segments
+     */
+    public MappedValueStore(Id baseId, Path directory, int segmentSize, long maxBytes, Duration resolution) throws IOException {
+        Validate.notNull(baseId);
+        Validate.notNull(directory);
+        Validate.notNull(resolution);
+        Validate.isTrue(segmentSize >= KEY_OFFSET + (baseId.getBitLength() + 7) / 8);
+        Validate.isTrue(maxBytes >= 0L);
+        Validate.isTrue(resolution.toMillis() > 0L);
+
+        this.baseId = baseId;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxBytes = maxBytes;
+        this.keyLength = (baseId.getBitLength() + 7) / 8;
+        this.distanceComparator = new IdXorMetricComparator(baseId);
+        this.segments = new ArrayDeque<>();
+        this.entries = new HashMap<>();
+        this.keys = new IdTrie(baseId.getBitLength());
+        this.expirations = new TimerWheel<>(resolution, SLOT_COUNT);
+        this.lastTime = Instant.MIN;
+
+        try {
+            load();
+            if (segments.isEmpty()) {
+                segments.add(createSegment(0L));
+            }
+        } catch (IOException | RuntimeException e) {
+            closeSegments();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean put(Instant time, Id key, byte[] value, Duration ttl) {
+        Validate.notNull(time);
+        Validate.notNull(key);
+        Validate.notNull(value);
+        Validate.notNull(ttl);
+        Validate.isTrue(!ttl.isNegative());
+        Validate.validState(!closed);
+        InternalValidate.matchesLength(baseId.getBitLength(), key);
+
+        InternalValidate.forwardTime(lastTime, time); // time must be >= lastTime
+        lastTime = time;
+
+        long recordLength = (long) KEY_OFFSET + keyLength + value.length;
+        if (recordLength > segmentSize || recordLength > maxBytes) {
+            return false;
+        }
+
+        Entry existing = entries.get(key);
+        long existingLength = existing == null ? 0L : existing.length;
+        long excess = liveBytes - existingLength + recordLength - maxBytes;
+
+        // Make room by evicting values that are further away from the base ID than key. If there aren't enough of them, reject without
+        // evicting anything.
+        if (excess > 0L) {
+            List<Id> evictions = new ArrayList<>();
+            long[] freed = new long[1];
+            keys.visitFurthest(baseId, x -> {
+                if (distanceComparator.compare(x, key) <= 0) {
+                    return false; // everything from here on out is just as close or closer than key
+                }
+                evictions.add(x);
+                freed[0] += entries.get(x).length;
+                return freed[0] < excess;
+            });
+
+            if (freed[0] < excess) {
+                return false;
+            }
+
+            evictions.forEach(this::removeAndWriteTombstone);
+        }
+
+        if (existing != null) {
+            removeEntry(key); // no need for a tombstone, the record being written below supersedes the existing one
+        }
+
+        Instant expiration = time.plus(ttl);
+        Entry entry = appendRecord(PUT_TYPE, key, expiration, value);
+        entries.put(key, entry);
+        keys.add(key);
+        expirations.insert(expiration, key);
+        liveBytes += entry.length;
+
+        return true;
+    }
+
+    @Override
+    public byte[] get(Id key) {
+        Validate.notNull(key);
+        Validate.validState(!closed);
+        InternalValidate.matchesLength(baseId.getBitLength(), key);
+
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        byte[] value = new byte[entry.length - KEY_OFFSET - keyLength];
+        ByteBuffer buffer = entry.segment.buffer.duplicate();
+        buffer.position(entry.offset + KEY_OFFSET + keyLength);
+        buffer.get(value);
+        return value;
+    }
+
+    @Override
+    public Instant getExpiration(Id key) {
+        Validate.notNull(key);
+        Validate.validState(!closed);
+        InternalValidate.matchesLength(baseId.getBitLength(), key);
+
+        Entry entry = entries.get(key);
+        return entry == null ? null : readExpiration(entry.segment.buffer, entry.offset);
+    }
+
+    @Override
+    public boolean remove(Id key) {
+        Validate.notNull(key);
+        Validate.validState(!closed);
+        InternalValidate.matchesLength(baseId.getBitLength(), key);
+
+        if (!entries.containsKey(key)) {
+            return false;
+        }
+
+        removeAndWriteTombstone(key);
+        return true;
+    }
+
+    @Override
+    public List<Id> expire(Instant time) {
+        Validate.notNull(time);
+        Validate.validState(!closed);
+
+        InternalValidate.forwardTime(lastTime, time); // time must be >= lastTime
+        lastTime = time;
+
+        // No tombstones needed for expired values -- the expiration is in the record itself, so if it gets loaded back up it'll expire
+        // again
+        List<Id> expired = expirations.advance(time);
+        for (Id key : expired) {
+            Entry entry = entries.remove(key);
+            keys.remove(key);
+            liveBytes -= entry.length;
+        }
+
+        return expired;
+    }
+
+    @Override
+    public List<Id> getClosestKeys(Id id, int max) {
+        Validate.notNull(id);
+        Validate.isTrue(max >= 0);
+        Validate.validState(!closed);
+        InternalValidate.matchesLength(baseId.getBitLength(), id);
+
+        return keys.nearest(id, max);
+    }
+
+    @Override
+    public List<Id> getKeysWithPrefix(BitString prefix) {
+        Validate.notNull(prefix);
+        Validate.isTrue(prefix.getBitLength() <= baseId.getBitLength());
+        Validate.validState(!closed);
+
+        return keys.getWithPrefix(prefix);
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of bytes taken up by live records.
+     * @return number of bytes taken up by live records
+     */
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * Gets the number of bytes taken up by garbage (records that are no longer needed but haven't been compacted away yet).
+     * @return number of bytes taken up by garbage
+     */
+    public long getGarbageBytes() {
+        return writtenBytes - liveBytes;
+    }
+
+    /**
+     * Compacts the oldest segment if at least half of what's been written to this store is garbage. Live records in the oldest segment
+     * get appended to the newest segment, and the oldest segment is deleted.
+     * <p>
+     * Only the oldest segment is ever compacted. Tombstones (records marking a value as removed) can only be dropped once every segment
+     * before them is gone. Always going oldest first means the tombstones being compacted are never needed anymore.
+     * <p>
+     * Compaction is incremental -- each invocation does at most 1 segment worth of work. It's meant to be called periodically (e.g.
+     * alongside {@link #expire(java.time.Instant) }).
+     * @return {@code true} if a segment was compacted, {@code false} otherwise
+     * @throws UncheckedIOException if an I/O error occurs
+     */
+    public boolean compact() {
+        Validate.validState(!closed);
+
+        if (segments.size() < 2 || getGarbageBytes() < liveBytes) {
+            return false;
+        }
+
+        Segment oldest = segments.peekFirst();
+        ByteBuffer buffer = oldest.buffer.duplicate();
+        int offset = 0;
+        while (offset < oldest.writePosition) {
+            int length = buffer.getInt(offset + LENGTH_OFFSET);
+            if (buffer.get(offset + TYPE_OFFSET) == PUT_TYPE) {
+                Id key = readKey(buffer, offset);
+                Entry entry = entries.get(key);
+                if (entry != null && entry.segment == oldest && entry.offset == offset) { // live, copy it over
+                    ByteBuffer record = buffer.duplicate();
+                    record.position(offset);
+                    record.limit(offset + length);
+                    entries.put(key, appendRaw(record));
+                }
+            }
+            offset += length;
+        }
+
+        segments.removeFirst();
+        writtenBytes -= oldest.writePosition;
+        try {
+            oldest.channel.close();
+            Files.delete(oldest.path);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        return true;
+    }
+
+    /**
+     * Forces changes out to disk and closes all segment files. Once closed, this store can no longer be used.
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+        closeSegments();
+    }
+
+    private void load() throws IOException {
+        TreeMap<Long, Path> segmentPaths = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                String sequence = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+                segmentPaths.put(Long.parseLong(sequence), path);
+            }
+        }
+
+        // Replay records in the order they were written. Later records supersede earlier ones.
+        for (Map.Entry<Long, Path> segmentPath : segmentPaths.entrySet()) {
+            Segment segment = openSegment(segmentPath.getKey(), segmentPath.getValue());
+            segments.add(segment);
+
+            ByteBuffer buffer = segment.buffer.duplicate();
+            int offset = 0;
+            while (isValidRecord(buffer, offset)) {
+                int length = buffer.getInt(offset + LENGTH_OFFSET);
+                byte type = buffer.get(offset + TYPE_OFFSET);
+                Id key = readKey(buffer, offset);
+
+                entries.remove(key);
+
+                if (type == PUT_TYPE) {
+                    entries.put(key, new Entry(segment, offset, length));
+                }
+
+                offset += length;
+            }
+            segment.writePosition = offset; // anything after the last valid record is a partial write, it'll be written over
+            writtenBytes += offset;
+        }
+
+        for (Map.Entry<Id, Entry> e : entries.entrySet()) {
+            Id key = e.getKey();
+            Entry entry = e.getValue();
+            keys.add(key);
+            expirations.insert(readExpiration(entry.segment.buffer, entry.offset), key);
+            liveBytes += entry.length;
+        }
+    }
+
+    private boolean isValidRecord(ByteBuffer buffer, int offset) {
+        if (offset + KEY_OFFSET + keyLength > segmentSize) {
+            return false;
+        }
+
+        int length = buffer.getInt(offset + LENGTH_OFFSET);
+        if (length < KEY_OFFSET + keyLength || length > segmentSize - offset) {
+            return false;
+        }
+
+        byte type = buffer.get(offset + TYPE_OFFSET);
+        if (type != PUT_TYPE && type != REMOVE_TYPE) {
+            return false;
+        }
+
+        return buffer.getInt(offset + CRC_OFFSET) == calculateCrc(buffer, offset, length);
+    }
+
+    private void removeAndWriteTombstone(Id key) {
+        removeEntry(key);
+        appendRecord(REMOVE_TYPE, key, Instant.EPOCH, new byte[0]); // tombstone is garbage as soon as it's written
+    }
+
+    private void removeEntry(Id key) {
+        Entry entry = entries.remove(key);
+        keys.remove(key);
+        expirations.remove(key);
+        liveBytes -= entry.length;
+    }
+
+    private Entry appendRecord(byte type, Id key, Instant expiration, byte[] value) {
+        int length = KEY_OFFSET + keyLength + value.length;
+
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(LENGTH_OFFSET, length);
+        record.put(TYPE_OFFSET, type);
+        record.putLong(EXPIRATION_SECONDS_OFFSET, expiration.getEpochSecond());
+        record.putInt(EXPIRATION_NANOS_OFFSET, expiration.getNano());
+        record.position(KEY_OFFSET);
+        record.put(toBytes(key));
+        record.put(value);
+        record.putInt(CRC_OFFSET, calculateCrc(record, 0, length));
+        record.flip();
+
+        return appendRaw(record);
+    }
+
+    private Entry appendRaw(ByteBuffer record) {
+        int length = record.remaining();
+
+        Segment segment = segments.peekLast();
+        if (segment.writePosition + length > segmentSize) {
+            try {
+                segment = createSegment(segment.sequence + 1L);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            segments.addLast(segment);
+        }
+
+        int offset = segment.writePosition;
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset);
+        buffer.put(record);
+        segment.writePosition += length;
+        writtenBytes += length;
+
+        return new Entry(segment, offset, length);
+    }
+
+    private Segment createSegment(long sequence) throws IOException {
+        Path path = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+        Files.createFile(path);
+        return openSegment(sequence, path);
+    }
+
+    private Segment openSegment(long sequence, Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0L, segmentSize); // extends the file if it's smaller
+            return new Segment(sequence, path, channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void closeSegments() throws IOException {
+        IOException ioe = null;
+        for (Segment segment : segments) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                ioe = e;
+            }
+        }
+        if (ioe != null) {
+            throw ioe;
+        }
+    }
+
+    private Id readKey(ByteBuffer buffer, int offset) {
+        byte[] keyData = new byte[keyLength];
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(offset + KEY_OFFSET);
+        dup.get(keyData);
+        return Id.create(keyData, baseId.getBitLength());
+    }
+
+    private static Instant readExpiration(ByteBuffer buffer, int offset) {
+        return Instant.ofEpochSecond(buffer.getLong(offset + EXPIRATION_SECONDS_OFFSET), buffer.getInt(offset + EXPIRATION_NANOS_OFFSET));
+    }
+
+    private static int calculateCrc(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer dup = buffer.duplicate();
+        dup.limit(offset + length);
+        dup.position(offset + TYPE_OFFSET);
+
+        CRC32 crc = new CRC32();
+        crc.update(dup);
+        return (int) crc.getValue();
+    }
+
+    private byte[] toBytes(Id id) { // read-order, same as what Id.create(byte[], int) expects
+        int bitLength = id.getBitLength();
+        byte[] data = new byte[keyLength];
+        for (int i = 0; i < keyLength; i++) {
+            int len = Math.min(8, bitLength - i * 8);
+            data[i] = (byte) (id.getBitsAsLong(i * 8, len) << (8 - len));
+        }
+        return data;
+    }
+
+    private static final class Segment {
+        private final long sequence;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+
+        Segment(long sequence, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Entry {
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+
+        Entry(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
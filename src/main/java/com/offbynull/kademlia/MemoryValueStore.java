@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A {@link ValueStore} that keeps values on the heap.
+ * <p>
+ * Size is bounded by an estimate of the number of bytes used: each value costs its length plus the length of its key plus a fixed
+ * amount of overhead for bookkeeping. Values expire through a timing wheel, so expiring only does work proportional to the time passed
+ * since the last invocation and the number of values expired (no full scans).
+ * @author Kasra Faghihi
+ */
+public final class MemoryValueStore implements ValueStore {
+    private static final int SLOT_COUNT = 4096;
+    private static final long ENTRY_OVERHEAD = 256L; // rough estimate of bookkeeping per value (map nodes, wheel entry, etc..)
+
+    private final Id baseId;
+    private final long maxBytes;
+    private final IdXorMetricComparator distanceComparator;
+
+    private final HashMap<Id, Entry> entries;
+    private final IdTrie keys; // for closest key / furthest key lookups
+    private final TimerWheel<Id> expirations;
+    private long usedBytes;
+
+    private Instant lastTime;
+
+    /**
+     * Constructs a {@link MemoryValueStore} object.
+     * @param baseId ID of the node that this store is for
+     * @param maxBytes maximum number of bytes this store can use
+     * @param resolution granularity of expirations (values may expire up to this much later than their time-to-live)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code maxBytes} is negative, or if {@code resolution} is less than 1 millisecond
+     */
+    public MemoryValueStore(Id baseId, long maxBytes, Duration resolution) {
+        Validate.notNull(baseId);
+        Validate.notNull(resolution);
+        Validate.isTrue(maxBytes >= 0L);
+        Validate.isTrue(resolution.toMillis() > 0L);
+
+        this.baseId = baseId;
+        this.maxBytes = maxBytes;
+        this.distanceComparator = new IdXorMetricComparator(baseId);
+        this.entries = new HashMap<>();
+        this.keys = new IdTrie(baseId.getBitLength());
+        this.expirations = new TimerWheel<>(resolution, SLOT_COUNT);
+        this.lastTime = Instant.MIN;
+    }
+
+    @Override
+    public boolean put(Instant time, Id key, byte[] value, Duration ttl) {
+        Validate.notNull(time);
+        Validate.notNull(key);
+        Validate.notNull(value);
+        Validate.notNull(ttl);
+        Validate.isTrue(!ttl.isNegative());
+        InternalValidate.matchesLength(baseId.getBitLength(), key);
+
+        InternalValidate.forwardTime(lastTime, time); // time must be >= lastTime
+        lastTime = time;
+
+        long cost = calculateCost(value.length);
+        if (cost > maxBytes) {
+            return false;
+        }
+
+        Entry existing = entries.get(key);
+        long existingCost = existing == null ? 0L : existing.cost;
+        long excess = usedBytes - existingCost + cost - maxBytes;
+
+        // Make room by evicting values that are further away from the base ID than key. If there aren't enough of them, reject without
+        // evicting anything.
+        if (excess > 0L) {
+            List<Entry> evictions = new ArrayList<>();
+            long[] freed = new long[1];
+            keys.visitFurthest(baseId, x -> {
+                if (distanceComparator.compare(x, key) <= 0) {
+                    return false; // everything from here on out is just as close or closer than key
+                }
+                Entry entry = entries.get(x);
+                evictions.add(entry);
+                freed[0] += entry.cost;
+                return freed[0] < excess;
+            });
+
+            if (freed[0] < excess) {
+                return false;
+            }
+
+            evictions.forEach(x -> removeEntry(x.key));
+        }
+
+        if (existing != null) {
+            removeEntry(key);
+        }
+
+        Instant expiration = time.plus(ttl);
+        Entry entry = new Entry(key, Arrays.copyOf(value, value.length), expiration, cost);
+        entries.put(key, entry);
+        keys.add(key);
+        expirations.insert(expiration, key);
+        usedBytes += cost;
+
+        return true;
+    }
+
+    @Override
+    public byte[] get(Id key) {
+        Validate.notNull(key);
+        InternalValidate.matchesLength(baseId.getBitLength(), key);
+
+        Entry entry = entries.get(key);
+        return entry == null ? null : Arrays.copyOf(entry.value, entry.value.length);
+    }
+
+    @Override
+    public Instant getExpiration(Id key) {
+        Validate.notNull(key);
+        InternalValidate.matchesLength(baseId.getBitLength(), key);
+
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.expiration;
+    }
+
+    @Override
+    public boolean remove(Id key) {
+        Validate.notNull(key);
+        InternalValidate.matchesLength(baseId.getBitLength(), key);
+
+        return removeEntry(key);
+    }
+
+    @Override
+    public List<Id> expire(Instant time) {
+        Validate.notNull(time);
+
+        InternalValidate.forwardTime(lastTime, time); // time must be >= lastTime
+        lastTime = time;
+
+        List<Id> expired = expirations.advance(time);
+        for (Id key : expired) {
+            Entry entry = entries.remove(key);
+            keys.remove(key);
+            usedBytes -= entry.cost;
+        }
+
+        return expired;
+    }
+
+    @Override
+    public List<Id> getClosestKeys(Id id, int max) {
+        Validate.notNull(id);
+        Validate.isTrue(max >= 0);
+        InternalValidate.matchesLength(baseId.getBitLength(), id);
+
+        return keys.nearest(id, max);
+    }
+
+    @Override
+    public List<Id> getKeysWithPrefix(BitString prefix) {
+        Validate.notNull(prefix);
+        Validate.isTrue(prefix.getBitLength() <= baseId.getBitLength());
+
+        return keys.getWithPrefix(prefix);
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the estimated number of bytes used by this store.
+     * @return estimated number of bytes used
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private boolean removeEntry(Id key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+
+        keys.remove(key);
+        expirations.remove(key);
+        usedBytes -= entry.cost;
+        return true;
+    }
+
+    private long calculateCost(int valueLength) {
+        return valueLength + (baseId.getBitLength() + 7) / 8 + ENTRY_OVERHEAD;
+    }
+
+    private static final class Entry {
+        private final Id key;
+        private final byte[] value;
+        private final Instant expiration;
+        private final long cost;
+
+        Entry(Id key, byte[] value, Instant expiration, long cost) {
+            this.key = key;
+            this.value = value;
+            this.expiration = expiration;
+            this.cost = cost;
+        }
+    }
+}
@@ -16,105 +16,89 @@
  */
 package com.offbynull.kademlia;
 
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import org.apache.commons.lang3.Validate;
 
 final class NodeLeastRecentSet {
     private final Id baseId;
-    private final LinkedList<Activity> entries;
+    private final ActivityStore entries; // sorted by time, earliest first
 
     private int maxSize;
 
     NodeLeastRecentSet(Id baseId, int maxSize) {
+        this(baseId, maxSize, new ObjectActivityStore());
+    }
+
+    NodeLeastRecentSet(Id baseId, int maxSize, ActivityStore entries) {
         Validate.notNull(baseId);
         Validate.isTrue(maxSize >= 0);
-        
+        Validate.notNull(entries);
+        Validate.isTrue(entries.size() == 0);
+
         this.baseId = baseId;
         this.maxSize = maxSize;
 
-        this.entries = new LinkedList<>();
+        this.entries = entries;
     }
-    
-    public ActivityChangeSet touch(Instant time, Node node, boolean allowLinkMismatch) {
-        Validate.notNull(time);
+
+    public ActivityChangeSet touch(long time, Node node, boolean allowLinkMismatch) {
         Validate.notNull(node);
-        
+
         Id nodeId = node.getId();
-        
-        InternalValidate.matchesLength(baseId.getBitLength(), nodeId);
+
+        if (InternalValidate.DEBUG) { // callers have already validated
+            InternalValidate.matchesLength(baseId.getBitLength(), nodeId);
+        }
 //        Validate.isTrue(!nodeId.equals(baseId)); // Don't reject adding self
-        
-        // TODO: You can make this way more efficient if you used something like MultiTreeSet (guava) and sorted based on entry time
 
         // Remove existing entry
-        Activity oldEntry = null;
-        ListIterator<Activity> it = entries.listIterator();
-        while (it.hasNext()) {
-            Activity entry = it.next();
-
-            Id entryId = entry.getNode().getId();
-
-            if (entryId.equals(nodeId)) {
-                if (!allowLinkMismatch) {
-                    InternalValidate.matchesLink(entry.getNode(), node);
-                }
-
-                // remove
-                it.remove();
-                oldEntry = entry;
-                break;
+        long newTime = time;
+        boolean existed = false;
+        int oldIdx = entries.indexOf(nodeId);
+        if (oldIdx != -1) {
+            if (!allowLinkMismatch && !entries.getLink(oldIdx).equals(node.getLink())) { // only build the node if it's needed
+                InternalValidate.matchesLink(entries.getNode(oldIdx), node);
             }
-        }
 
-        
-        // Add entry
-        Activity newEntry = new Activity(node, time);
-        it = entries.listIterator();
-        boolean added = false;
-        while (it.hasNext()) {
-            Activity entry = it.next();
-
-            if (entry.getTime().isAfter(time)) {
-                it.previous(); // move back 1 space, we want to add to element just before entry
-                it.add(newEntry);
-                added = true;
-                break;
-            }
+            // remove -- time never goes backwards for a node that's already in the set (a late touch can't move it earlier)
+            newTime = Math.max(time, entries.getTime(oldIdx));
+            entries.remove(oldIdx);
+            existed = true;
         }
 
-        if (!added) { // special case where newEntry needs to be added at the end of entries, not handled by loop above
-            entries.addLast(newEntry);
+
+        // Add entry -- goes just before the first entry with a later time
+        int newIdx = indexAfter(newTime);
+
+        // Set would become too large, so the item with the latest time would need to be removed... if the item with the latest time is the
+        // one we're adding, then report that node couldn't be added
+        if (entries.size() >= maxSize && newIdx == entries.size()) {
+            return ActivityChangeSet.NO_CHANGE;
         }
 
-        
+        Activity newEntry = entries.insert(newIdx, node, newTime);
+
+
         // Set has become too large, remove the item with the latest time
         Activity discardedEntry = null;
         if (entries.size() > maxSize) {
-            // if the node removed with the latest time is the one we just added, then report that node couldn't be added
-            discardedEntry = entries.removeLast();
-            if (discardedEntry.equals(newEntry)) {
-                return ActivityChangeSet.NO_CHANGE;
-            }
+            int lastIdx = entries.size() - 1;
+            discardedEntry = entries.get(lastIdx);
+            entries.remove(lastIdx);
         }
 
-        
+
         // Add successful
-        if (oldEntry != null) {
+        if (existed) {
             Validate.validState(discardedEntry == null); // sanity check, must not have discarded anything
-            
+
             // updated existing node
             return ActivityChangeSet.updated(newEntry);
         } else {
-            // if block above ensures oldEntry is null if we're in this else block, so sanity check below isn't nessecary
-            // Validate.validState(oldEntry == null); // sanity check, node being touched must not have already existed
-            
             // added new node
             Collection<Activity> addedEntries = singletonList(newEntry);
             Collection<Activity> removedEntries = discardedEntry == null ? emptyList() : singletonList(discardedEntry);
@@ -125,75 +109,85 @@ final class NodeLeastRecentSet {
 
     public Node get(Id id) {
         InternalValidate.matchesLength(baseId.getBitLength(), id);
-        
-        ListIterator<Activity> it = entries.listIterator();
-        while (it.hasNext()) {
-            Activity entry = it.next();
 
-            Id entryId = entry.getNode().getId();
+        int idx = entries.indexOf(id);
+        return idx == -1 ? null : entries.getNode(idx);
+    }
+
+    public Activity getActivity(Id id) {
+        InternalValidate.matchesLength(baseId.getBitLength(), id);
 
-            if (entryId.equals(id)) {
-                return entry.getNode();
-            }
-        }
-        
-        return null;
+        int idx = entries.indexOf(id);
+        return idx == -1 ? null : entries.get(idx);
     }
 
     public ActivityChangeSet remove(Node node) {
         Validate.notNull(node);
-        
+
         Id nodeId = node.getId();
-        
+
         InternalValidate.matchesLength(baseId.getBitLength(), nodeId);
-        
-        ListIterator<Activity> it = entries.listIterator();
-        while (it.hasNext()) {
-            Activity entry = it.next();
 
-            Id entryId = entry.getNode().getId();
+        int idx = entries.indexOf(nodeId);
+        if (idx == -1) {
+            return ActivityChangeSet.NO_CHANGE;
+        }
 
-            if (entryId.equals(nodeId)) {
-                InternalValidate.matchesLink(entry.getNode(), node);
+        Activity entry = entries.get(idx);
+        InternalValidate.matchesLink(entry.getNode(), node);
 
-                // remove
-                it.remove();
-                return ActivityChangeSet.removed(entry);
-            }
-        }
-        
-        return ActivityChangeSet.NO_CHANGE;
+        // remove
+        entries.remove(idx);
+        return ActivityChangeSet.removed(entry);
     }
-    
+
     public ActivityChangeSet resize(int maxSize) {
         Validate.isTrue(maxSize >= 0);
-        
-        int discardCount = this.maxSize - maxSize;
-        
-        List<Activity> removed = new LinkedList<>();
+
+        int discardCount = entries.size() - maxSize; // only discard if the entries won't fit
+
+        List<Activity> removed = new ArrayList<>();
         for (int i = 0; i < discardCount; i++) {
-            Activity removedEntry = entries.removeFirst(); // remove node that hasn't been touched the longest
-            removed.add(removedEntry);
+            removed.add(entries.get(0));
+            entries.remove(0); // remove node that hasn't been touched the longest
         }
-        
+
         this.maxSize = maxSize;
-        
+
         return ActivityChangeSet.removed(removed);
     }
-    
+
+    public void load(List<Activity> sortedEntries) { // bulk-load in to an empty set, entries must be sorted by time (earliest first)
+        Validate.notNull(sortedEntries);
+        Validate.noNullElements(sortedEntries);
+        Validate.isTrue(sortedEntries.size() <= maxSize);
+        Validate.validState(entries.size() == 0);
+
+        long lastTime = Times.MIN;
+        for (Activity entry : sortedEntries) {
+            InternalValidate.matchesLength(baseId.getBitLength(), entry.getNode().getId());
+            Validate.isTrue(entry.getTimeNanos() >= lastTime);
+            lastTime = entry.getTimeNanos();
+        }
+
+        for (Activity entry : sortedEntries) {
+            entries.insert(entries.size(), entry.getNode(), entry.getTimeNanos());
+        }
+    }
+
     public List<Activity> dump() {
-        return new ArrayList<>(entries);
+        return entries.dump();
     }
-    
-    public Instant lastestActivityTime() { // time of the latest entry in this set, or null if set is empty
-        if (entries.isEmpty()) {
-            return null;
+
+    public long lastestActivityTime() { // time of the latest entry in this set, or Times.MIN if set is empty
+        if (entries.size() == 0) {
+            return Times.MIN;
         }
-        
-        return entries.getLast().getTime();
+
+        return entries.getTime(entries.size() - 1);
     }
 
-    
+
     public int size() {
         return entries.size();
     }
@@ -202,9 +196,28 @@ final class NodeLeastRecentSet {
         return maxSize;
     }
 
+    private int indexAfter(long time) { // index of first entry with time > time, entries are sorted so binary search
+        int size = entries.size();
+        if (size == 0 || entries.getTime(size - 1) <= time) { // time only moves forward, so this is almost always the case
+            return size;
+        }
+
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries.getTime(mid) > time) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
     @Override
     public String toString() {
-        return "NodeLeastRecentSet{" + "baseId=" + baseId + ", entries=" + entries + ", maxSize=" + maxSize + '}';
+        return "NodeLeastRecentSet{" + "baseId=" + baseId + ", entries=" + dump() + ", maxSize=" + maxSize + '}';
     }
 
 
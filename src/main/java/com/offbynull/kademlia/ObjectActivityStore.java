@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class ObjectActivityStore implements ActivityStore {
+    // Holds on to the Activity objects as-is, so reads give back the same Node objects that were inserted.
+    private final ArrayList<Activity> entries;
+
+    ObjectActivityStore() {
+        entries = new ArrayList<>();
+    }
+
+    @Override
+    public int indexOf(Id id) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).getNode().getId().equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public long getTime(int idx) {
+        return entries.get(idx).getTimeNanos();
+    }
+
+    @Override
+    public String getLink(int idx) {
+        return entries.get(idx).getNode().getLink();
+    }
+
+    @Override
+    public Node getNode(int idx) {
+        return entries.get(idx).getNode();
+    }
+
+    @Override
+    public Activity get(int idx) {
+        return entries.get(idx);
+    }
+
+    @Override
+    public List<Activity> dump() {
+        return new ArrayList<>(entries);
+    }
+
+    @Override
+    public Activity insert(int idx, Node node, long time) {
+        Activity entry = new Activity(node, time);
+        entries.add(idx, entry);
+        return entry;
+    }
+
+    @Override
+    public void remove(int idx) {
+        entries.remove(idx);
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.lang3.Validate;
+
+final class OffHeapActivityStore implements ActivityStore {
+    // Entries are fixed-size records in a direct ByteBuffer, so they're outside of the Java heap and never have to be traced by the GC.
+    // Meant for very large replacement caches. Each record is laid out as ...
+    //
+    // [ID as packed 64-bit words (see BitString.packWords())][time][link length][link bytes][prev record][next record]
+    //
+    // Links are stored in the record as UTF-8 if they fit in MAX_INLINE_LINK_BYTES. Links that don't fit go in to a link table (on heap)
+    // and the link length field holds -(index + 1) instead.
+    //
+    // Records form an intrusive doubly-linked list in time order (earliest first), so adding and removing at either end never moves other
+    // records around. Records that get removed are chained in to a free list and reused. Positional access walks the list from whichever of
+    // the head, the tail or the last position inserted at / removed from is closest -- node sets mostly modify the ends, so this is cheap
+    // in practice. Only inserts and removes move that cursor, reads never write anything (see ActivityStore).
+    //
+    // Nothing is held on to between calls, so reads build new Node / Activity objects each time.
+    static final int MAX_INLINE_LINK_BYTES = 56;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NIL = -1;
+
+    private final int bitLength;
+    private final int wordCount;
+    private final LinkTable linkTable;
+
+    private final int timeOffset;
+    private final int linkLengthOffset;
+    private final int linkOffset;
+    private final int prevOffset;
+    private final int nextOffset;
+    private final int recordSize;
+
+    private ByteBuffer records;
+    private int capacity; // in records
+    private int unusedSlot; // slots at or past this have never been handed out
+    private int freeHead; // free slots, chained through their next field
+    private int head; // earliest
+    private int tail; // latest
+    private int size;
+
+    private int cursorIdx; // position and slot of the last record inserted / after the last record removed, or NIL if not set
+    private int cursorSlot;
+
+    OffHeapActivityStore(int bitLength, LinkTable linkTable) {
+        Validate.isTrue(bitLength > 0);
+        Validate.notNull(linkTable);
+
+        this.bitLength = bitLength;
+        this.wordCount = BitString.calculateRequiredWordCount(bitLength);
+        this.linkTable = linkTable;
+
+        this.timeOffset = wordCount * 8;
+        this.linkLengthOffset = timeOffset + 8;
+        this.linkOffset = linkLengthOffset + 4;
+        this.prevOffset = linkOffset + MAX_INLINE_LINK_BYTES;
+        this.nextOffset = prevOffset + 4;
+        this.recordSize = nextOffset + 4;
+
+        this.records = ByteBuffer.allocateDirect(0);
+        this.freeHead = NIL;
+        this.head = NIL;
+        this.tail = NIL;
+        this.cursorIdx = NIL;
+        this.cursorSlot = NIL;
+    }
+
+    @Override
+    public int indexOf(Id id) {
+        long[] key = new long[wordCount];
+        id.packWords(key, 0);
+
+        int idx = 0;
+        for (int slot = head; slot != NIL; slot = next(slot), idx++) {
+            int base = slot * recordSize;
+            int w = 0;
+            while (w < wordCount && records.getLong(base + w * 8) == key[w]) {
+                w++;
+            }
+            if (w == wordCount) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public long getTime(int idx) {
+        return records.getLong(slotAt(idx) * recordSize + timeOffset);
+    }
+
+    @Override
+    public String getLink(int idx) {
+        return readLink(slotAt(idx));
+    }
+
+    @Override
+    public Node getNode(int idx) {
+        int slot = slotAt(idx);
+        return readNode(slot);
+    }
+
+    @Override
+    public Activity get(int idx) {
+        int slot = slotAt(idx);
+        return new Activity(readNode(slot), records.getLong(slot * recordSize + timeOffset));
+    }
+
+    @Override
+    public List<Activity> dump() {
+        List<Activity> ret = new ArrayList<>(size);
+        for (int slot = head; slot != NIL; slot = next(slot)) {
+            ret.add(new Activity(readNode(slot), records.getLong(slot * recordSize + timeOffset)));
+        }
+        return ret;
+    }
+
+    @Override
+    public Activity insert(int idx, Node node, long time) {
+        Validate.isTrue(idx >= 0 && idx <= size);
+        InternalValidate.matchesLength(bitLength, node.getId());
+
+        // Find the record that'll come after the new one before touching anything
+        int nextSlot = idx == size ? NIL : slotAt(idx);
+        int slot = allocateSlot();
+
+        // Write record
+        int base = slot * recordSize;
+        long[] words = new long[wordCount];
+        node.getId().packWords(words, 0);
+        for (int w = 0; w < wordCount; w++) {
+            records.putLong(base + w * 8, words[w]);
+        }
+        records.putLong(base + timeOffset, time);
+        writeLink(slot, node.getLink());
+
+        // Link it in to the list
+        int prevSlot = nextSlot == NIL ? tail : prev(nextSlot);
+        setPrev(slot, prevSlot);
+        setNext(slot, nextSlot);
+        if (prevSlot == NIL) {
+            head = slot;
+        } else {
+            setNext(prevSlot, slot);
+        }
+        if (nextSlot == NIL) {
+            tail = slot;
+        } else {
+            setPrev(nextSlot, slot);
+        }
+        size++;
+
+        cursorIdx = idx;
+        cursorSlot = slot;
+
+        return new Activity(node, time);
+    }
+
+    @Override
+    public void remove(int idx) {
+        int slot = slotAt(idx);
+
+        int length = records.getInt(slot * recordSize + linkLengthOffset);
+        if (length < 0) {
+            linkTable.release(-length - 1);
+        }
+
+        // Unlink from the list
+        int prevSlot = prev(slot);
+        int nextSlot = next(slot);
+        if (prevSlot == NIL) {
+            head = nextSlot;
+        } else {
+            setNext(prevSlot, nextSlot);
+        }
+        if (nextSlot == NIL) {
+            tail = prevSlot;
+        } else {
+            setPrev(nextSlot, prevSlot);
+        }
+        size--;
+
+        // Add to free list
+        setNext(slot, freeHead);
+        freeHead = slot;
+
+        // Whatever came after the removed record is now at its position
+        cursorIdx = nextSlot == NIL ? NIL : idx;
+        cursorSlot = nextSlot;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int slotAt(int idx) {
+        if (idx < 0 || idx >= size) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + size);
+        }
+
+        // Start from whichever known position is closest
+        int fromIdx = 0;
+        int fromSlot = head;
+        if (size - 1 - idx < idx - fromIdx) {
+            fromIdx = size - 1;
+            fromSlot = tail;
+        }
+        if (cursorIdx != NIL && Math.abs(cursorIdx - idx) < Math.abs(fromIdx - idx)) {
+            fromIdx = cursorIdx;
+            fromSlot = cursorSlot;
+        }
+
+        int slot = fromSlot;
+        for (int i = fromIdx; i < idx; i++) {
+            slot = next(slot);
+        }
+        for (int i = fromIdx; i > idx; i--) {
+            slot = prev(slot);
+        }
+        return slot;
+    }
+
+    private int allocateSlot() {
+        if (freeHead != NIL) {
+            int slot = freeHead;
+            freeHead = next(slot);
+            return slot;
+        }
+
+        if (unusedSlot == capacity) {
+            int newCapacity = Math.max(INITIAL_CAPACITY, capacity * 2);
+            Validate.validState((long) newCapacity * recordSize <= Integer.MAX_VALUE, "Off-heap store full");
+            ByteBuffer newRecords = ByteBuffer.allocateDirect(newCapacity * recordSize).order(ByteOrder.nativeOrder());
+            records.clear();
+            newRecords.put(records);
+            records = newRecords;
+            capacity = newCapacity;
+        }
+
+        int slot = unusedSlot;
+        unusedSlot++;
+        return slot;
+    }
+
+    private Node readNode(int slot) {
+        int base = slot * recordSize;
+        long[] words = new long[wordCount];
+        for (int w = 0; w < wordCount; w++) {
+            words[w] = records.getLong(base + w * 8);
+        }
+        return new Node(Id.unpackWords(words, 0, bitLength), readLink(slot));
+    }
+
+    private String readLink(int slot) {
+        int base = slot * recordSize;
+        int length = records.getInt(base + linkLengthOffset);
+        if (length < 0) {
+            return linkTable.get(-length - 1);
+        }
+
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = records.get(base + linkOffset + i);
+        }
+        return new String(data, UTF_8);
+    }
+
+    private void writeLink(int slot, String link) {
+        int base = slot * recordSize;
+        byte[] data = link.getBytes(UTF_8);
+        if (data.length > MAX_INLINE_LINK_BYTES) {
+            records.putInt(base + linkLengthOffset, -linkTable.acquire(link) - 1);
+            return;
+        }
+
+        records.putInt(base + linkLengthOffset, data.length);
+        for (int i = 0; i < data.length; i++) {
+            records.put(base + linkOffset + i, data[i]);
+        }
+    }
+
+    private int prev(int slot) {
+        return records.getInt(slot * recordSize + prevOffset);
+    }
+
+    private int next(int slot) {
+        return records.getInt(slot * recordSize + nextOffset);
+    }
+
+    private void setPrev(int slot, int value) {
+        records.putInt(slot * recordSize + prevOffset, value);
+    }
+
+    private void setNext(int slot, int value) {
+        records.putInt(slot * recordSize + nextOffset, value);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.lang3.Validate;
+
+final class PackedActivityStore implements ActivityStore {
+    // Struct-of-arrays storage. Rather than holding on to an Activity per entry (which drags along a Node, Id, BitString, byte[] and
+    // String), each entry is spread across parallel primitive arrays: the ID as packed 64-bit words (see BitString.packWords()), the time
+    // as nanos since epoch, and the link as an index in to a link table that's shared between k-buckets. For 160-bit IDs that's 36 bytes
+    // per entry, plus the link's share of the link table.
+    //
+    // Nothing is held on to between calls, so reads build new Node / Activity objects each time.
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final int bitLength;
+    private final int wordCount;
+    private final LinkTable linkTable;
+
+    private long[] ids; // wordCount words per entry
+    private long[] times; // nanos since epoch (see Times)
+    private int[] links; // indices in to linkTable
+    private int size;
+
+    PackedActivityStore(int bitLength, LinkTable linkTable) {
+        Validate.isTrue(bitLength > 0);
+        Validate.notNull(linkTable);
+
+        this.bitLength = bitLength;
+        this.wordCount = BitString.calculateRequiredWordCount(bitLength);
+        this.linkTable = linkTable;
+        this.ids = new long[0];
+        this.times = new long[0];
+        this.links = new int[0];
+    }
+
+    @Override
+    public int indexOf(Id id) {
+        long[] key = new long[wordCount];
+        id.packWords(key, 0);
+
+        int offset = 0;
+        for (int i = 0; i < size; i++, offset += wordCount) {
+            int w = 0;
+            while (w < wordCount && ids[offset + w] == key[w]) {
+                w++;
+            }
+            if (w == wordCount) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public long getTime(int idx) {
+        checkIndex(idx);
+        return times[idx];
+    }
+
+    @Override
+    public String getLink(int idx) {
+        checkIndex(idx);
+        return linkTable.get(links[idx]);
+    }
+
+    @Override
+    public Node getNode(int idx) {
+        checkIndex(idx);
+        Id id = Id.unpackWords(ids, idx * wordCount, bitLength);
+        return new Node(id, linkTable.get(links[idx]));
+    }
+
+    @Override
+    public Activity get(int idx) {
+        return new Activity(getNode(idx), times[idx]);
+    }
+
+    @Override
+    public List<Activity> dump() {
+        List<Activity> ret = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ret.add(get(i));
+        }
+        return ret;
+    }
+
+    @Override
+    public Activity insert(int idx, Node node, long time) {
+        Validate.isTrue(idx >= 0 && idx <= size);
+        InternalValidate.matchesLength(bitLength, node.getId());
+
+        if (size == times.length) {
+            int newCapacity = Math.max(INITIAL_CAPACITY, size + (size >> 1));
+            ids = Arrays.copyOf(ids, newCapacity * wordCount);
+            times = Arrays.copyOf(times, newCapacity);
+            links = Arrays.copyOf(links, newCapacity);
+        }
+
+        System.arraycopy(ids, idx * wordCount, ids, (idx + 1) * wordCount, (size - idx) * wordCount);
+        System.arraycopy(times, idx, times, idx + 1, size - idx);
+        System.arraycopy(links, idx, links, idx + 1, size - idx);
+
+        node.getId().packWords(ids, idx * wordCount);
+        times[idx] = time;
+        links[idx] = linkTable.acquire(node.getLink());
+        size++;
+
+        return new Activity(node, time);
+    }
+
+    @Override
+    public void remove(int idx) {
+        checkIndex(idx);
+
+        linkTable.release(links[idx]);
+
+        System.arraycopy(ids, (idx + 1) * wordCount, ids, idx * wordCount, (size - idx - 1) * wordCount);
+        System.arraycopy(times, idx + 1, times, idx, size - idx - 1);
+        System.arraycopy(links, idx + 1, links, idx, size - idx - 1);
+        size--;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void checkIndex(int idx) {
+        // arrays may be larger than size, so out of range indices won't always trip an ArrayIndexOutOfBoundsException
+        if (idx < 0 || idx >= size) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + size);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Tracks outstanding requests (RPCs) sent out to other nodes, and notifies a {@link Router} when those requests time out.
+ * <p>
+ * Each outstanding request is keyed by its transaction ID. When a response comes in, call {@link #respond(java.lang.Object) } to stop
+ * tracking the request. Periodically call {@link #expire(java.time.Instant) } to time out requests that have gone past their deadline.
+ * Timeouts are delivered in batches: each node that has at least one request time out in the batch gets reported to the router as
+ * unresponsive exactly once (see {@link Router#unresponsive(java.time.Instant, com.offbynull.kademlia.Node) }), regardless of how many of
+ * its requests timed out.
+ * <p>
+ * Deadlines are tracked using a hashed timing wheel, meaning that adding/removing requests is O(1) and expiring requests only does work
+ * proportional to the time passed since the last invocation and the number of requests timed out. Requests are timed out on the first
+ * tick boundary at or after their deadline -- never early, but up to 1 tick late.
+ * @param <K> transaction ID type (must be immutable and implement {@link Object#equals(java.lang.Object) } /
+ * {@link Object#hashCode() })
+ * @author Kasra Faghihi
+ */
+public final class PendingRequestTable<K> {
+    private static final int SLOT_COUNT = 512;
+
+    private final Router router;
+    private final HashMap<K, Node> pendingNodes; // transaction id to node request was sent to
+    private final TimerWheel<K> deadlines; // transaction id to when the request times out
+
+    private Instant lastTime;
+
+    /**
+     * Constructs a {@link PendingRequestTable} object.
+     * @param router router to report timed out nodes to
+     * @param resolution granularity of timeouts (requests may time out up to this much later than their deadline)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code resolution} is less than 1 millisecond
+     */
+    public PendingRequestTable(Router router, Duration resolution) {
+        Validate.notNull(router);
+        Validate.notNull(resolution);
+        Validate.isTrue(resolution.toMillis() > 0L);
+
+        this.router = router;
+        this.pendingNodes = new HashMap<>();
+        this.deadlines = new TimerWheel<>(resolution, SLOT_COUNT);
+        this.lastTime = Instant.MIN;
+    }
+
+    /**
+     * Starts tracking a request that's been sent out.
+     * @param time time which the request was sent out
+     * @param transactionId transaction ID of the request
+     * @param node node the request was sent to
+     * @param timeout duration to wait for a response before the request times out
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code timeout} is negative, or if a request with {@code transactionId} is already being tracked
+     * @throws IdLengthMismatchException if the bitlength of {@code node}'s ID doesn't match the bitlength of the router's base ID
+     * @throws BaseIdMatchException if {@code node}'s ID is the same as the router's base ID
+     * @throws BackwardTimeException if {@code time} is less than the time used in the previous invocation of this method or
+     * {@link #expire(java.time.Instant) }
+     */
+    public void add(Instant time, K transactionId, Node node, Duration timeout) {
+        Validate.notNull(time);
+        Validate.notNull(transactionId);
+        Validate.notNull(node);
+        Validate.notNull(timeout);
+        Validate.isTrue(!timeout.isNegative());
+        Validate.isTrue(!pendingNodes.containsKey(transactionId));
+
+        Id baseId = router.getBaseId();
+        InternalValidate.matchesLength(baseId.getBitLength(), node.getId());
+        InternalValidate.notMatchesBase(baseId, node.getId());
+
+        InternalValidate.forwardTime(lastTime, time); // time must be >= lastTime
+        lastTime = time;
+
+        pendingNodes.put(transactionId, node);
+        deadlines.insert(time.plus(timeout), transactionId);
+    }
+
+    /**
+     * Stops tracking a request because a response came in for it. Note that this doesn't touch the router -- you still need to call
+     * {@link Router#touch(java.time.Instant, com.offbynull.kademlia.Node) } yourself.
+     * @param transactionId transaction ID of the request
+     * @return node the request was sent to, or {@code null} if no request with {@code transactionId} is being tracked (e.g. it already
+     * timed out)
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public Node respond(K transactionId) {
+        Validate.notNull(transactionId);
+
+        Node node = pendingNodes.remove(transactionId);
+        if (node != null) {
+            deadlines.remove(transactionId);
+        }
+        return node;
+    }
+
+    /**
+     * Get the node a tracked request was sent to.
+     * @param transactionId transaction ID of the request
+     * @return node the request was sent to, or {@code null} if no request with {@code transactionId} is being tracked
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public Node get(K transactionId) {
+        Validate.notNull(transactionId);
+        return pendingNodes.get(transactionId);
+    }
+
+    /**
+     * Get the number of requests being tracked.
+     * @return number of requests being tracked
+     */
+    public int size() {
+        return pendingNodes.size();
+    }
+
+    /**
+     * Times out requests that have gone past their deadline, and reports the nodes those requests were sent to as unresponsive to the
+     * router.
+     * <p>
+     * Nodes that aren't in the router (e.g. nodes that were only contacted as part of a lookup, or nodes that have since been evicted)
+     * are skipped when reporting to the router, but their requests are still timed out.
+     * @param time current time
+     * @return requests that timed out along with the changes made to the router
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws BackwardTimeException if {@code time} is less than the time used in the previous invocation of this method or
+     * {@link #add(java.time.Instant, java.lang.Object, com.offbynull.kademlia.Node, java.time.Duration) }
+     */
+    public PendingRequestTimeouts<K> expire(Instant time) {
+        Validate.notNull(time);
+
+        InternalValidate.forwardTime(lastTime, time); // time must be >= lastTime
+        lastTime = time;
+
+        List<K> expiredIds = deadlines.advance(time);
+
+        LinkedHashMap<K, Node> timedOut = new LinkedHashMap<>();
+        LinkedHashSet<Node> unresponsiveNodes = new LinkedHashSet<>(); // dedupe -- only report each node once per batch
+        for (K expiredId : expiredIds) {
+            Node node = pendingNodes.remove(expiredId);
+            timedOut.put(expiredId, node);
+            unresponsiveNodes.add(node);
+        }
+
+        List<RouterChangeSet> routerChangeSets = new ArrayList<>(unresponsiveNodes.size());
+        for (Node node : unresponsiveNodes) {
+            RouterResult result = router.tryUnresponsive(time, node);
+            if (result.getStatus() != RouterStatus.APPLIED) {
+                continue; // node isn't in the router (or a different node with the same id is), nothing to report
+            }
+            routerChangeSets.add(result.getChangeSet());
+        }
+
+        return new PendingRequestTimeouts<>(timedOut, routerChangeSets);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Requests timed out by {@link PendingRequestTable#expire(java.time.Instant) }, along with the changes those timeouts caused to the
+ * {@link Router}.
+ * <p>
+ * Class is immutable.
+ * @param <K> transaction ID type
+ * @author Kasra Faghihi
+ */
+public final class PendingRequestTimeouts<K> {
+    private final Map<K, Node> timedOut;
+    private final List<RouterChangeSet> routerChangeSets;
+
+    PendingRequestTimeouts(Map<K, Node> timedOut, List<RouterChangeSet> routerChangeSets) {
+        Validate.notNull(timedOut);
+        Validate.notNull(routerChangeSets);
+        Validate.noNullElements(timedOut.keySet());
+        Validate.noNullElements(timedOut.values());
+        Validate.noNullElements(routerChangeSets);
+        this.timedOut = Collections.unmodifiableMap(new LinkedHashMap<>(timedOut));
+        this.routerChangeSets = Collections.unmodifiableList(new ArrayList<>(routerChangeSets));
+    }
+
+    /**
+     * Get the requests that timed out, ordered by deadline.
+     * @return transaction IDs of requests that timed out mapped to the nodes those requests were sent to
+     */
+    public Map<K, Node> viewTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Get the changes made to the router as a result of the timeouts (one per node that was reported as unresponsive).
+     * @return changes made to the router
+     */
+    public List<RouterChangeSet> viewRouterChangeSets() {
+        return routerChangeSets;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 41 * hash + Objects.hashCode(this.timedOut);
+        hash = 41 * hash + Objects.hashCode(this.routerChangeSets);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final PendingRequestTimeouts<?> other = (PendingRequestTimeouts<?>) obj;
+        if (!Objects.equals(this.timedOut, other.timedOut)) {
+            return false;
+        }
+        if (!Objects.equals(this.routerChangeSets, other.routerChangeSets)) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "PendingRequestTimeouts{" + "timedOut=" + timedOut + ", routerChangeSets=" + routerChangeSets + '}';
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Connects a {@link Router} to a {@link ValueStore}, working out which stored values need to be replicated to nodes as they're added to
+ * the router.
+ * <p>
+ * According to the Kademlia paper...
+ * <blockquote>
+ * When a new node joins the system, it must store any key-value pair to which it is one of the k closest. Existing nodes, by similarly
+ * exploiting complete knowledge of their surrounding subtrees, will know which key-value pairs the new node should store.
+ * </blockquote>
+ * Rather than republishing everything in the store, pass in the changes from each operation performed on the router. For each node added
+ * to the router, the only keys that can change hands are the ones that are closer to that node than to the node the router is for. Those
+ * keys sit in a single contiguous range of XOR space (they start with the bits both IDs share, followed by the new node's next bit), so
+ * they're pulled out of the store with a single prefix query. Of those keys, only the ones for which the new node is one of the k closest
+ * nodes are handed back.
+ * @author Kasra Faghihi
+ */
+public final class Republisher {
+    private final Router router;
+    private final ValueStore store;
+    private final int replicationCount;
+
+    /**
+     * Constructs a {@link Republisher} object.
+     * @param router router to check closeness against
+     * @param store store to pull keys from
+     * @param replicationCount number of closest nodes each value should be stored on (k)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code replicationCount} is {@code 0} or less
+     */
+    public Republisher(Router router, ValueStore store, int replicationCount) {
+        Validate.notNull(router);
+        Validate.notNull(store);
+        Validate.isTrue(replicationCount > 0);
+        this.router = router;
+        this.store = store;
+        this.replicationCount = replicationCount;
+    }
+
+    /**
+     * Works out which stored keys need to be replicated as a result of some change to the router.
+     * @param changeSet changes resulting from some operation performed on the router
+     * @return nodes that were added to the router mapped to the keys that should be replicated to them (nodes that don't need anything
+     * replicated are left out)
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public Map<Node, List<Id>> process(RouterChangeSet changeSet) {
+        Validate.notNull(changeSet);
+
+        Id baseId = router.getBaseId();
+
+        ActivityChangeSet bucketChangeSet = changeSet.getRouteTreeChangeSet().getKBucketChangeSet().getBucketChangeSet();
+
+        LinkedHashMap<Node, List<Id>> ret = new LinkedHashMap<>();
+        for (Activity added : bucketChangeSet.viewAdded()) {
+            Node node = added.getNode();
+            Id nodeId = node.getId();
+
+            // Keys closer to nodeId than to baseId are the keys that match nodeId up to (and including) the first bit where nodeId and
+            // baseId differ.
+            int sharedPrefixLength = nodeId.getSharedPrefixLength(baseId);
+            BitString prefix = nodeId.getBitString().getBits(0, sharedPrefixLength + 1);
+
+            List<Id> keys = new ArrayList<>();
+            for (Id key : store.getKeysWithPrefix(prefix)) {
+                // node is closer to key than we are, so whether or not we're in the k closest doesn't change node's position -- node's
+                // position among the nodes in our router is all that matters
+                if (router.find(key, replicationCount, false).contains(node)) {
+                    keys.add(key);
+                }
+            }
+
+            if (!keys.isEmpty()) {
+                ret.put(node, Collections.unmodifiableList(keys));
+            }
+        }
+
+        return Collections.unmodifiableMap(ret);
+    }
+}
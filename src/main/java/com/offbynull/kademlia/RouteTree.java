@@ -16,11 +16,22 @@
  */
 package com.offbynull.kademlia;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import static java.util.Collections.singletonList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.TreeSet;
+import java.util.function.Supplier;
 import org.apache.commons.lang3.Validate;
 
 /**
@@ -39,14 +50,38 @@ import org.apache.commons.lang3.Validate;
  *            0/\1
  *       [SELF]  [001 BUCKET]
  * </pre>
+ * Even though the structure of the tree is fixed, the k-buckets themselves are only created once a node is touched in to them. Most
+ * k-buckets in a strict route tree (especially the ones deep down, close to your own ID) will never see a single node, so there's no point
+ * in paying for them up front.
+ * <p>
+ * Alternatively, a route tree can be created in dynamic mode (see
+ * {@link #createDynamic(com.offbynull.kademlia.Id, com.offbynull.kademlia.RouteTreeBranchStrategy,
+ * com.offbynull.kademlia.RouteTreeBucketStrategy, int) }). In dynamic mode, the route tree starts off as only the root and k-buckets are
+ * split the way the original Kademlia paper describes -- when they're full and they cover your own ID. For small networks, this keeps the
+ * tree small and dense.
  * @author Kasra Faghihi
  */
 public final class RouteTree {
+    private static final int FIND_CACHE_SIZE = 256;
+    private static final int MAX_TOUCH_RECORDS = 1024;
+
     private final Id baseId;
+    private final RouteTreeBranchStrategy branchStrategy;
+    private final RouteTreeBucketStrategy bucketStrategy;
+    private final boolean dynamic;
+    private final int relaxedSplitDepth; // 0 if disabled
     private final RouteTreeNode root;
     private final TimeSet<BitString> bucketUpdateTimes; // prefix to when the prefix's bucket was last updated (not cache)
+    private final LinkedHashMap<FindKey, FindResult> findCache; // recent find results, least recently used evicted first
+    private final HashMap<Id, KBucket> nodeIndex; // id of every node in a k-bucket (bucket or cache) to the k-bucket that node is in
+    private final LinkTable linkTable; // links for k-buckets that use packed or off-heap storage (see KBucketParameters)
+    private final HashMap<Id, TouchRecord> touchRecords; // id to recent touches of nodes in a k-bucket (see setTouchCoalescing())
+    private long touchCoalescingResolution; // nanos, 0 if touch coalescing is disabled
+    private int heldTouchCount; // number of touch records holding back a touch
+    private long touchTolerance; // nanos, how far before lastTouchTime a touch is allowed to be (see setTouchTolerance())
     
-    private Instant lastTouchTime;
+    private long lastTouchTime; // nanos since epoch (see Times)
+    private long structureVersion; // bumped whenever a k-bucket is added to or replaced in the tree
     
     /**
      * Construct a {@link RouteTree} object.
@@ -54,30 +89,87 @@ public final class RouteTree {
      * @param branchStrategy branching strategy (dictates how many branches to create at each depth)
      * @param bucketStrategy bucket strategy (dictates k-bucket parameters for each k-bucket)
      * @throws NullPointerException if any argument is {@code null}
-     * @throws IllegalStateException if either {@code branchStrategy} or {@code bucketStrategy} generates invalid data (see interfaces for
-     * restrictions)
+     * @throws IllegalStateException if {@code branchStrategy} generates invalid data (see interface for restrictions) -- k-buckets are
+     * only created once something gets touched in to them, so {@code bucketStrategy} isn't queried until then
      */
     public RouteTree(Id baseId, // because id's are always > 0 in size -- it isn't possible for tree creation to mess up
             RouteTreeBranchStrategy branchStrategy,
             RouteTreeBucketStrategy bucketStrategy) {
+        this(baseId, branchStrategy, bucketStrategy, false, 0);
+    }
+
+    private RouteTree(Id baseId,
+            RouteTreeBranchStrategy branchStrategy,
+            RouteTreeBucketStrategy bucketStrategy,
+            boolean dynamic,
+            int relaxedSplitDepth) {
         Validate.notNull(baseId);
         Validate.notNull(branchStrategy);
         Validate.notNull(bucketStrategy);
+        Validate.isTrue(relaxedSplitDepth >= 0);
         
         this.baseId = baseId; // must be set before creating RouteTreeLevels
+        this.branchStrategy = branchStrategy;
+        this.bucketStrategy = bucketStrategy;
+        this.dynamic = dynamic;
+        this.relaxedSplitDepth = relaxedSplitDepth;
         this.bucketUpdateTimes = new TimeSet<>();
+        this.nodeIndex = new HashMap<>();
+        this.linkTable = new LinkTable();
+        this.touchRecords = new HashMap<>();
+        this.findCache = new LinkedHashMap<FindKey, FindResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
 
-        root = createRoot(branchStrategy, bucketStrategy);
-        RouteTreeNode child = root;
-        while (child != null) {
-            child = growParent(child, branchStrategy, bucketStrategy);
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<FindKey, FindResult> eldest) {
+                return size() > FIND_CACHE_SIZE;
+            }
+        };
+
+        root = createRoot(branchStrategy);
+        if (!dynamic) {
+            RouteTreeNode child = root;
+            while (child != null) {
+                child = growParent(child, branchStrategy);
+            }
+
+            // Special case: the routing tree has a bucket for baseId. Nothing can ever access that bucket (calls to
+            // touch/stale/find with your own ID will result an exception) and it'll always be empty, so remove it from bucketUpdateTimes.
+            bucketUpdateTimes.remove(baseId.getBitString());
         }
         
-        // Special case: the routing tree has a bucket for baseId. Nothing can ever access that bucket (calls to
-        // touch/stale/find with your own ID will result an exception) and it'll always be empty, so remove it from bucketUpdateTimes.
-        bucketUpdateTimes.remove(baseId.getBitString());
-        
-        this.lastTouchTime = Instant.MIN;
+        this.lastTouchTime = Times.MIN;
+    }
+
+    /**
+     * Construct a {@link RouteTree} object that's in dynamic mode. A route tree in dynamic mode starts off as only the root, and grows by
+     * splitting k-buckets as they fill up (as described in the original Kademlia paper). When a node gets touched in to a k-bucket that's
+     * full, that k-bucket gets split (using {@code branchStrategy} to determine the number of branches) if ...
+     * <ul>
+     * <li>it covers the ID of the node that this route tree is for.</li>
+     * <li>{@code relaxedSplitDepth} is more than {@code 0} and the bitlength of the k-bucket's prefix isn't a multiple of
+     * {@code relaxedSplitDepth}. This is the relaxed splitting rule from the Kademlia paper, which lets unbalanced regions of the tree
+     * (regions that don't cover your own ID) split to a depth of {@code relaxedSplitDepth} bits.</li>
+     * </ul>
+     * Otherwise, the touched node goes in to the k-bucket's replacement cache, just like it would in a strict route tree. Note that since
+     * a k-bucket that can split does so before it ever needs its replacement cache, a k-bucket being split never has anything in its
+     * replacement cache -- splitting only ever moves around nodes that are already in k-buckets.
+     * @param baseId ID of the node that this route tree is for
+     * @param branchStrategy branching strategy (dictates how many branches to create whenever a k-bucket splits)
+     * @param bucketStrategy bucket strategy (dictates k-bucket parameters for each k-bucket)
+     * @param relaxedSplitDepth depth in bits for relaxed splitting, or {@code 0} to only ever split k-buckets that cover
+     * {@code baseId}
+     * @return new route tree in dynamic mode
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code relaxedSplitDepth} is negative
+     * @throws IllegalStateException if {@code branchStrategy} generates invalid data (see interface for restrictions) -- k-buckets are
+     * only created once something gets touched in to them, so {@code bucketStrategy} isn't queried until then
+     */
+    public static RouteTree createDynamic(Id baseId,
+            RouteTreeBranchStrategy branchStrategy,
+            RouteTreeBucketStrategy bucketStrategy,
+            int relaxedSplitDepth) {
+        return new RouteTree(baseId, branchStrategy, bucketStrategy, true, relaxedSplitDepth);
     }
 
     /**
@@ -85,6 +177,9 @@ public final class RouteTree {
      * distance.
      * <p>
      * Note this method will never return yourself (the node that this routing table is for).
+     * <p>
+     * Results of recent searches are cached. A cached result is handed back only if none of the k-buckets it was read from have been
+     * modified since, and no k-buckets have been added to or replaced in this route tree since.
      * @param id ID to search for
      * @param max maximum number of results to give back
      * @param includeStale if {@code true}, includes stale nodes in the results
@@ -100,23 +195,122 @@ public final class RouteTree {
 //        InternalValidate.notMatchesBase(baseId, id); // commented out because you should be able to search for closest nodes to yourself
         Validate.isTrue(max >= 0); // why would anyone want 0? let thru anyways
 
+        applyHeldTouches();
+
+        FindKey key = new FindKey(id, max, includeStale);
+        FindResult cached = findCache.get(key);
+        if (cached != null && cached.isValid(structureVersion)) {
+            return new ArrayList<>(cached.activities);
+        }
+
         IdXorMetricComparator comparator = new IdXorMetricComparator(id);
         TreeSet<Activity> output = new TreeSet<>((x, y) -> comparator.compare(x.getNode().getId(), y.getNode().getId()));
         
-        root.findNodesWithLargestPossiblePrefix(id, output, max, includeStale);
+        IdentityHashMap<KBucket, List<Activity>> bucketDumps = new IdentityHashMap<>();
+        root.findNodesWithLargestPossiblePrefix(new Id[] {id}, singletonList(output), 0, 1, max, includeStale, bucketDumps);
         
-        return new ArrayList<>(output);
+        List<Activity> ret = new ArrayList<>(output);
+        findCache.put(key, new FindResult(structureVersion, bucketDumps.keySet(), ret));
+        return new ArrayList<>(ret);
     }
     
+    /**
+     * Equivalent to calling {@link #find(com.offbynull.kademlia.Id, int, boolean) } for each ID in {@code ids}, but done as a single walk
+     * of the route tree. IDs are sorted so that IDs sharing a prefix are grouped together, and each group walks down the tree once. The
+     * more the IDs in {@code ids} have in common (e.g. keys from the same namespace), the more work is shared between them.
+     * @param ids IDs to search for
+     * @param max maximum number of results to give back for each ID
+     * @param includeStale if {@code true}, includes stale nodes in the results
+     * @return up to {@code max} closest nodes for each ID, in the same order as {@code ids}
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if any numeric argument is negative
+     * @throws IdLengthMismatchException if the bitlength of any ID in {@code ids} doesn't match the bitlength of the owning node's ID
+     * (the ID of the node this route tree is for)
+     */
+    public List<List<Activity>> findAll(List<Id> ids, int max, boolean includeStale) {
+        Validate.notNull(ids);
+        Validate.noNullElements(ids);
+        Validate.isTrue(max >= 0); // why would anyone want 0? let thru anyways
+        for (Id id : ids) {
+            InternalValidate.matchesLength(baseId.getBitLength(), id);
+        }
+
+        applyHeldTouches();
+
+        int size = ids.size();
+        int[] order = sortOrder(ids);
+        List<Id> sortedIds = new ArrayList<>(size);
+        for (int idx : order) {
+            sortedIds.add(ids.get(idx));
+        }
+
+        List<List<Activity>> found = findAllSorted(sortedIds, max, includeStale);
+
+        List<List<Activity>> ret = new ArrayList<>(Collections.nCopies(size, null));
+        for (int i = 0; i < size; i++) {
+            ret.set(order[i], found.get(i));
+        }
+        return ret;
+    }
+
+    // ordering expected by findAllSorted() -- indices of ids, sorted by the numeric value of the ID at each index (XOR distance from 0 is
+    // the value itself), so that IDs sharing a prefix sit next to each other
+    int[] sortOrder(List<Id> ids) {
+        int bitLength = baseId.getBitLength();
+        IdXorMetricRanker numericRanker = new IdXorMetricRanker(Id.create(new byte[(bitLength + 7) / 8], bitLength));
+        return numericRanker.rank(numericRanker.pack(ids), ids.size());
+    }
+
+    // internal entry point, caller must have validated arguments (see InternalValidate) and applied held back touches -- sortedIds must
+    // be ordered as sortOrder() orders them, results are in the same order as sortedIds
+    List<List<Activity>> findAllSorted(List<Id> sortedIds, int max, boolean includeStale) {
+        int size = sortedIds.size();
+        Id[] idArray = sortedIds.toArray(new Id[size]);
+        List<TreeSet<Activity>> outputs = new ArrayList<>(size);
+        for (Id id : idArray) {
+            IdXorMetricComparator comparator = new IdXorMetricComparator(id);
+            outputs.add(new TreeSet<>((x, y) -> comparator.compare(x.getNode().getId(), y.getNode().getId())));
+        }
+
+        root.findNodesWithLargestPossiblePrefix(idArray, outputs, 0, size, max, includeStale, new IdentityHashMap<>());
+
+        List<List<Activity>> ret = new ArrayList<>(size);
+        for (TreeSet<Activity> output : outputs) {
+            ret.add(new ArrayList<>(output));
+        }
+        return ret;
+    }
+
     // used for testing
     List<Activity> dumpBucket(BitString prefix) {
         Validate.notNull(prefix);
         Validate.isTrue(prefix.getBitLength() < baseId.getBitLength()); // cannot be == or >
 
-        KBucket bucket = root.getBucketForPrefix(prefix);        
+        applyHeldTouches();
+
+        KBucket bucket = root.getBucketForPrefix(prefix);
+        if (bucket == null) { // not materialized, so nothing in it
+            return new ArrayList<>();
+        }
         return bucket.dumpBucket(true, true, false);
     }
     
+    // all nodes in this route tree (bucket and cache, regardless of state)
+    List<Node> dumpNodes() {
+        applyHeldTouches();
+
+        List<Node> output = new ArrayList<>();
+        for (BitString prefix : dumpBucketPrefixes()) {
+            KBucket bucket = root.getBucketForPrefix(prefix);
+            if (bucket == null) { // not materialized, so nothing in it
+                continue;
+            }
+            bucket.dumpBucket(true, true, true).forEach(x -> output.add(x.getNode()));
+            bucket.dumpCache().forEach(x -> output.add(x.getNode()));
+        }
+        return output;
+    }
+
     /**
      * Get all k-bucket prefixes in this route tree.
      * @return all k-bucket prefixes in this route tree
@@ -127,6 +321,54 @@ public final class RouteTree {
         return new ArrayList<>(output);
     }
 
+    /**
+     * Enables (or disables) touch coalescing. Peers that are chatty end up touching this route tree over and over again in a short period
+     * of time, and each of those touches moves the node to the end of its k-bucket just to have it moved there again shortly after.
+     * <p>
+     * With touch coalescing enabled, if a node that's in a k-bucket (not in the replacement cache, and not stale or locked) gets touched
+     * again within {@code resolution} of its last applied touch, that touch is held back rather than applied to its k-bucket. Only the
+     * latest held back time is kept for each node, and held back touches are applied before anything that depends on them is read (e.g.
+     * {@link #find(com.offbynull.kademlia.Id, int, boolean) } or {@link #getStagnantBuckets(java.time.Instant) }) or changed. The changes
+     * returned for a held back touch are the same as they'd be had the touch been applied.
+     * <p>
+     * Held back touches are applied at the time they came in, meaning nodes end up in the same order as if every touch had been applied
+     * right away (nodes touched at the exact same time may be ordered differently).
+     * @param resolution window in which repeat touches of a node are held back, or {@link Duration#ZERO} to disable touch coalescing
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code resolution} is negative
+     */
+    public void setTouchCoalescing(Duration resolution) {
+        Validate.notNull(resolution);
+        Validate.isTrue(!resolution.isNegative());
+
+        forgetTouches();
+        touchCoalescingResolution = resolution.toNanos();
+    }
+
+    /**
+     * Sets how far back in time touches are allowed to go, for this route tree and all of its k-buckets. Touches that are late by no more
+     * than {@code tolerance} are accepted and placed in the position they would have been in had they arrived on time.
+     * <p>
+     * See {@link KBucket#setTouchTolerance(java.time.Duration) } for more information.
+     * @param tolerance how far before the latest touch time a touch is allowed to be, or {@link Duration#ZERO} to reject all touches that
+     * go backwards in time
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code tolerance} is negative
+     * @see KBucket#setTouchTolerance(java.time.Duration)
+     */
+    public void setTouchTolerance(Duration tolerance) {
+        Validate.notNull(tolerance);
+        Validate.isTrue(!tolerance.isNegative());
+
+        touchTolerance = tolerance.toNanos();
+        for (BitString prefix : dumpBucketPrefixes()) {
+            KBucket bucket = root.getBucketForPrefix(prefix);
+            if (bucket != null) { // buckets that haven't been materialized yet pick up the tolerance when they're created
+                bucket.setTouchTolerance(tolerance);
+            }
+        }
+    }
+
     /**
      * Updates the appropriate k-bucket in this route tree by touching it. When the Kademlia node that this route tree is for receives a
      * request or response from some other node in the network, this method should be called.
@@ -134,12 +376,17 @@ public final class RouteTree {
      * See {@link KBucket#touch(java.time.Instant, com.offbynull.kademlia.Node) } for more information.
      * @param time time which request or response came in
      * @param node node which issued the request or response
-     * @return changes to collection of stored nodes and replacement cache of the k-bucket effected
+     * @return changes to collection of stored nodes and replacement cache of the k-bucket effected (in dynamic mode, if k-buckets had to
+     * split and the new k-buckets are smaller than the ones they split from, the nodes that got dropped are included in the removed nodes)
      * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code time} is outside of the range that can be held as nanoseconds since the epoch
      * @throws IdLengthMismatchException if the bitlength of {@code node}'s ID doesn't match the bitlength of the owning node's ID (the ID
      * of the node this route tree is for)
      * @throws BaseIdMatchException if {@code node}'s ID is the same as the owning node's ID (the ID of the node this route tree is for)
-     * @throws BackwardTimeException if {@code time} is less than the time used in the previous invocation of this method
+     * @throws BackwardTimeException if {@code time} is less than the latest time used in previous invocations of this method by more
+     * than the touch tolerance (see {@link #setTouchTolerance(java.time.Duration) })
+     * @throws IllegalStateException if the bucket strategy (or, in dynamic mode, the branch strategy) generates invalid data for a
+     * k-bucket that needs to be created (see interfaces for restrictions)
      * @throws LinkMismatchException if this route tree already contains a node with {@code node}'s ID but with a different link (SPECIAL
      * CASE: If the contained node is marked as stale, this exception will not be thrown. Since the node is marked as stale, it means it
      * should have been replaced but the replacement cache was empty. As such, this case is treated as if this were a new node replacing
@@ -150,31 +397,165 @@ public final class RouteTree {
     public RouteTreeChangeSet touch(Instant time, Node node) {
         Validate.notNull(time);
         Validate.notNull(node);
-        
+
+        long timeNanos = Times.toNanos(time);
+        validateTouch(timeNanos, node);
+        return touch(timeNanos, node);
+    }
+
+    // internal entry point, caller must have validated arguments (see InternalValidate) -- time is nanos since epoch (see Times)
+    RouteTreeChangeSet touch(long time, Node node) {
+        return touch(time, node, false);
+    }
+
+    // same as touch(long, Node), but if replaceLink is true and a k-bucket has a node with node's ID but a different link, that node gets
+    // replaced by node rather than a LinkMismatchException being thrown (see KBucket.touch(long, Node, boolean))
+    RouteTreeChangeSet touch(long time, Node node, boolean replaceLink) {
+        if (InternalValidate.DEBUG) {
+            Validate.notNull(node);
+            validateTouch(time, node);
+        }
+
         Id id = node.getId();
-        InternalValidate.matchesLength(baseId.getBitLength(), id);
-        InternalValidate.notMatchesBase(baseId, id);
-        
-        InternalValidate.forwardTime(lastTouchTime, time); // time must be >= lastUpdatedTime
-        lastTouchTime = time;
+        boolean late = time < lastTouchTime; // within touch tolerance, otherwise it wouldn't have made it here
+        lastTouchTime = Math.max(lastTouchTime, time);
 
-        KBucket bucket = root.getBucketFor(node.getId()); // because we use this method to find the appropriate kbucket,
-                                                          // IdPrefixMismatchException never occurs
-        KBucketChangeSet kBucketChangeSet = bucket.touch(time, node);
+        if (touchCoalescingResolution > 0L) {
+            if (late) {
+                applyHeldTouches(); // late touch may land before held back touches, so they need to be in place first
+            } else {
+                RouteTreeChangeSet heldChangeSet = holdTouch(time, node);
+                if (heldChangeSet != null) {
+                    return heldChangeSet;
+                }
+            }
+        }
+
+        // If the node is already known, go straight to its k-bucket rather than walking down the tree to find it
+        KBucket bucket = nodeIndex.get(id);
+        if (bucket == null) {
+            bucket = materializeBucketFor(id); // because we use this method to find the appropriate kbucket, IdPrefixMismatchException
+                                               // never occurs
+        }
+        List<Activity> splitRemoved = null; // nodes dropped by k-buckets that split along the way
+        while (dynamic && bucket.isFullFor(node) && isSplittable(bucket.getPrefix())) {
+            if (splitRemoved == null) {
+                splitRemoved = new ArrayList<>();
+            }
+            bucket = splitBucketFor(id, splitRemoved);
+        }
+        KBucketChangeSet kBucketChangeSet = bucket.touch(time, node, replaceLink);
         BitString kBucketPrefix = bucket.getPrefix();
+        updateIndex(bucket, kBucketChangeSet);
+
+        if (touchCoalescingResolution > 0L) {
+            recordTouch(node, bucket, kBucketChangeSet);
+        }
 
-        // insert last bucket activity time in to bucket update times... it may be null if bucket has never been accessed, in which case
-        // we insert MIN instead
-        Instant lastBucketActivityTime = bucket.getLatestBucketActivityTime();
-        if (lastBucketActivityTime == null) {
-            lastBucketActivityTime = Instant.MIN;
+        if (splitRemoved != null && !splitRemoved.isEmpty()) {
+            // Report nodes dropped by splits along with the touch, otherwise whoever is tracking nodes (e.g. Router's locks) never finds
+            // out that they're gone
+            ActivityChangeSet bucketChangeSet = kBucketChangeSet.getBucketChangeSet();
+            splitRemoved.addAll(bucketChangeSet.viewRemoved());
+            kBucketChangeSet = new KBucketChangeSet(
+                    new ActivityChangeSet(bucketChangeSet.viewAdded(), splitRemoved, bucketChangeSet.viewUpdated()),
+                    kBucketChangeSet.getCacheChangeSet());
         }
+
+        // insert last bucket activity time in to bucket update times... it'll be MIN if bucket has never been accessed
+        long lastBucketActivityTime = bucket.getLatestBucketActivityTimeNanos();
         bucketUpdateTimes.remove(kBucketPrefix);
         bucketUpdateTimes.insert(lastBucketActivityTime, kBucketPrefix);
 
         return new RouteTreeChangeSet(kBucketPrefix, kBucketChangeSet);
     }
 
+    private void validateTouch(long time, Node node) {
+        Id id = node.getId();
+        InternalValidate.matchesLength(baseId.getBitLength(), id);
+        InternalValidate.notMatchesBase(baseId, id);
+        
+        InternalValidate.forwardTime(lastTouchTime, time, touchTolerance); // time must be >= lastUpdatedTime - touchTolerance
+    }
+
+    /**
+     * Bulk-loads nodes in to this route tree. The end result is the same as sorting {@code nodes} by time and calling
+     * {@link #touch(java.time.Instant, com.offbynull.kademlia.Node) } for each one, but nodes are distributed to their k-buckets in a
+     * single pass and each k-bucket is built already sorted. Nodes that have the same time are treated as if they were touched in the
+     * iteration order of {@code nodes}.
+     * <p>
+     * This route tree must not have been touched before this method is called.
+     * <p>
+     * If this route tree is in dynamic mode, which k-buckets exist depends on the order that nodes come in. In that case, nodes are sorted
+     * and touched one at a time, and a set of changes is returned for each touch.
+     * @param nodes nodes to load, mapped to the time each one was last touched
+     * @return changes to collection of stored nodes and replacement cache of each k-bucket effected
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if {@code nodes} contains multiple nodes with the same ID, or if any time in {@code nodes} is
+     * outside of the range that can be held as nanoseconds since the epoch
+     * @throws IdLengthMismatchException if the bitlength of any node's ID doesn't match the bitlength of the owning node's ID (the ID of
+     * the node this route tree is for)
+     * @throws BaseIdMatchException if any node's ID is the same as the owning node's ID (the ID of the node this route tree is for)
+     * @throws IllegalStateException if this route tree has already been touched, or if the bucket strategy (or, in dynamic mode, the
+     * branch strategy) generates invalid data for a k-bucket that needs to be created (see interfaces for restrictions)
+     */
+    public List<RouteTreeChangeSet> load(Map<Node, Instant> nodes) {
+        Validate.notNull(nodes);
+        Validate.validState(lastTouchTime == Times.MIN); // must not have been touched yet
+
+        HashSet<Id> ids = new HashSet<>();
+        List<Activity> activities = new ArrayList<>(nodes.size());
+        for (Entry<Node, Instant> entry : nodes.entrySet()) {
+            Node node = entry.getKey();
+            Instant time = entry.getValue();
+            Validate.notNull(node);
+            Validate.notNull(time);
+
+            Id id = node.getId();
+            InternalValidate.matchesLength(baseId.getBitLength(), id);
+            InternalValidate.notMatchesBase(baseId, id);
+            Validate.isTrue(ids.add(id), "Duplicate ID %s", id);
+
+            activities.add(new Activity(node, time));
+        }
+
+        // Sort once, then distribute. Since the distribution preserves order, each k-bucket's list comes out already sorted.
+        activities.sort((x, y) -> Long.compare(x.getTimeNanos(), y.getTimeNanos())); // stable, so ties stay in iteration order
+
+        if (dynamic) {
+            // Which k-buckets exist depends on the order nodes come in, so the best that can be done is to touch them in order
+            return loadByTouching(activities);
+        }
+
+        LinkedHashMap<BitString, KBucket> buckets = new LinkedHashMap<>();
+        HashMap<BitString, List<Activity>> bucketActivities = new HashMap<>();
+        for (Activity activity : activities) {
+            KBucket bucket = materializeBucketFor(activity.getNode().getId());
+            BitString bucketPrefix = bucket.getPrefix();
+            buckets.putIfAbsent(bucketPrefix, bucket);
+            bucketActivities.computeIfAbsent(bucketPrefix, x -> new ArrayList<>()).add(activity);
+        }
+
+        List<RouteTreeChangeSet> ret = new ArrayList<>(buckets.size());
+        for (KBucket bucket : buckets.values()) {
+            BitString bucketPrefix = bucket.getPrefix();
+            KBucketChangeSet kBucketChangeSet = bucket.load(bucketActivities.get(bucketPrefix));
+            updateIndex(bucket, kBucketChangeSet);
+
+            long lastBucketActivityTime = bucket.getLatestBucketActivityTimeNanos();
+            bucketUpdateTimes.remove(bucketPrefix);
+            bucketUpdateTimes.insert(lastBucketActivityTime, bucketPrefix);
+
+            ret.add(new RouteTreeChangeSet(bucketPrefix, kBucketChangeSet));
+        }
+
+        if (!activities.isEmpty()) {
+            lastTouchTime = activities.get(activities.size() - 1).getTimeNanos();
+        }
+
+        return ret;
+    }
+
     /**
      * Marks a node within this route tree as stale (meaning that you're no longer able to communicate with it), evicting it and replacing
      * it with the most recent node in the effected k-bucket's replacement cache. 
@@ -197,47 +578,435 @@ public final class RouteTree {
         Id id = node.getId();
         InternalValidate.matchesLength(baseId.getBitLength(), id);
         InternalValidate.notMatchesBase(baseId, id);
+
+        forgetTouches();
             
-        KBucket bucket = root.getBucketFor(node.getId()); // because we use this method to find the appropriate kbucket,
-                                                          // IdPrefixMismatchException never occurs
+        KBucket bucket = getExistingBucketFor(node); // because we use this method to find the appropriate kbucket,
+                                                     // IdPrefixMismatchException never occurs
         KBucketChangeSet kBucketChangeSet = bucket.stale(node);
         BitString kBucketPrefix = bucket.getPrefix();
+        updateIndex(bucket, kBucketChangeSet);
 
-                // insert last bucket activity time in to bucket update times... it may be null if bucket has never been accessed, in which
-        // case we insert MIN instead
+                // insert last bucket activity time in to bucket update times... it'll be MIN if bucket has never been accessed
         //
         // note that marking a node as stale may have replaced it in the bucket with another node in the cache. That cache node
         // could have an older time than the stale node, meaning that bucketUpdateTimes may actually be older after the replacement!
-        Instant lastBucketActivityTime = bucket.getLatestBucketActivityTime();
-        if (lastBucketActivityTime == null) {
-            lastBucketActivityTime = Instant.MIN;
-        }
+        long lastBucketActivityTime = bucket.getLatestBucketActivityTimeNanos();
         bucketUpdateTimes.remove(kBucketPrefix);
         bucketUpdateTimes.insert(lastBucketActivityTime, kBucketPrefix);
 
         return new RouteTreeChangeSet(kBucketPrefix, kBucketChangeSet);
     }
 
-    // Disable for now -- not being used
-//    public void lock(Node node) {
-//        Validate.notNull(node);
-//
-//        Id id = node.getId();
-//        InternalValidate.matchesLength(baseId.getBitLength(), id);
-//        InternalValidate.notMatchesBase(baseId, id);
-//            
-//        root.getBucketFor(node.getId()).lock(node);
-//    }
-//
-//    public void unlock(Node node) {
-//        Validate.notNull(node);
-//
-//        Id id = node.getId();
-//        InternalValidate.matchesLength(baseId.getBitLength(), id);
-//        InternalValidate.notMatchesBase(baseId, id);
-//            
-//        root.getBucketFor(node.getId()).unlock(node);
-//    }
+    /**
+     * Marks a node within this route tree as locked (meaning that you're temporarily ignoring it, possibly because of network congestion).
+     * Locked nodes aren't returned by {@link #find(com.offbynull.kademlia.Id, int, boolean) }.
+     * <p>
+     * See {@link KBucket#lock(com.offbynull.kademlia.Node) } for more information.
+     * @param node node to mark as locked
+     * @return changes to collection of stored nodes and replacement cache of the k-bucket effected (locking never moves nodes around, so
+     * this will always be empty -- it's returned so that you know which k-bucket was effected)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code node}'s ID doesn't match the bitlength of the owning node's ID (the ID
+     * of the node this route tree is for)
+     * @throws BaseIdMatchException if {@code node}'s ID is the same as the owning node's ID (the ID of the node this route tree is for)
+     * @throws NodeNotFoundException if this route tree doesn't contain {@code node}
+     * @throws LinkMismatchException if this route tree contains a node with {@code node}'s ID but with a different link
+     * @throws BadNodeStateException if this route tree contains {@code node} but {@code node} is marked as stale
+     * @see KBucket#lock(com.offbynull.kademlia.Node)
+     */
+    public RouteTreeChangeSet lock(Node node) {
+        Validate.notNull(node);
+
+        Id id = node.getId();
+        InternalValidate.matchesLength(baseId.getBitLength(), id);
+        InternalValidate.notMatchesBase(baseId, id);
+
+        forgetTouches();
+
+        KBucket bucket = getExistingBucketFor(node);
+        bucket.lock(node);
+
+        return new RouteTreeChangeSet(bucket.getPrefix(),
+                new KBucketChangeSet(ActivityChangeSet.NO_CHANGE, ActivityChangeSet.NO_CHANGE));
+    }
+
+    /**
+     * Reverts a node within this route tree back to a normal state from a locked state.
+     * <p>
+     * See {@link KBucket#unlock(com.offbynull.kademlia.Node) } for more information.
+     * @param node node to revert to normal state from locked state
+     * @return changes to collection of stored nodes and replacement cache of the k-bucket effected (unlocking never moves nodes around, so
+     * this will always be empty -- it's returned so that you know which k-bucket was effected)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code node}'s ID doesn't match the bitlength of the owning node's ID (the ID
+     * of the node this route tree is for)
+     * @throws BaseIdMatchException if {@code node}'s ID is the same as the owning node's ID (the ID of the node this route tree is for)
+     * @throws NodeNotFoundException if this route tree doesn't contain {@code node}
+     * @throws LinkMismatchException if this route tree contains a node with {@code node}'s ID but with a different link
+     * @throws BadNodeStateException if this route tree contains {@code node} but {@code node} is marked as stale
+     * @see KBucket#unlock(com.offbynull.kademlia.Node)
+     */
+    public RouteTreeChangeSet unlock(Node node) {
+        Validate.notNull(node);
+
+        Id id = node.getId();
+        InternalValidate.matchesLength(baseId.getBitLength(), id);
+        InternalValidate.notMatchesBase(baseId, id);
+
+        forgetTouches();
+
+        KBucket bucket = getExistingBucketFor(node);
+        bucket.unlock(node);
+
+        return new RouteTreeChangeSet(bucket.getPrefix(),
+                new KBucketChangeSet(ActivityChangeSet.NO_CHANGE, ActivityChangeSet.NO_CHANGE));
+    }
+
+    /**
+     * Re-queries the bucket strategy this route tree was created with for the parameters of each k-bucket, and resizes any k-bucket whose
+     * parameters have changed. Use this with a bucket strategy that changes its parameters at runtime (e.g.
+     * {@link AdaptiveBucketStrategy}).
+     * <p>
+     * See {@link KBucket#resizeBucket(int) } and {@link KBucket#resizeCache(int) } for more information.
+     * @return changes to collection of stored nodes and replacement cache of each k-bucket that was resized
+     * @throws IllegalStateException if the bucket strategy generates invalid data (see interface for restrictions)
+     */
+    public List<RouteTreeChangeSet> reconfigure() {
+        forgetTouches();
+
+        List<RouteTreeChangeSet> ret = new ArrayList<>();
+        for (BitString prefix : dumpBucketPrefixes()) {
+            KBucket bucket = root.getBucketForPrefix(prefix);
+            if (bucket == null) { // not materialized, it'll pick up the new parameters once it is
+                continue;
+            }
+
+            KBucketParameters bucketParams = bucketStrategy.getBucketParameters(prefix);
+            Validate.validState(bucketParams != null);
+            int bucketSize = bucketParams.getBucketSize();
+            int cacheSize = bucketParams.getCacheSize();
+            if (bucketSize == bucket.getMaxBucketSize() && cacheSize == bucket.getMaxCacheSize()) {
+                continue;
+            }
+
+            // Resize bucket first, so that if it grew it gets a chance to pull in nodes from the cache before the cache shrinks
+            KBucketChangeSet bucketResizeRes = bucket.resizeBucket(bucketSize);
+            KBucketChangeSet cacheResizeRes = bucket.resizeCache(cacheSize);
+            updateIndex(bucket, bucketResizeRes);
+            updateIndex(bucket, cacheResizeRes);
+
+            List<Activity> cacheRemoved = new ArrayList<>();
+            cacheRemoved.addAll(bucketResizeRes.getCacheChangeSet().viewRemoved());
+            cacheRemoved.addAll(cacheResizeRes.getCacheChangeSet().viewRemoved());
+            KBucketChangeSet kBucketChangeSet = new KBucketChangeSet(
+                    bucketResizeRes.getBucketChangeSet(),
+                    ActivityChangeSet.removed(cacheRemoved));
+
+            long lastBucketActivityTime = bucket.getLatestBucketActivityTimeNanos();
+            bucketUpdateTimes.remove(prefix);
+            bucketUpdateTimes.insert(lastBucketActivityTime, prefix);
+
+            ret.add(new RouteTreeChangeSet(prefix, kBucketChangeSet));
+        }
+        return ret;
+    }
+
+    // prefix of the k-bucket that a node in this route tree is in
+    BitString getBucketPrefixFor(Node node) {
+        Validate.notNull(node);
+        return getExistingBucketFor(node).getPrefix();
+    }
+
+    // nodes in the k-bucket that id falls under, filtered the same way as find()
+    List<Activity> dumpBucketFor(Id id, boolean includeStale) {
+        Validate.notNull(id);
+        InternalValidate.matchesLength(baseId.getBitLength(), id);
+
+        applyHeldTouches();
+
+        KBucket bucket = root.getBucketFor(id);
+        if (bucket == null) { // not materialized, so nothing in it
+            return new ArrayList<>();
+        }
+        return bucket.dumpBucket(true, includeStale, false);
+    }
+
+    // throws NodeNotFoundException if node isn't in a k-bucket, or LinkMismatchException if node in k-bucket has a different link
+    boolean isStale(Node node) {
+        Validate.notNull(node);
+
+        Id id = node.getId();
+        InternalValidate.matchesLength(baseId.getBitLength(), id);
+        InternalValidate.notMatchesBase(baseId, id);
+
+        return getExistingBucketFor(node).isStale(node);
+    }
+
+    private List<RouteTreeChangeSet> loadByTouching(List<Activity> sortedActivities) {
+        List<RouteTreeChangeSet> ret = new ArrayList<>(sortedActivities.size());
+        for (Activity activity : sortedActivities) {
+            ret.add(touch(activity.getTimeNanos(), activity.getNode()));
+        }
+        return ret;
+    }
+
+    private boolean isSplittable(BitString prefix) {
+        int prefixBitLength = prefix.getBitLength();
+        if (prefixBitLength >= baseId.getBitLength()) {
+            return false;
+        }
+
+        boolean coversBaseId = baseId.getBitString().getBits(0, prefixBitLength).equals(prefix);
+        boolean relaxed = relaxedSplitDepth > 0 && prefixBitLength % relaxedSplitDepth != 0;
+        if (!coversBaseId && !relaxed) {
+            return false;
+        }
+
+        int numOfBuckets = branchStrategy.getBranchCount(prefix);
+        if (numOfBuckets == 0) { // strategy says don't branch any further
+            return false;
+        }
+        Validate.isTrue(numOfBuckets >= 2, "Branch count must be atleast 2, was %d", numOfBuckets);
+        Validate.isTrue(Integer.bitCount(numOfBuckets) == 1, "Branch count must be power of 2");
+        int suffixBitCount = Integer.bitCount(numOfBuckets - 1);
+        return prefixBitLength + suffixBitCount <= baseId.getBitLength();
+    }
+
+    // nodes that get dropped because a new k-bucket is smaller than the one that split are added to removed
+    private KBucket splitBucketFor(Id id, List<Activity> removed) {
+        forgetTouches(); // order of nodes decides which ones survive the resizes below, and nodes may end up in a replacement cache
+
+        KBucket splitBucket = root.getBucketFor(id);
+        BitString splitBucketPrefix = splitBucket.getPrefix();
+        Validate.validState(splitBucket.dumpCache().isEmpty()); // sanity check, splittable buckets never need their cache
+
+        int suffixBitCount = Integer.bitCount(branchStrategy.getBranchCount(splitBucketPrefix) - 1);
+        KBucket[] newBuckets = splitBucket.split(suffixBitCount);
+        RouteTreeBranch[] newBranches = new RouteTreeBranch[newBuckets.length];
+        for (int i = 0; i < newBuckets.length; i++) {
+            KBucketParameters bucketParams = bucketStrategy.getBucketParameters(newBuckets[i].getPrefix());
+            Validate.validState(bucketParams != null);
+            KBucketChangeSet bucketResizeRes = newBuckets[i].resizeBucket(bucketParams.getBucketSize());
+            KBucketChangeSet cacheResizeRes = newBuckets[i].resizeCache(bucketParams.getCacheSize());
+            removed.addAll(bucketResizeRes.getBucketChangeSet().viewRemoved());
+            removed.addAll(cacheResizeRes.getCacheChangeSet().viewRemoved());
+
+            long lastBucketActivityTime = newBuckets[i].getLatestBucketActivityTimeNanos();
+            bucketUpdateTimes.insert(lastBucketActivityTime, newBuckets[i].getPrefix());
+            newBranches[i] = new RouteTreeBucketBranch(newBuckets[i]);
+        }
+        bucketUpdateTimes.remove(splitBucketPrefix);
+
+        RouteTreeNode newNode = new RouteTreeNode(splitBucketPrefix, suffixBitCount, newBranches);
+        root.replaceBucketFor(id, newNode);
+        structureVersion++;
+
+        // Nodes have moved to new k-buckets (and some may have been dropped by the resizes above), so re-index everything that was in the
+        // k-bucket that split
+        splitBucket.dumpBucket(true, true, true).forEach(x -> nodeIndex.remove(x.getNode().getId()));
+        for (KBucket newBucket : newBuckets) {
+            newBucket.dumpBucket(true, true, true).forEach(x -> nodeIndex.put(x.getNode().getId(), newBucket));
+            newBucket.dumpCache().forEach(x -> nodeIndex.put(x.getNode().getId(), newBucket));
+        }
+        splitBucket.discard(); // no longer in the tree
+
+        return newNode.getBucketFor(id);
+    }
+
+    private KBucket materializeBucketFor(Id id) {
+        return root.materializeBucketFor(id, prefix -> {
+            KBucketParameters bucketParams = bucketStrategy.getBucketParameters(prefix);
+            Validate.validState(bucketParams != null);
+            structureVersion++; // only called when a bucket is being created
+            int bitLength = baseId.getBitLength();
+            Supplier<ActivityStore> bucketStoreFactory = bucketParams.isPacked()
+                    ? () -> new PackedActivityStore(bitLength, linkTable)
+                    : ObjectActivityStore::new;
+            Supplier<ActivityStore> cacheStoreFactory = bucketParams.isOffHeapCache()
+                    ? () -> new OffHeapActivityStore(bitLength, linkTable)
+                    : bucketStoreFactory;
+            KBucket bucket = new KBucket(baseId, prefix, bucketParams.getBucketSize(), bucketParams.getCacheSize(), bucketStoreFactory,
+                    cacheStoreFactory);
+            bucket.setTouchTolerance(Duration.ofNanos(touchTolerance));
+            return bucket;
+        });
+    }
+
+    // throws NodeNotFoundException if the k-bucket that node would be in hasn't been materialized yet (it can't contain anything)
+    private KBucket getExistingBucketFor(Node node) {
+        KBucket bucket = root.getBucketFor(node.getId());
+        if (bucket == null) {
+            throw new NodeNotFoundException(node);
+        }
+        return bucket;
+    }
+
+    /**
+     * Checks if a node is in this route tree (either in a k-bucket or in the replacement cache of a k-bucket). Runs in constant time.
+     * @param id ID of node
+     * @return {@code true} if this route tree contains a node with {@code id}, {@code false} otherwise
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public boolean contains(Id id) {
+        Validate.notNull(id);
+        return nodeIndex.containsKey(id);
+    }
+
+    /**
+     * Get a node in this route tree (either in a k-bucket or in the replacement cache of a k-bucket), along with the time it was last
+     * touched. The k-bucket holding the node is found in constant time, and only that k-bucket is searched.
+     * @param id ID of node
+     * @return node with {@code id} and the time it was last touched, or {@code null} if this route tree doesn't contain a node with
+     * {@code id}
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public Activity get(Id id) {
+        Validate.notNull(id);
+        applyHeldTouches();
+        KBucket bucket = nodeIndex.get(id);
+        return bucket == null ? null : bucket.get(id);
+    }
+
+    // node with id in a k-bucket (not a replacement cache), or null if no k-bucket contains it -- doesn't apply held back touches, because
+    // those never change which node is in a k-bucket
+    Node getBucketNode(Id id) {
+        KBucket bucket = nodeIndex.get(id);
+        return bucket == null ? null : bucket.getBucketNode(id);
+    }
+
+    /**
+     * Get the state of a node in this route tree. The k-bucket holding the node is found in constant time, and only that k-bucket is
+     * searched.
+     * @param id ID of node
+     * @return state of node with {@code id}, or {@code null} if this route tree doesn't contain a node with {@code id}
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public NodeState getState(Id id) {
+        Validate.notNull(id);
+        KBucket bucket = nodeIndex.get(id);
+        if (bucket == null) {
+            return null;
+        } else if (bucket.isInStaleSet(id)) {
+            return NodeState.STALE;
+        } else if (bucket.isInLockSet(id)) {
+            return NodeState.LOCKED;
+        } else if (bucket.isInCache(id)) {
+            return NodeState.CACHED;
+        } else {
+            return NodeState.ACTIVE;
+        }
+    }
+
+    private void updateIndex(KBucket bucket, KBucketChangeSet changeSet) {
+        // Removals first -- a node moving between the bucket and the cache of the same k-bucket shows up as both a removal and an addition
+        ActivityChangeSet bucketChangeSet = changeSet.getBucketChangeSet();
+        ActivityChangeSet cacheChangeSet = changeSet.getCacheChangeSet();
+        for (Activity removed : bucketChangeSet.viewRemoved()) {
+            nodeIndex.remove(removed.getNode().getId());
+        }
+        for (Activity removed : cacheChangeSet.viewRemoved()) {
+            nodeIndex.remove(removed.getNode().getId());
+        }
+        for (Activity added : bucketChangeSet.viewAdded()) {
+            nodeIndex.put(added.getNode().getId(), bucket);
+        }
+        for (Activity added : cacheChangeSet.viewAdded()) {
+            nodeIndex.put(added.getNode().getId(), bucket);
+        }
+    }
+
+    // Holds back touch if node was recently touched in to a k-bucket (see setTouchCoalescing()), returns null if touch needs to be applied
+    private RouteTreeChangeSet holdTouch(long time, Node node) {
+        TouchRecord record = touchRecords.get(node.getId());
+        if (record == null) {
+            return null;
+        }
+
+        long elapsed = time - record.appliedTime; // negative if overflowed, times are never backwards
+        if (elapsed < 0L || elapsed >= touchCoalescingResolution) {
+            return null;
+        }
+        if (!record.node.getLink().equals(node.getLink())) { // let touch go through so that it fails the same way it normally would
+            return null;
+        }
+
+        if (!record.held) {
+            record.held = true;
+            heldTouchCount++;
+        }
+        record.heldTime = time;
+
+        KBucket bucket = nodeIndex.get(node.getId());
+        return new RouteTreeChangeSet(bucket.getPrefix(),
+                new KBucketChangeSet(ActivityChangeSet.updated(new Activity(node, time)), ActivityChangeSet.NO_CHANGE));
+    }
+
+    // Records touch that was applied, so that touches that come in shortly after can be held back (only if the node went in to the
+    // k-bucket and isn't locked -- locked and cached nodes still need every touch applied)
+    private void recordTouch(Node node, KBucket bucket, KBucketChangeSet changeSet) {
+        Id id = node.getId();
+        TouchRecord oldRecord = touchRecords.remove(id);
+        if (oldRecord != null && oldRecord.held) { // held back touch is older than the touch just applied, so drop it
+            heldTouchCount--;
+        }
+
+        ActivityChangeSet bucketChangeSet = changeSet.getBucketChangeSet();
+        Activity applied = findById(bucketChangeSet.viewAdded(), id);
+        if (applied == null) {
+            applied = findById(bucketChangeSet.viewUpdated(), id);
+        }
+        if (applied == null || bucket.isInLockSet(id)) {
+            return;
+        }
+
+        if (touchRecords.size() >= MAX_TOUCH_RECORDS) {
+            forgetTouches();
+        }
+        touchRecords.put(id, new TouchRecord(node, applied.getTimeNanos())); // time node ended up at, may be later than a late touch's
+    }
+
+    private static Activity findById(List<Activity> activities, Id id) {
+        for (Activity activity : activities) {
+            if (activity.getNode().getId().equals(id)) {
+                return activity;
+            }
+        }
+        return null;
+    }
+
+    // Applies held back touches, in the order that they came in
+    void applyHeldTouches() {
+        if (heldTouchCount == 0) {
+            return;
+        }
+
+        List<TouchRecord> held = new ArrayList<>(heldTouchCount);
+        for (TouchRecord record : touchRecords.values()) {
+            if (record.held) {
+                held.add(record);
+                record.held = false;
+            }
+        }
+        held.sort((x, y) -> Long.compare(x.heldTime, y.heldTime));
+        heldTouchCount = 0;
+
+        for (TouchRecord record : held) {
+            KBucket bucket = nodeIndex.get(record.node.getId());
+            bucket.applyHeldTouch(record.heldTime, record.node);
+
+            BitString prefix = bucket.getPrefix();
+            bucketUpdateTimes.remove(prefix);
+            bucketUpdateTimes.insert(bucket.getLatestBucketActivityTimeNanos(), prefix);
+        }
+    }
+
+    // Applies held back touches and drops all touch records -- for operations that may move nodes out of their k-bucket or change their
+    // state
+    private void forgetTouches() {
+        applyHeldTouches();
+        touchRecords.clear();
+    }
 
     /**
      * Get prefixes for k-buckets that haven't been updated
@@ -248,18 +1017,16 @@ public final class RouteTree {
      */
     public List<BitString> getStagnantBuckets(Instant time) { // is inclusive
         Validate.notNull(time);
-        
-        List<BitString> prefixes = bucketUpdateTimes.getBefore(time, true);
+
+        applyHeldTouches();
+        List<BitString> prefixes = bucketUpdateTimes.getBefore(Times.toNanosSaturated(time), true);
         return prefixes;
     }
     
     private static final BitString EMPTY = BitString.createFromString("");
 
-    private RouteTreeNode createRoot(
-            RouteTreeBranchStrategy branchStrategy,
-            RouteTreeBucketStrategy bucketStrategy) {
+    private RouteTreeNode createRoot(RouteTreeBranchStrategy branchStrategy) {
         Validate.notNull(branchStrategy);
-        Validate.notNull(bucketStrategy);
 
 
         // Get number of branches/buckets to create for root
@@ -272,34 +1039,16 @@ public final class RouteTree {
                 "Attempting to branch too far (in root) %d bits extends past %d bits", suffixBitCount, baseId.getBitLength());
 
         
-        // Create buckets by creating a 0-sized top bucket and splitting it + resizing each split
-        KBucket[] newBuckets = new KBucket(baseId, EMPTY, 0, 0).split(suffixBitCount);
-        for (int i = 0; i < newBuckets.length; i++) {
-            KBucketParameters bucketParams = bucketStrategy.getBucketParameters(newBuckets[i].getPrefix());
-            int bucketSize = bucketParams.getBucketSize();
-            int cacheSize = bucketParams.getCacheSize();
-            newBuckets[i].resizeBucket(bucketSize);
-            newBuckets[i].resizeCache(cacheSize);
-            
-            // insert last bucket activity time in to bucket update times... it may be null if bucket has never been accessed, in which case
-            // we insert MIN instead
-            Instant lastBucketActivityTime = newBuckets[i].getLatestBucketActivityTime();
-            if (lastBucketActivityTime == null) {
-                lastBucketActivityTime = Instant.MIN;
-            }
-            bucketUpdateTimes.insert(lastBucketActivityTime, newBuckets[i].getPrefix());
-        }
+        // Create placeholders for buckets -- buckets are only materialized once something gets touched in to them
+        RouteTreeBranch[] newBranches = createEmptyBranches(EMPTY, suffixBitCount);
 
         // Create root
-        return new RouteTreeNode(EMPTY, suffixBitCount, newBuckets);
+        return new RouteTreeNode(EMPTY, suffixBitCount, newBranches);
     }
 
-    private RouteTreeNode growParent(RouteTreeNode parent,
-            RouteTreeBranchStrategy branchStrategy,
-            RouteTreeBucketStrategy bucketStrategy) {
+    private RouteTreeNode growParent(RouteTreeNode parent, RouteTreeBranchStrategy branchStrategy) {
         Validate.notNull(parent);
         Validate.notNull(branchStrategy);
-        Validate.notNull(bucketStrategy);
 
         
         // Calculate which bucket from parent to split
@@ -316,8 +1065,9 @@ public final class RouteTree {
         }
         
         int splitBucketIdx = (int) baseId.getBitString().getBitsAsLong(parentPrefixBitLen, parentSuffixBitCount);
-        KBucket splitBucket = parent.getBranch(splitBucketIdx).getItem();
-        BitString splitBucketPrefix = splitBucket.getPrefix();
+        RouteTreeBranch splitBranch = parent.getBranch(splitBucketIdx);
+        Validate.validState(splitBranch instanceof RouteTreeEmptyBranch); // tree is still being built, nothing can be materialized yet
+        BitString splitBucketPrefix = splitBranch.getPrefix();
         
         
         // Get number of buckets to create for new level
@@ -330,32 +1080,108 @@ public final class RouteTree {
                 baseId.getBitLength());
         
         
-        // Split parent bucket at that branch index
-        BitString newPrefix = baseId.getBitString().getBits(0, parentPrefixBitLen + suffixBitCount);
-        KBucket[] newBuckets = splitBucket.split(suffixBitCount);
-        for (int i = 0; i < newBuckets.length; i++) {
-            KBucketParameters bucketParams = bucketStrategy.getBucketParameters(newBuckets[i].getPrefix());
-            int bucketSize = bucketParams.getBucketSize();
-            int cacheSize = bucketParams.getCacheSize();
-            newBuckets[i].resizeBucket(bucketSize);
-            newBuckets[i].resizeCache(cacheSize);
+        // Split parent bucket at that branch index (bucket being split was never materialized, so there's nothing to move over)
+        RouteTreeBranch[] newBranches = createEmptyBranches(splitBucketPrefix, suffixBitCount);
 
-            Instant lastBucketActivityTime = newBuckets[i].getLatestBucketActivityTime();
-            if (lastBucketActivityTime == null) {
-                lastBucketActivityTime = Instant.MIN;
-            }
-            bucketUpdateTimes.insert(lastBucketActivityTime, newBuckets[i].getPrefix());
-        }
-
-        // Get rid of parent bucket we just split. It branches down at that point, and any nodes that were contained within will be in the
-        // newly created buckets
+        // Get rid of parent bucket we just split. It branches down at that point.
         bucketUpdateTimes.remove(splitBucketPrefix);
 
         // Create new level and set as child
-        RouteTreeNode newNode = new RouteTreeNode(newPrefix, suffixBitCount, newBuckets);
+        RouteTreeNode newNode = new RouteTreeNode(splitBucketPrefix, suffixBitCount, newBranches);
         
         parent.setBranch(splitBucketIdx, new RouteTreeNodeBranch(newNode));
         
         return newNode;
     }
+
+    private RouteTreeBranch[] createEmptyBranches(BitString prefix, int suffixBitCount) {
+        // Generates 2^suffixBitCount placeholders, where each placeholder i has prefix with i appended to it. For example, if prefix = 1010
+        // and suffixBitCount = 2, the prefixes would be 101000, 101001, 101010, and 101011.
+        int len = 1 << suffixBitCount;
+        RouteTreeBranch[] newBranches = new RouteTreeBranch[len];
+        for (int i = 0; i < len; i++) {
+            BitString newPrefix = prefix.appendBits(i, suffixBitCount);
+            newBranches[i] = new RouteTreeEmptyBranch(newPrefix);
+
+            // bucket has never been accessed, so its last update time is MIN
+            bucketUpdateTimes.insert(Times.MIN, newPrefix);
+        }
+        return newBranches;
+    }
+
+    private static final class FindKey {
+        private final Id id;
+        private final int max;
+        private final boolean includeStale;
+
+        FindKey(Id id, int max, boolean includeStale) {
+            this.id = id;
+            this.max = max;
+            this.includeStale = includeStale;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 53 * hash + id.hashCode();
+            hash = 53 * hash + max;
+            hash = 53 * hash + (includeStale ? 1 : 0);
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            final FindKey other = (FindKey) obj;
+            return max == other.max && includeStale == other.includeStale && id.equals(other.id);
+        }
+    }
+
+    private static final class TouchRecord {
+        private final Node node;
+        private final long appliedTime; // time of last touch that was applied
+        private boolean held; // true if a later touch is being held back
+        private long heldTime; // time of the touch being held back
+
+        TouchRecord(Node node, long appliedTime) {
+            this.node = node;
+            this.appliedTime = appliedTime;
+        }
+    }
+
+    private static final class FindResult {
+        private final long structureVersion; // structure version of the route tree at the time of the find
+        private final KBucket[] buckets; // k-buckets read during the find
+        private final long[] bucketVersions; // versions of those k-buckets at the time of the find
+        private final List<Activity> activities;
+
+        FindResult(long structureVersion, Collection<KBucket> buckets, List<Activity> activities) {
+            this.structureVersion = structureVersion;
+            this.buckets = buckets.toArray(new KBucket[buckets.size()]);
+            this.bucketVersions = new long[this.buckets.length];
+            for (int i = 0; i < this.buckets.length; i++) {
+                bucketVersions[i] = this.buckets[i].getVersion();
+            }
+            this.activities = activities;
+        }
+
+        boolean isValid(long currentStructureVersion) {
+            // If no k-buckets have been added/replaced and none of the k-buckets that were read have changed, the find would walk the
+            // exact same path and read the exact same nodes
+            if (structureVersion != currentStructureVersion) {
+                return false;
+            }
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i].getVersion() != bucketVersions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import org.apache.commons.lang3.Validate;
+
+// Placeholder for a k-bucket that hasn't been materialized yet. Most k-buckets in a strict route tree never receive a single node, so
+// rather than creating a KBucket (and all of the collections that come with it) up front, only the prefix is kept around until the first
+// touch comes in.
+final class RouteTreeEmptyBranch implements RouteTreeBranch {
+
+    private final BitString prefix;
+
+    RouteTreeEmptyBranch(BitString prefix) {
+        Validate.notNull(prefix);
+        this.prefix = prefix;
+    }
+
+    @Override
+    public BitString getPrefix() {
+        return prefix;
+    }
+
+    @Override
+    public <T> T getItem() {
+        return null;
+    }
+}
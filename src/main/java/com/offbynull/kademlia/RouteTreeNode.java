@@ -16,16 +16,12 @@
  */
 package com.offbynull.kademlia;
 
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import static java.util.Collections.emptySet;
-import static java.util.Collections.singleton;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.TreeSet;
+import java.util.function.Function;
 import org.apache.commons.lang3.Validate;
 
 final class RouteTreeNode {
@@ -34,18 +30,15 @@ final class RouteTreeNode {
     private final int suffixLen;
     private final List<RouteTreeBranch> branches; // branches can contain KBuckets or RouteTreeLevels that are further down
 
-    RouteTreeNode(BitString prefix, int suffixLen, KBucket[] buckets) {
+    RouteTreeNode(BitString prefix, int suffixLen, RouteTreeBranch[] branches) {
         Validate.notNull(prefix);
-        Validate.notNull(buckets);
-        Validate.noNullElements(buckets);
+        Validate.notNull(branches);
+        Validate.noNullElements(branches);
         Validate.isTrue(suffixLen > 0);
         
         this.prefix = prefix;
         this.suffixLen = suffixLen;
-        this.branches = new ArrayList<>(buckets.length);
-        Arrays.stream(buckets)
-                .map(x -> new RouteTreeBucketBranch(x))
-                .forEachOrdered(branches::add);
+        this.branches = new ArrayList<>(Arrays.asList(branches));
     }
 
     public RouteTreeBranch getBranch(int idx) {
@@ -71,59 +64,75 @@ final class RouteTreeNode {
         return prefix;
     }
 
-    // id is the id we're trying to find
-    // treeset compares against id
-    public void findNodesWithLargestPossiblePrefix(Id id, TreeSet<Activity> output, int max, boolean includeStale) {
-        Validate.notNull(id);
-        Validate.notNull(output);  // technically shouldn't contain any null elements, but we don't care since we're just adding to this
+    // ids[start, end) are the ids we're trying to find -- they must be sorted and must all match this tree node's prefix
+    // outputs are aligned with ids, each treeset compares against its id
+    //
+    // Recursively go down the until you find the branch with the largest matching prefix to ID. Once you find it, call
+    // dumpAllNodesUnderTreeNode, and as you pop back up call dumpAllNodesUnderTreeNode again (making sure to not recurse back in to
+    // the branch you're coming out of).
+    //
+    // Because ids are sorted, ids that go down the same branch sit next to each other. Each run of such ids is split off in to its own
+    // group, and the group goes down that branch together (trie-style), so the path down the tree is walked once per group rather than
+    // once per id. Each id still ends up with the same output it would if it were searched for on its own.
+    //
+    // bucketDumps holds the filtered nodes of each k-bucket dumped so far, so that each k-bucket only gets filtered once per batch. Once
+    // this method returns, its keys are the k-buckets that were read.
+    public void findNodesWithLargestPossiblePrefix(Id[] ids, List<TreeSet<Activity>> outputs, int start, int end, int max,
+            boolean includeStale, Map<KBucket, List<Activity>> bucketDumps) {
+        Validate.notNull(ids);
+        Validate.notNull(outputs);
+        Validate.notNull(bucketDumps);
+        Validate.isTrue(start >= 0 && start <= end && end <= ids.length);
         Validate.isTrue(max >= 0); // why would anyone want 0? let thru anyways
-        Validate.isTrue(id.getBitString().getBits(0, prefix.getBitLength()).equals(prefix)); // ensure prefix matches
 
-        // Recursively go down the until you find the branch with the largest matching prefix to ID. Once you find it, call
-        // dumpAllNodesUnderTreeNode, and as you pop back up call dumpAllNodesUnderTreeNode again (making sure to not recurse back in to
-        // the branch you're coming out of).
+        int groupStart = start;
+        while (groupStart < end) {
+            int traverseIdx = (int) ids[groupStart].getBitsAsLong(prefix.getBitLength(), suffixLen);
+            int groupEnd = groupStart + 1;
+            while (groupEnd < end && (int) ids[groupEnd].getBitsAsLong(prefix.getBitLength(), suffixLen) == traverseIdx) {
+                groupEnd++;
+            }
 
-        int traverseIdx = (int) id.getBitsAsLong(prefix.getBitLength(), suffixLen);
-        RouteTreeBranch traverseBranch = branches.get(traverseIdx);
-        BitString traversePrefix = traverseBranch.getPrefix(); //id.getBitString().getBits(0, prefix.getBitLength() + suffixLen);
+            RouteTreeBranch traverseBranch = branches.get(traverseIdx);
+            if (traverseBranch instanceof RouteTreeNodeBranch) {
+                RouteTreeNode treeNode = traverseBranch.getItem();
+                treeNode.findNodesWithLargestPossiblePrefix(ids, outputs, groupStart, groupEnd, max, includeStale, bucketDumps);
 
-        if (traverseBranch instanceof RouteTreeNodeBranch) {
-            RouteTreeNode treeNode = traverseBranch.getItem();
-            treeNode.findNodesWithLargestPossiblePrefix(id, output, max, includeStale);
+                for (int i = groupStart; i < groupEnd; i++) {
+                    dumpAllNodesUnderTreeNode(ids[i], traverseIdx, true, outputs.get(i), max, includeStale, bucketDumps);
+                }
+            } else if (traverseBranch instanceof RouteTreeBucketBranch || traverseBranch instanceof RouteTreeEmptyBranch) {
+                for (int i = groupStart; i < groupEnd; i++) {
+                    dumpAllNodesUnderTreeNode(ids[i], traverseIdx, false, outputs.get(i), max, includeStale, bucketDumps);
+                }
+            } else {
+                throw new IllegalStateException(); // should never happen
+            }
 
-            dumpAllNodesUnderTreeNode(id, output, max, includeStale, singleton(traversePrefix));
-        } else if (traverseBranch instanceof RouteTreeBucketBranch) {
-            dumpAllNodesUnderTreeNode(id, output, max, includeStale, emptySet());
-        } else {
-            throw new IllegalStateException(); // should never happen
+            groupStart = groupEnd;
         }
     }
 
-    // id is the id we're trying to find
+    // id is the id we're trying to find, idIdx is the branch index id maps to at this tree node
     // treeset compares against id
-    public void dumpAllNodesUnderTreeNode(Id id, TreeSet<Activity> output, int max, boolean includeStale, Set<BitString> skipPrefixes) {
-        Validate.notNull(id);
-        Validate.notNull(output);  // technically shouldn't contain any null elements, but we don't care since we're just adding to this
-        Validate.notNull(skipPrefixes);
-        Validate.noNullElements(skipPrefixes);
-        Validate.isTrue(max >= 0); // why would anyone want 0 here? let thru anwyways
-
+    // if skipIdIdx is set, the branch at idIdx (the branch we're coming out of) is skipped
+    private void dumpAllNodesUnderTreeNode(Id id, int idIdx, boolean skipIdIdx, TreeSet<Activity> output, int max, boolean includeStale,
+            Map<KBucket, List<Activity>> bucketDumps) {
         // No more room in bucket? just leave right away.
         if (output.size() >= max) {
             return;
         }
 
-        // Sort branches at this treenode by how close the are to the ID we're searching for... Go through the sorted branches in
-        // order...
+        // Go through the branches at this treenode by how close the are to the ID we're searching for...
         //
         //   If it's a bucket: dump it.
         //   If it's a branch: recurse in to the branch and repeat
         //
-        ArrayList<RouteTreeBranch> sortedBranches = new ArrayList<>(branches);
-        Collections.sort(sortedBranches, new PrefixClosenessComparator(id, prefix.getBitLength(), suffixLen));
-
-        // What is the point of taking in an ID and sorting the branches in this tree node such that the we access the "closer" prefixes
-        // first? We want to access the branches that are closer to the suffix of the ID first because ...
+        // Closeness of a branch is the XOR of its index with idIdx, so the n-th closest branch is the branch at index (n XOR idIdx) -- the
+        // branches can be walked in order of closeness without having to sort them.
+        //
+        // What is the point of taking in an ID and going through the branches in this tree node such that the we access the "closer"
+        // prefixes first? We want to access the branches that are closer to the suffix of the ID first because ...
         //
         //
         // 1. Given the same prefix, we don't end up accessing the exact same set of nodes given. For example...
@@ -182,26 +191,26 @@ final class RouteTreeNode {
         //
         // An example ID in top:    110011 ... XOR(111110, 110011) = 001101 = 13
         // An exmaple ID in bottom: 110100 ... XOR(111110, 110100) = 001010 = 9
-        // 
+        //
 
-        for (RouteTreeBranch sortedBranch : sortedBranches) {
-            if (skipPrefixes.contains(sortedBranch.getPrefix())) {
-                continue;
-            }
 
-            if (sortedBranch instanceof RouteTreeNodeBranch) {
-                RouteTreeNode node = sortedBranch.getItem();
-                node.dumpAllNodesUnderTreeNode(id, output, max, includeStale, emptySet()); // dont propogate skipPrefixes (not relevant)
+        for (int i = skipIdIdx ? 1 : 0; i < branches.size(); i++) {
+            RouteTreeBranch branch = branches.get(i ^ idIdx);
+
+            if (branch instanceof RouteTreeNodeBranch) {
+                RouteTreeNode node = branch.getItem();
+                int nodeIdIdx = (int) id.getBitsAsLong(node.prefix.getBitLength(), node.suffixLen);
+                node.dumpAllNodesUnderTreeNode(id, nodeIdIdx, false, output, max, includeStale, bucketDumps);
 
                 // Bucket's full after dumping nodes in that branch. No point in continued processing.
                 if (output.size() >= max) {
                     return;
                 }
-            } else if (sortedBranch instanceof RouteTreeBucketBranch) {
-                KBucket bucket = sortedBranch.getItem();
+            } else if (branch instanceof RouteTreeBucketBranch) {
+                KBucket bucket = branch.getItem();
 
                 // don't bother with locked nodes for now, we're not supporting them
-                output.addAll(bucket.dumpBucket(true, includeStale, false));
+                output.addAll(bucketDumps.computeIfAbsent(bucket, x -> x.dumpBucket(true, includeStale, false)));
 
                 // Bucket's full after that add. No point in continued processing.
                 if (output.size() >= max) {
@@ -211,15 +220,20 @@ final class RouteTreeNode {
                     }
                     return;
                 }
+            } else if (branch instanceof RouteTreeEmptyBranch) {
+                // bucket hasn't been materialized, so there's nothing to dump
             } else {
                 throw new IllegalStateException(); // should never happen
             }
         }
     }
 
+    // returns null if the bucket hasn't been materialized yet
     public KBucket getBucketForPrefix(BitString searchPrefix) {
         Validate.notNull(searchPrefix);
-        Validate.isTrue(searchPrefix.getBits(0, prefix.getBitLength()).equals(prefix)); // ensure prefix of searchPrefix matches
+        if (InternalValidate.DEBUG) {
+            Validate.isTrue(searchPrefix.getBits(0, prefix.getBitLength()).equals(prefix)); // ensure prefix of searchPrefix matches
+        }
 
         int bucketIdx = (int) searchPrefix.getBitsAsLong(prefix.getBitLength(), suffixLen);
         RouteTreeBranch branch = branches.get(bucketIdx);
@@ -230,14 +244,19 @@ final class RouteTreeNode {
         } else if (branch instanceof RouteTreeBucketBranch) {
             KBucket bucket = branch.getItem();
             return bucket;
+        } else if (branch instanceof RouteTreeEmptyBranch) {
+            return null;
         } else {
             throw new IllegalStateException(); // should never happen
         }
     }
 
+    // returns null if the bucket hasn't been materialized yet
     public KBucket getBucketFor(Id id) {
         Validate.notNull(id);
-        Validate.isTrue(id.getBitString().getBits(0, prefix.getBitLength()).equals(prefix)); // ensure prefix matches
+        if (InternalValidate.DEBUG) {
+            Validate.isTrue(id.getBitString().getBits(0, prefix.getBitLength()).equals(prefix)); // ensure prefix matches
+        }
 
         int bucketIdx = (int) id.getBitsAsLong(prefix.getBitLength(), suffixLen);
         RouteTreeBranch branch = branches.get(bucketIdx);
@@ -248,10 +267,62 @@ final class RouteTreeNode {
         } else if (branch instanceof RouteTreeBucketBranch) {
             KBucket bucket = branch.getItem();
             return bucket;
+        } else if (branch instanceof RouteTreeEmptyBranch) {
+            return null;
         } else {
             throw new IllegalStateException(); // should never happen
         }
-    }    
+    }
+
+    // replaces the bucket that id falls under with a tree node (the tree node must have the same prefix as the bucket being replaced)
+    public void replaceBucketFor(Id id, RouteTreeNode replacement) {
+        Validate.notNull(id);
+        Validate.notNull(replacement);
+        if (InternalValidate.DEBUG) {
+            Validate.isTrue(id.getBitString().getBits(0, prefix.getBitLength()).equals(prefix)); // ensure prefix matches
+        }
+
+        int bucketIdx = (int) id.getBitsAsLong(prefix.getBitLength(), suffixLen);
+        RouteTreeBranch branch = branches.get(bucketIdx);
+
+        if (branch instanceof RouteTreeNodeBranch) {
+            RouteTreeNode treeNode = branch.getItem();
+            treeNode.replaceBucketFor(id, replacement);
+        } else if (branch instanceof RouteTreeBucketBranch || branch instanceof RouteTreeEmptyBranch) {
+            Validate.isTrue(branch.getPrefix().equals(replacement.getPrefix()));
+            branches.set(bucketIdx, new RouteTreeNodeBranch(replacement));
+        } else {
+            throw new IllegalStateException(); // should never happen
+        }
+    }
+
+    // same as getBucketFor(), but if the bucket hasn't been materialized yet it gets created by bucketFactory (which gets passed in the
+    // bucket's prefix) and swapped in to the tree
+    public KBucket materializeBucketFor(Id id, Function<BitString, KBucket> bucketFactory) {
+        Validate.notNull(id);
+        Validate.notNull(bucketFactory);
+        if (InternalValidate.DEBUG) {
+            Validate.isTrue(id.getBitString().getBits(0, prefix.getBitLength()).equals(prefix)); // ensure prefix matches
+        }
+
+        int bucketIdx = (int) id.getBitsAsLong(prefix.getBitLength(), suffixLen);
+        RouteTreeBranch branch = branches.get(bucketIdx);
+
+        if (branch instanceof RouteTreeNodeBranch) {
+            RouteTreeNode treeNode = branch.getItem();
+            return treeNode.materializeBucketFor(id, bucketFactory);
+        } else if (branch instanceof RouteTreeBucketBranch) {
+            KBucket bucket = branch.getItem();
+            return bucket;
+        } else if (branch instanceof RouteTreeEmptyBranch) {
+            KBucket bucket = bucketFactory.apply(branch.getPrefix());
+            Validate.validState(bucket.getPrefix().equals(branch.getPrefix())); // sanity check
+            branches.set(bucketIdx, new RouteTreeBucketBranch(bucket));
+            return bucket;
+        } else {
+            throw new IllegalStateException(); // should never happen
+        }
+    }
     
     public void dumpAllBucketPrefixes(List<BitString> output) {
         Validate.notNull(output); // technically shouldn't contain any null elements, but we don't care since we're just adding to this
@@ -260,44 +331,11 @@ final class RouteTreeNode {
             if (branch instanceof RouteTreeNodeBranch) {
                 RouteTreeNode treeNode = branch.getItem();
                 treeNode.dumpAllBucketPrefixes(output);
-            } else if (branch instanceof RouteTreeBucketBranch) {
+            } else if (branch instanceof RouteTreeBucketBranch || branch instanceof RouteTreeEmptyBranch) {
                 output.add(branch.getPrefix());
             } else {
                 throw new IllegalStateException(); // should never happen
             }
         }
-    }    
-        
-        
-    private static final class PrefixClosenessComparator implements Comparator<RouteTreeBranch>, Serializable {
-        private static final long serialVersionUID = 1L;
-        
-        // This is a hacky way to compare bitstrings using the XOR metric intended for IDs
-        private final int prefixLen;
-        private final int suffixLen;
-        private final IdXorMetricComparator partialIdClosenessComparator;
-
-        PrefixClosenessComparator(Id id, int prefixLen, int suffixLen) {
-            Validate.notNull(id);
-            Validate.isTrue(prefixLen >= 0);
-            Validate.isTrue(suffixLen > 0);
-            Validate.isTrue(id.getBitLength() >= prefixLen + suffixLen);
-            
-            this.prefixLen = prefixLen;
-            this.suffixLen = suffixLen;
-            
-            Id partialId = Id.create(id.getBitString().getBits(prefixLen, suffixLen));
-            this.partialIdClosenessComparator = new IdXorMetricComparator(partialId);
-        }
-
-        @Override
-        public int compare(RouteTreeBranch o1, RouteTreeBranch o2) {
-            Validate.isTrue(o1.getPrefix().getBitLength() == prefixLen + suffixLen);
-            Validate.isTrue(o2.getPrefix().getBitLength() == prefixLen + suffixLen);
-            
-            return partialIdClosenessComparator.compare(
-                    Id.create(o1.getPrefix().getBits(prefixLen, suffixLen)),
-                    Id.create(o2.getPrefix().getBits(prefixLen, suffixLen)));
-        }
     }
 }
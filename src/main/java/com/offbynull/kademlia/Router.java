@@ -16,22 +16,52 @@
  */
 package com.offbynull.kademlia;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import org.apache.commons.lang3.Validate;
 
 /**
- * Encapsulates a {@link RouteTree}. May provide additional functionality in the future.
+ * Encapsulates a {@link RouteTree}, and keeps track of nodes that fail to respond.
+ * <p>
+ * According to the Kademlia paper...
+ * <blockquote>
+ * A related problem is that because Kademlia uses UDP, valid contacts will sometimes fail to respond when network packets are dropped.
+ * Since packet loss often indicates network congestion, Kademlia locks unresponsive contacts and avoids sending them any further RPCs
+ * for an exponentially increasing backoff interval.
+ * </blockquote>
+ * As such, rather than marking a node as stale the first time it fails to respond, call
+ * {@link #unresponsive(java.time.Instant, com.offbynull.kademlia.Node) } and let this router decide. The node will be locked for an
+ * exponentially increasing backoff interval, and only once it fails to respond too many times in a row will it be marked as stale (see
+ * {@link BackoffParameters}).
  * @author Kasra Faghihi
  */
 public final class Router {
-    // NOTE: Right now this class just encapsulates a RouteTree, but it may be refactored in the future to support more elaborate logic
-    // (e.g. keeping track of the number of times a node didn't respond in time and locking that node/marking it stale)
+    private static final BackoffParameters DEFAULT_BACKOFF_PARAMETERS =
+            new BackoffParameters(Duration.ofSeconds(5L), Duration.ofMinutes(5L), 5);
+    private static final int LOCK_EXPIRATION_SLOT_COUNT = 512;
+    private static final int LOCK_EXPIRATION_TICKS_PER_INITIAL_LOCK = 8;
+    private static final int RTT_SMOOTHING_SHIFT = 3; // new smoothed rtt = old smoothed rtt + (sample - old smoothed rtt) / 2^3
+
     private final Id baseId;
     private final RouteTree routeTree;
+
+    private final BackoffParameters backoffParameters;
+    private final HashMap<Id, Integer> unresponsiveCounts; // id to number of times in a row node failed to respond
+    private final HashMap<Id, Node> lockedNodes; // id to node locked by this router
+    private final TimerWheel<Id> lockExpirations; // id to when the lock on the node should be lifted
+    private final HashMap<Id, Long> smoothedRtts; // id to smoothed round-trip time (in nanos) of node
     
-    private Instant lastTouchTime;
+    private long lastTouchTime; // nanos since epoch (see Times)
+    private long touchTolerance; // nanos, how far before lastTouchTime a touch is allowed to be (see setTouchTolerance())
+    private LinkMismatchPolicy linkMismatchPolicy;
 
     /**
      * Constructs a {@link Router} object.
@@ -40,20 +70,58 @@ public final class Router {
      * each depth)
      * @param bucketStrategy bucket strategy for the route tree to be created by this router (dictates k-bucket parameters for each
      * k-bucket)
+     * @param backoffParameters parameters that dictate how this router handles nodes that fail to respond
      * @throws NullPointerException if any argument is {@code null}
-     * @throws IllegalStateException if either {@code branchStrategy} or {@code bucketStrategy} generates invalid data (see interfaces for
-     * restrictions)
+     * @throws IllegalStateException if {@code branchStrategy} generates invalid data (see interface for restrictions) -- k-buckets are
+     * only created once something gets touched in to them, so {@code bucketStrategy} isn't queried until then
      */
     public Router(Id baseId,
             RouteTreeBranchStrategy branchStrategy,
-            RouteTreeBucketStrategy bucketStrategy) {
+            RouteTreeBucketStrategy bucketStrategy,
+            BackoffParameters backoffParameters) {
+        this(baseId, new RouteTree(baseId, branchStrategy, bucketStrategy), backoffParameters);
+    }
+
+    private Router(Id baseId, RouteTree routeTree, BackoffParameters backoffParameters) {
         Validate.notNull(baseId);
-        Validate.notNull(branchStrategy);
-        Validate.notNull(bucketStrategy);
+        Validate.notNull(routeTree);
+        Validate.notNull(backoffParameters);
         
         this.baseId = baseId;
-        this.routeTree = new RouteTree(baseId, branchStrategy, bucketStrategy);
-        this.lastTouchTime = Instant.MIN;
+        this.routeTree = routeTree;
+        this.lastTouchTime = Times.MIN;
+        this.linkMismatchPolicy = LinkMismatchPolicy.REJECT;
+
+        this.backoffParameters = backoffParameters;
+        this.unresponsiveCounts = new HashMap<>();
+        this.lockedNodes = new HashMap<>();
+        this.smoothedRtts = new HashMap<>();
+
+        // Size ticks relative to the smallest lock duration, so that the amount a lock can overstay (at most 1 tick) is small relative to
+        // the lock itself
+        Duration lockExpirationTick = backoffParameters.getInitialLockDuration().dividedBy(LOCK_EXPIRATION_TICKS_PER_INITIAL_LOCK);
+        if (lockExpirationTick.toMillis() <= 0L) {
+            lockExpirationTick = Duration.ofMillis(1L);
+        }
+        this.lockExpirations = new TimerWheel<>(lockExpirationTick, LOCK_EXPIRATION_SLOT_COUNT);
+    }
+
+    /**
+     * Constructs a {@link Router} object that uses the default {@link BackoffParameters} (locks for 5 seconds initially, backs off to a
+     * maximum of 5 minutes, and marks as stale after 5 failures in a row).
+     * @param baseId ID of the node that this router is for
+     * @param branchStrategy branching strategy for the route tree to be created by this router (dictates how many branches to create at
+     * each depth)
+     * @param bucketStrategy bucket strategy for the route tree to be created by this router (dictates k-bucket parameters for each
+     * k-bucket)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalStateException if {@code branchStrategy} generates invalid data (see interface for restrictions) -- k-buckets are
+     * only created once something gets touched in to them, so {@code bucketStrategy} isn't queried until then
+     */
+    public Router(Id baseId,
+            RouteTreeBranchStrategy branchStrategy,
+            RouteTreeBucketStrategy bucketStrategy) {
+        this(baseId, branchStrategy, bucketStrategy, DEFAULT_BACKOFF_PARAMETERS);
     }
 
     /**
@@ -74,6 +142,81 @@ public final class Router {
                 new SimpleRouteTreeStrategy(baseId, branchesPerLevel, maxNodesPerBucket, maxCacheNodesPerBucket));
     }
     
+    /**
+     * Constructs a {@link Router} object where the route tree created by this router is in dynamic mode (starts off as only the root and
+     * splits k-buckets as they fill up, as described in the original Kademlia paper).
+     * <p>
+     * See {@link RouteTree#createDynamic(com.offbynull.kademlia.Id, com.offbynull.kademlia.RouteTreeBranchStrategy,
+     * com.offbynull.kademlia.RouteTreeBucketStrategy, int) } for more information.
+     * @param baseId ID of the node that this router is for
+     * @param branchStrategy branching strategy for the route tree to be created by this router (dictates how many branches to create
+     * whenever a k-bucket splits)
+     * @param bucketStrategy bucket strategy for the route tree to be created by this router (dictates k-bucket parameters for each
+     * k-bucket)
+     * @param backoffParameters parameters that dictate how this router handles nodes that fail to respond
+     * @param relaxedSplitDepth depth in bits for relaxed splitting, or {@code 0} to only ever split k-buckets that cover {@code baseId}
+     * @return new router
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code relaxedSplitDepth} is negative
+     * @throws IllegalStateException if {@code branchStrategy} generates invalid data (see interface for restrictions) -- k-buckets are
+     * only created once something gets touched in to them, so {@code bucketStrategy} isn't queried until then
+     */
+    public static Router createDynamic(Id baseId,
+            RouteTreeBranchStrategy branchStrategy,
+            RouteTreeBucketStrategy bucketStrategy,
+            BackoffParameters backoffParameters,
+            int relaxedSplitDepth) {
+        Validate.notNull(baseId);
+        return new Router(baseId,
+                RouteTree.createDynamic(baseId, branchStrategy, bucketStrategy, relaxedSplitDepth),
+                backoffParameters);
+    }
+
+    /**
+     * Enables (or disables) touch coalescing on the route tree associated with this router. With touch coalescing enabled, repeat
+     * touches of a node within {@code resolution} of each other are held back and applied lazily.
+     * <p>
+     * See {@link RouteTree#setTouchCoalescing(java.time.Duration) } for more information.
+     * @param resolution window in which repeat touches of a node are held back, or {@link Duration#ZERO} to disable touch coalescing
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code resolution} is negative
+     * @see RouteTree#setTouchCoalescing(java.time.Duration)
+     */
+    public void setTouchCoalescing(Duration resolution) {
+        routeTree.setTouchCoalescing(resolution);
+    }
+
+    /**
+     * Sets how far back in time touches are allowed to go. Touches that are late by no more than {@code tolerance} (e.g. touches coming
+     * in from multiple threads that got timestamped slightly out of order) are accepted and placed in the position they would have been
+     * in had they arrived on time, rather than rejected.
+     * <p>
+     * See {@link KBucket#setTouchTolerance(java.time.Duration) } for more information.
+     * @param tolerance how far before the latest touch time a touch is allowed to be, or {@link Duration#ZERO} to reject all touches that
+     * go backwards in time
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code tolerance} is negative
+     * @see KBucket#setTouchTolerance(java.time.Duration)
+     */
+    public void setTouchTolerance(Duration tolerance) {
+        routeTree.setTouchTolerance(tolerance);
+        touchTolerance = tolerance.toNanos();
+    }
+
+    /**
+     * Sets how touches from nodes that have the same ID as a node in a k-bucket but a different link are handled. Defaults to
+     * {@link LinkMismatchPolicy#REJECT}.
+     * <p>
+     * If a node's link gets replaced (see {@link LinkMismatchPolicy#REPLACE}), its smoothed round-trip time is discarded (it was measured
+     * against the old link).
+     * @param policy link mismatch policy
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public void setLinkMismatchPolicy(LinkMismatchPolicy policy) {
+        Validate.notNull(policy);
+        linkMismatchPolicy = policy;
+    }
+
     /**
      * Updates the appropriate k-bucket in the route tree associated with this router router by touching it. When the Kademlia node that
      * this router is for receives a request or response from some other node in the network, this method should be called.
@@ -81,39 +224,180 @@ public final class Router {
      * See {@link KBucket#touch(java.time.Instant, com.offbynull.kademlia.Node) } for more information.
      * @param time time which request or response came in
      * @param node node which issued the request or response
-     * @return changes to collection of stored nodes and replacement cache of the k-bucket effected
+     * @return changes to collection of stored nodes and replacement cache of the k-bucket effected (including nodes dropped by k-buckets
+     * that had to split, see {@link RouteTree#touch(java.time.Instant, com.offbynull.kademlia.Node) }) -- removed nodes have their locks
+     * and unresponsive counts discarded
      * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code time} is outside of the range that can be held as nanoseconds since the epoch
      * @throws IdLengthMismatchException if the bitlength of {@code node}'s ID doesn't match the bitlength of the owning node's ID (the ID
      * of the node this router is for)
      * @throws BaseIdMatchException if {@code node}'s ID is the same as the owning node's ID (the ID of the node this router is for)
-     * @throws BackwardTimeException if {@code time} is less than the time used in the previous invocation of this method
-     * @throws LinkMismatchException if this router already contains a node with {@code node}'s ID but with a different link (SPECIAL
-     * CASE: If the contained node is marked as stale, this exception will not be thrown. Since the node is marked as stale, it means it
-     * should have been replaced but the replacement cache was empty. As such, this case is treated as if this were a new node replacing
-     * a stale node, not a stale node being reverted to normal status -- the fact that the IDs are the same but the links don't match
-     * doesn't matter)
+     * @throws BackwardTimeException if {@code time} is less than the latest time used in previous invocations of this method by more
+     * than the touch tolerance (see {@link #setTouchTolerance(java.time.Duration) })
+     * @throws IllegalStateException if the bucket strategy (or, in dynamic mode, the branch strategy) generates invalid data for a
+     * k-bucket that needs to be created (see interfaces for restrictions)
+     * @throws LinkMismatchException if the link mismatch policy is {@link LinkMismatchPolicy#REJECT} (see
+     * {@link #setLinkMismatchPolicy(com.offbynull.kademlia.LinkMismatchPolicy) }) and this router already contains a node with
+     * {@code node}'s ID but with a different link (SPECIAL CASE: If the contained node is marked as stale, this exception will not be
+     * thrown. Since the node is marked as stale, it means it should have been replaced but the replacement cache was empty. As such, this
+     * case is treated as if this were a new node replacing a stale node, not a stale node being reverted to normal status -- the fact
+     * that the IDs are the same but the links don't match doesn't matter)
      * @see KBucket#touch(java.time.Instant, com.offbynull.kademlia.Node) 
      */
     public RouterChangeSet touch(Instant time, Node node) {
+        long timeNanos = validateTouch(time, node);
+        boolean replaceLink = linkMismatchPolicy == LinkMismatchPolicy.REPLACE && isLinkMismatch(node);
+        return touch(timeNanos, node, replaceLink); // if policy is REJECT and link doesn't match, route tree throws
+    }
+
+    /**
+     * Equivalent to {@link #touch(java.time.Instant, com.offbynull.kademlia.Node) }, but reports a link mismatch (when the link mismatch
+     * policy is {@link LinkMismatchPolicy#REJECT}) as {@link RouterStatus#LINK_MISMATCH} rather than throwing an exception. Nothing is
+     * changed if a link mismatch is reported.
+     * @param time time which request or response came in
+     * @param node node which issued the request or response
+     * @return result of the touch (changes to collection of stored nodes and replacement cache of the k-bucket effected, if applied)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code time} is outside of the range that can be held as nanoseconds since the epoch
+     * @throws IdLengthMismatchException if the bitlength of {@code node}'s ID doesn't match the bitlength of the owning node's ID (the ID
+     * of the node this router is for)
+     * @throws BaseIdMatchException if {@code node}'s ID is the same as the owning node's ID (the ID of the node this router is for)
+     * @throws BackwardTimeException if {@code time} is less than the latest time used in previous invocations of this method by more
+     * than the touch tolerance (see {@link #setTouchTolerance(java.time.Duration) })
+     * @throws IllegalStateException if the bucket strategy (or, in dynamic mode, the branch strategy) generates invalid data for a
+     * k-bucket that needs to be created (see interfaces for restrictions)
+     */
+    public RouterResult tryTouch(Instant time, Node node) {
+        long timeNanos = validateTouch(time, node);
+        boolean mismatch = isLinkMismatch(node);
+        if (mismatch && linkMismatchPolicy == LinkMismatchPolicy.REJECT) {
+            return RouterResult.LINK_MISMATCH;
+        }
+        return new RouterResult(touch(timeNanos, node, mismatch));
+    }
+
+    private long validateTouch(Instant time, Node node) {
         Validate.notNull(time);
         Validate.notNull(node);
         
-        InternalValidate.forwardTime(lastTouchTime, time); // time must be >= lastUpdatedTime
-        this.lastTouchTime = time;
+        long timeNanos = Times.toNanos(time); // convert once, everything underneath works with nanos
+        InternalValidate.forwardTime(lastTouchTime, timeNanos, touchTolerance); // time must be >= lastUpdatedTime - touchTolerance
         
         Id nodeId = node.getId();
         InternalValidate.matchesLength(baseId.getBitLength(), nodeId);
         InternalValidate.notMatchesBase(baseId, nodeId);
 
+        return timeNanos;
+    }
         
+    private RouterChangeSet touch(long timeNanos, Node node, boolean replaceLink) {
+        this.lastTouchTime = Math.max(lastTouchTime, timeNanos);
         
-        // Touch routing tree
-        RouteTreeChangeSet routeTreeChangeSet = routeTree.touch(time, node);
+        Id nodeId = node.getId();
+
+        // Touch routing tree (arguments have been validated above, so go through the internal entry point)
+        RouteTreeChangeSet routeTreeChangeSet = routeTree.touch(timeNanos, node, replaceLink);
+
+        // If the node's link was replaced, point the lock at the new link and drop the round-trip time measured against the old link
+        if (replaceLink) {
+            lockedNodes.replace(nodeId, node);
+            smoothedRtts.remove(nodeId);
+        }
+
+        // If the node responded outside of its backoff period, it's recovered -- reset its unresponsive counter. If it's still in its
+        // backoff period, leave it alone. Even though we heard from it, it stays locked until its backoff period is over.
+        if (!lockedNodes.containsKey(nodeId)) {
+            unresponsiveCounts.remove(nodeId);
+        }
+        forgetRemoved(routeTreeChangeSet);
 
         
         return new RouterChangeSet(routeTreeChangeSet);
     }
     
+    /**
+     * Equivalent to {@link #touch(java.time.Instant, com.offbynull.kademlia.Node) }, but also records how long {@code node} took to
+     * respond. If {@code node} ends up in a k-bucket (not a replacement cache), {@code rtt} gets folded in to its smoothed round-trip time
+     * (exponentially weighted moving average, with each new sample weighted at 1/8 -- the same smoothing TCP uses). Smoothed round-trip
+     * times are used by {@link #findByProximity(com.offbynull.kademlia.Id, int, boolean) }.
+     * @param time time which response came in
+     * @param node node which issued the response
+     * @param rtt amount of time between when the request was sent and when the response came in
+     * @return changes to collection of stored nodes and replacement cache of the k-bucket effected
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code rtt} is negative, or if {@code time} is outside of the range that can be held as
+     * nanoseconds since the epoch
+     * @throws IdLengthMismatchException if the bitlength of {@code node}'s ID doesn't match the bitlength of the owning node's ID (the ID
+     * of the node this router is for)
+     * @throws BaseIdMatchException if {@code node}'s ID is the same as the owning node's ID (the ID of the node this router is for)
+     * @throws BackwardTimeException if {@code time} is less than the latest time used in previous invocations of this method by more
+     * than the touch tolerance (see {@link #setTouchTolerance(java.time.Duration) })
+     * @throws IllegalStateException if the bucket strategy (or, in dynamic mode, the branch strategy) generates invalid data for a
+     * k-bucket that needs to be created (see interfaces for restrictions)
+     * @throws LinkMismatchException if this router already contains a node with {@code node}'s ID but with a different link (see
+     * {@link #touch(java.time.Instant, com.offbynull.kademlia.Node) } for special case)
+     */
+    public RouterChangeSet touch(Instant time, Node node, Duration rtt) {
+        Validate.notNull(rtt);
+        Validate.isTrue(!rtt.isNegative());
+
+        RouterChangeSet changeSet = touch(time, node);
+
+        Id nodeId = node.getId();
+        ActivityChangeSet bucketChangeSet = changeSet.getRouteTreeChangeSet().getKBucketChangeSet().getBucketChangeSet();
+        boolean inBucket = bucketChangeSet.viewAdded().stream().anyMatch(x -> x.getNode().getId().equals(nodeId))
+                || bucketChangeSet.viewUpdated().stream().anyMatch(x -> x.getNode().getId().equals(nodeId));
+        if (inBucket) {
+            long sample = rtt.toNanos();
+            Long smoothedRtt = smoothedRtts.get(nodeId);
+            if (smoothedRtt == null) {
+                smoothedRtts.put(nodeId, sample);
+            } else {
+                smoothedRtts.put(nodeId, smoothedRtt + ((sample - smoothedRtt) >> RTT_SMOOTHING_SHIFT));
+            }
+        }
+
+        return changeSet;
+    }
+
+    /**
+     * Bulk-loads nodes in to the route tree associated with this router, such as contacts remembered from a previous session or a
+     * bootstrap list. The end result is the same as sorting {@code nodes} by time and calling
+     * {@link #touch(java.time.Instant, com.offbynull.kademlia.Node) } for each one, but much faster for large collections.
+     * <p>
+     * This router must not have been touched before this method is called. After this method returns, subsequent touches must be at or
+     * after the latest time in {@code nodes}.
+     * <p>
+     * See {@link RouteTree#load(java.util.Map) } for more information.
+     * @param nodes nodes to load, mapped to the time each one was last touched (in any order)
+     * @return changes to collection of stored nodes and replacement cache of each k-bucket effected
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if {@code nodes} contains multiple nodes with the same ID, or if any time in {@code nodes} is
+     * outside of the range that can be held as nanoseconds since the epoch
+     * @throws IdLengthMismatchException if the bitlength of any node's ID doesn't match the bitlength of the owning node's ID (the ID of
+     * the node this router is for)
+     * @throws BaseIdMatchException if any node's ID is the same as the owning node's ID (the ID of the node this router is for)
+     * @throws IllegalStateException if this router has already been touched, or if the bucket strategy (or, in dynamic mode, the
+     * branch strategy) generates invalid data for a k-bucket that needs to be created (see interfaces for restrictions)
+     * @see RouteTree#load(java.util.Map)
+     */
+    public List<RouterChangeSet> load(Map<Node, Instant> nodes) {
+        Validate.notNull(nodes);
+        Validate.validState(lastTouchTime == Times.MIN); // must not have been touched yet
+
+        List<RouteTreeChangeSet> routeTreeChangeSets = routeTree.load(nodes);
+
+        long latestTime = Times.MIN;
+        for (Instant time : nodes.values()) {
+            latestTime = Math.max(latestTime, Times.toNanos(time));
+        }
+        this.lastTouchTime = latestTime;
+
+        List<RouterChangeSet> ret = new ArrayList<>(routeTreeChangeSets.size());
+        routeTreeChangeSets.forEach(x -> ret.add(new RouterChangeSet(x)));
+        return ret;
+    }
+
     /**
      * Get all k-bucket prefixes in the route tree associated with this router.
      * @return all k-bucket prefixes in the route tree associated with this router
@@ -126,7 +410,8 @@ public final class Router {
      * Searches the route tree associated with this router for the closest nodes to some ID. Node closeness is determined by the XOR metric
      * -- Kademlia's notion of distance.
      * <p>
-     * Note this method will never return yourself (the node that this routing table is for).
+     * Note this method will never return yourself (the node that this routing table is for), nor will it return nodes that are locked
+     * (nodes in their backoff period -- see {@link #unresponsive(java.time.Instant, com.offbynull.kademlia.Node) }).
      * @param id ID to search for
      * @param max maximum number of results to give back
      * @param includeStale if {@code true}, includes stale nodes in the results
@@ -152,11 +437,193 @@ public final class Router {
         
         return res;
     }
+
+    /**
+     * Equivalent to calling {@link #find(com.offbynull.kademlia.Id, int, boolean) } for each ID in {@code ids}, but the searches are
+     * spread out over {@link ForkJoinPool#commonPool() }.
+     * @param ids IDs to search for
+     * @param max maximum number of results to give back for each ID
+     * @param includeStale if {@code true}, includes stale nodes in the results
+     * @return up to {@code max} closest nodes for each ID, in the same order as {@code ids}
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if any numeric argument is negative
+     * @throws IdLengthMismatchException if the bitlength of any ID in {@code ids} doesn't match the bitlength of the ID that this router is
+     * for (the ID of the node this router belongs to)
+     * @see #findAll(java.util.List, int, boolean, java.util.concurrent.ForkJoinPool)
+     */
+    public List<List<Node>> findAll(List<Id> ids, int max, boolean includeStale) {
+        return findAll(ids, max, includeStale, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Equivalent to calling {@link #find(com.offbynull.kademlia.Id, int, boolean) } for each ID in {@code ids}, but the searches are
+     * spread out over {@code pool}.
+     * <p>
+     * IDs are sorted and split up in to runs of neighbouring IDs, and each run is searched for in a single walk of the route tree (see
+     * {@link RouteTree#findAll(java.util.List, int, boolean) }).
+     * <p>
+     * Searches don't modify this router, so they can safely run side-by-side. This method blocks until all searches have finished, so as
+     * long as this router isn't being accessed by some other thread in the meantime (this class isn't thread-safe), every search sees the
+     * same view of the route tree.
+     * @param ids IDs to search for
+     * @param max maximum number of results to give back for each ID
+     * @param includeStale if {@code true}, includes stale nodes in the results
+     * @param pool pool to run searches on
+     * @return up to {@code max} closest nodes for each ID, in the same order as {@code ids}
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if any numeric argument is negative
+     * @throws IdLengthMismatchException if the bitlength of any ID in {@code ids} doesn't match the bitlength of the ID that this router is
+     * for (the ID of the node this router belongs to)
+     */
+    public List<List<Node>> findAll(List<Id> ids, int max, boolean includeStale, ForkJoinPool pool) {
+        Validate.notNull(ids);
+        Validate.noNullElements(ids);
+        Validate.notNull(pool);
+        Validate.isTrue(max >= 0); // why would anyone want 0 items returned? let thru anyways
+
+        // Validate everything up front, so that failures come out as-is rather than wrapped up by the pool
+        for (Id id : ids) {
+            InternalValidate.matchesLength(baseId.getBitLength(), id);
+        }
+
+        // Sort once before splitting up the work, so that each task gets IDs that share prefixes and can walk the route tree together
+        // without sorting again (see RouteTree.findAll())
+        int size = ids.size();
+        int[] order = routeTree.sortOrder(ids);
+        List<Id> sortedIds = new ArrayList<>(size);
+        for (int idx : order) {
+            sortedIds.add(ids.get(idx));
+        }
+        routeTree.applyHeldTouches(); // searches only read, so apply held back touches (if any) before they run side-by-side
+        List<List<Node>> results = new ArrayList<>(Collections.nCopies(size, null)); // tasks fill in disjoint indices
+        pool.invoke(new FindAllTask(sortedIds, order, results, 0, size, max, includeStale));
+
+        return results;
+    }
+
+    /**
+     * Equivalent to {@link #find(com.offbynull.kademlia.Id, int, boolean) }, but applies proximity neighbour selection using the
+     * smoothed round-trip times recorded by {@link #touch(java.time.Instant, com.offbynull.kademlia.Node, java.time.Duration) }.
+     * <p>
+     * As far as Kademlia is concerned, nodes in the same k-bucket are all equally good candidates for getting closer to {@code id} -- each
+     * of them is the same number of hops away. So, results are still grouped by k-bucket in XOR order, but within each k-bucket nodes with
+     * lower round-trip times come first (nodes without a recorded round-trip time come last, in XOR order). If the furthest k-bucket only
+     * partially fits within {@code max}, the nodes with the lowest round-trip times are picked from the entire k-bucket rather than the
+     * ones closest to {@code id}.
+     * @param id ID to search for
+     * @param max maximum number of results to give back
+     * @param includeStale if {@code true}, includes stale nodes in the results
+     * @return up to {@code max} closest nodes to {@code id}, ordered by k-bucket and then round-trip time
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if any numeric argument is negative
+     * @throws IdLengthMismatchException if the bitlength of {@code id} doesn't match the bitlength of the owning node's ID (the ID of the
+     * node this router is for)
+     */
+    public List<Node> findByProximity(Id id, int max, boolean includeStale) {
+        Validate.notNull(id);
+        Validate.isTrue(max >= 0);
+
+        InternalValidate.matchesLength(baseId.getBitLength(), id);
+
+        List<Activity> closestNodesInRoutingTree = routeTree.find(id, max, includeStale);
+
+        // Nodes in the same k-bucket share the same prefix, so they're always next to each other in XOR order
+        LinkedHashMap<BitString, List<Node>> groups = new LinkedHashMap<>();
+        Node lastNode = null;
+        for (Activity activity : closestNodesInRoutingTree) {
+            lastNode = activity.getNode();
+            groups.computeIfAbsent(routeTree.getBucketPrefixFor(lastNode), x -> new ArrayList<>()).add(lastNode);
+        }
+
+        // If max was hit, the last k-bucket may have been cut off -- consider all of its nodes instead of only the XOR-closest ones
+        if (lastNode != null && closestNodesInRoutingTree.size() == max) {
+            List<Node> bucketNodes = new ArrayList<>();
+            List<Id> bucketIds = new ArrayList<>();
+            routeTree.dumpBucketFor(lastNode.getId(), includeStale).forEach(x -> {
+                bucketNodes.add(x.getNode());
+                bucketIds.add(x.getNode().getId());
+            });
+            IdXorMetricRanker ranker = new IdXorMetricRanker(id);
+            List<Node> lastGroup = new ArrayList<>(bucketNodes.size());
+            for (int idx : ranker.rank(ranker.pack(bucketIds), bucketIds.size())) {
+                lastGroup.add(bucketNodes.get(idx));
+            }
+            groups.put(routeTree.getBucketPrefixFor(lastNode), lastGroup);
+        }
+
+        ArrayList<Node> res = new ArrayList<>(closestNodesInRoutingTree.size());
+        for (List<Node> group : groups.values()) {
+            // stable sort, so nodes with the same rtt (or no rtt) stay in XOR order
+            group.sort((x, y) -> Long.compare(
+                    smoothedRtts.getOrDefault(x.getId(), Long.MAX_VALUE),
+                    smoothedRtts.getOrDefault(y.getId(), Long.MAX_VALUE)));
+            for (Node node : group) {
+                if (res.size() >= max) {
+                    break;
+                }
+                res.add(node);
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * Get the smoothed round-trip time of a node in this router (see
+     * {@link #touch(java.time.Instant, com.offbynull.kademlia.Node, java.time.Duration) }).
+     * @param id ID of node
+     * @return smoothed round-trip time of the node with ID {@code id}, or {@code null} if no round-trip time has been recorded for it
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public Duration getSmoothedRtt(Id id) {
+        Validate.notNull(id);
+        Long smoothedRtt = smoothedRtts.get(id);
+        return smoothedRtt == null ? null : Duration.ofNanos(smoothedRtt);
+    }
     
+    /**
+     * Checks if a node is known to this router (either in a k-bucket or in the replacement cache of a k-bucket). Runs in constant time.
+     * @param id ID of node
+     * @return {@code true} if this router contains a node with {@code id}, {@code false} otherwise
+     * @throws NullPointerException if any argument is {@code null}
+     * @see RouteTree#contains(com.offbynull.kademlia.Id)
+     */
+    public boolean contains(Id id) {
+        return routeTree.contains(id);
+    }
+
+    /**
+     * Get a node known to this router (either in a k-bucket or in the replacement cache of a k-bucket). The k-bucket holding the node is
+     * found in constant time, and only that k-bucket is searched.
+     * @param id ID of node
+     * @return node with {@code id}, or {@code null} if this router doesn't contain a node with {@code id}
+     * @throws NullPointerException if any argument is {@code null}
+     * @see RouteTree#get(com.offbynull.kademlia.Id)
+     */
+    public Node get(Id id) {
+        Activity activity = routeTree.get(id);
+        return activity == null ? null : activity.getNode();
+    }
+
+    /**
+     * Get the state of a node known to this router. Nodes in their backoff period (see
+     * {@link #unresponsive(java.time.Instant, com.offbynull.kademlia.Node) }) are {@link NodeState#LOCKED}. The k-bucket holding the node
+     * is found in constant time, and only that k-bucket is searched.
+     * @param id ID of node
+     * @return state of node with {@code id}, or {@code null} if this router doesn't contain a node with {@code id}
+     * @throws NullPointerException if any argument is {@code null}
+     * @see RouteTree#getState(com.offbynull.kademlia.Id)
+     */
+    public NodeState getState(Id id) {
+        return routeTree.getState(id);
+    }
+
     /**
      * Marks a node within the route tree associated with this router as stale (meaning that you're no longer able to communicate with it),
      * evicting it and replacing it with the most recent node in the effected k-bucket's replacement cache. 
      * <p>
+     * If the node is locked (in its backoff period), the lock is lifted before it's marked as stale.
+     * <p>
      * See {@link KBucket#stale(com.offbynull.kademlia.Node) } for more information.
      * @param node node to mark as stale
      * @return changes to collection of stored nodes and replacement cache of the k-bucket effected
@@ -166,7 +633,6 @@ public final class Router {
      * @throws BaseIdMatchException if {@code node}'s ID is the same as the owning node's ID (the ID of the node this router is for)
      * @throws NodeNotFoundException if this router doesn't contain {@code node}
      * @throws LinkMismatchException if this router contains a node with {@code node}'s ID but with a different link
-     * @throws BadNodeStateException if this router contains {@code node} but {@code node} is marked as locked
      * @see KBucket#stale(com.offbynull.kademlia.Node) 
      */
     public RouterChangeSet stale(Node node) {
@@ -177,44 +643,243 @@ public final class Router {
         InternalValidate.matchesLength(baseId.getBitLength(), nodeId);
         InternalValidate.notMatchesBase(baseId, nodeId); 
         
+        // An explicit stale overrides any backoff period the node may be in. Stale / locked are mutually exclusive, so unlock first.
+        if (lockedNodes.containsKey(nodeId)) {
+            routeTree.unlock(node); // throws exc if link doesn't match, in which case nothing has been changed
+            lockedNodes.remove(nodeId);
+            lockExpirations.remove(nodeId);
+        }
+        unresponsiveCounts.remove(nodeId);
+
         RouteTreeChangeSet routeTreeChangeSet = routeTree.stale(node);
+        forgetRemoved(routeTreeChangeSet);
         
         return new RouterChangeSet(routeTreeChangeSet);
     }
+
+    /**
+     * Equivalent to {@link #stale(com.offbynull.kademlia.Node) }, but reports a node that isn't in this router (e.g. it was already
+     * evicted) as {@link RouterStatus#NODE_NOT_FOUND} and a node whose link doesn't match as {@link RouterStatus#LINK_MISMATCH} rather than
+     * throwing an exception. Nothing is changed if either is reported.
+     * @param node node to mark as stale
+     * @return result of marking the node as stale (changes to collection of stored nodes and replacement cache of the k-bucket effected,
+     * if applied)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code node}'s ID doesn't match the bitlength of the owning node's ID (the ID
+     * of the node this router is for)
+     * @throws BaseIdMatchException if {@code node}'s ID is the same as the owning node's ID (the ID of the node this router is for)
+     */
+    public RouterResult tryStale(Node node) {
+        RouterResult notApplied = checkInBucket(node);
+        return notApplied != null ? notApplied : new RouterResult(stale(node));
+    }
     
-    // lock means "avoid contact" AKA avoid returning on "find" until unlocked. unlocking only happens on unlock(), not on touch()...
-    //
-    // according to kademlia...
-    //
-    // A related problem is that because Kademlia uses UDP, valid contacts will sometimes fail to respond when network packets are dropped.
-    // Since packet loss often indicates network congestion, Kademlia locks unresponsive contacts and avoids sending them any further RPCs
-    // for an exponentially increasing backoff interval.
-    //
-    // that means because we're in a "backoff period", even if we get touch()'d by that node, we still want to keep it unfindable/locked...
-    // up until the point that we explictly decide to to make it findable/unlocked.
-//
-//COMMENTED OUT METHODS BELOW BECAUSE THEY DONT RETURN A ROUTERTREECHANGSET AND ARENT CURRENTLY BEING USED FOR ANYTHING. IF YOU'RE GOING TO
-//RE-ENABLE, HAVE ROUTER DECIDE WHAT SHOULD BE LOCKED/STALE BASED ON AN UNRESPONSIVE COUNTER THAT GETS HIT WHENEVER SOMETHING IS
-//UNRESPONSIVE
-//    public void lock(Node node) {
-//        Validate.notNull(node);
-//        
-//        Id nodeId = node.getId();
-//        
-//        InternalValidate.matchesLength(baseId.getBitLength(), nodeId);
-//        InternalValidate.notMatchesBase(baseId, nodeId); 
-//        
-//        routeTree.lock(node); // will throw exc if node not in routetree
-//    }
-//
-//    public void unlock(Node node) {
-//        Validate.notNull(node);
-//        
-//        Id nodeId = node.getId();
-//        
-//        InternalValidate.matchesLength(baseId.getBitLength(), nodeId);
-//        InternalValidate.notMatchesBase(baseId, nodeId); 
-//        
-//        routeTree.unlock(node); // will throw exc if node not in routetree
-//    }
+    /**
+     * Notifies this router that a node within its route tree has failed to respond (e.g. a request to it timed out).
+     * <p>
+     * Rather than marking the node as stale right away (which would evict it as soon as the replacement cache has something in it), the
+     * node gets locked for an exponentially increasing backoff interval. Locked nodes aren't returned by
+     * {@link #find(com.offbynull.kademlia.Id, int, boolean) }. Locks are lifted once their backoff interval is up, by calling
+     * {@link #unlockExpired(java.time.Instant) }. Touching a node that's locked won't lift the lock, but touching a node that isn't locked
+     * resets the number of times it's failed to respond.
+     * <p>
+     * Once the node fails to respond more than the maximum number of times in a row allowed by this router's {@link BackoffParameters},
+     * it's marked as stale (see {@link #stale(com.offbynull.kademlia.Node) }). If the node is already stale, this method does nothing.
+     * @param time time which the node was determined to be unresponsive
+     * @param node node that failed to respond
+     * @return changes to collection of stored nodes and replacement cache of the k-bucket effected (nothing will have changed if the node
+     * was only locked)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code node}'s ID doesn't match the bitlength of the owning node's ID (the ID
+     * of the node this router is for)
+     * @throws BaseIdMatchException if {@code node}'s ID is the same as the owning node's ID (the ID of the node this router is for)
+     * @throws NodeNotFoundException if this router doesn't contain {@code node}
+     * @throws LinkMismatchException if this router contains a node with {@code node}'s ID but with a different link
+     */
+    public RouterChangeSet unresponsive(Instant time, Node node) {
+        Validate.notNull(time);
+        Validate.notNull(node);
+
+        Id nodeId = node.getId();
+
+        InternalValidate.matchesLength(baseId.getBitLength(), nodeId);
+        InternalValidate.notMatchesBase(baseId, nodeId);
+
+        // Already stale (it's just waiting for something to show up in the replacement cache), nothing left to back off from.
+        if (routeTree.isStale(node)) { // throws exc if node not in routetree or if link doesn't match
+            return new RouterChangeSet(routeTree.stale(node)); // marking an already stale node as stale does nothing
+        }
+
+        int unresponsiveCount = unresponsiveCounts.getOrDefault(nodeId, 0) + 1;
+
+        // Failed to respond too many times in a row, mark as stale
+        if (unresponsiveCount > backoffParameters.getMaxUnresponsiveCount()) {
+            return stale(node);
+        }
+
+        // Lock (or extend the existing lock) for the next backoff interval
+        unresponsiveCounts.put(nodeId, unresponsiveCount);
+
+        Duration lockDuration = backoffParameters.getLockDuration(unresponsiveCount);
+        lockExpirations.remove(nodeId);
+        lockExpirations.insert(time.plus(lockDuration), nodeId);
+
+        RouteTreeChangeSet routeTreeChangeSet = routeTree.lock(node); // if already locked, locking again does nothing
+        lockedNodes.put(nodeId, node);
+
+        return new RouterChangeSet(routeTreeChangeSet);
+    }
+
+    /**
+     * Equivalent to {@link #unresponsive(java.time.Instant, com.offbynull.kademlia.Node) }, but reports a node that isn't in this router
+     * (e.g. a request to it timed out after it was already evicted) as {@link RouterStatus#NODE_NOT_FOUND} and a node whose link doesn't
+     * match as {@link RouterStatus#LINK_MISMATCH} rather than throwing an exception. Nothing is changed if either is reported.
+     * @param time time which the node was determined to be unresponsive
+     * @param node node that failed to respond
+     * @return result of notifying (changes to collection of stored nodes and replacement cache of the k-bucket effected, if applied)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code node}'s ID doesn't match the bitlength of the owning node's ID (the ID
+     * of the node this router is for)
+     * @throws BaseIdMatchException if {@code node}'s ID is the same as the owning node's ID (the ID of the node this router is for)
+     */
+    public RouterResult tryUnresponsive(Instant time, Node node) {
+        Validate.notNull(time);
+        RouterResult notApplied = checkInBucket(node);
+        return notApplied != null ? notApplied : new RouterResult(unresponsive(time, node));
+    }
+
+    // validates node, then checks it's in a k-bucket (not a replacement cache) with the same link -- returns the result to report if it
+    // isn't, or null if it is
+    private RouterResult checkInBucket(Node node) {
+        Validate.notNull(node);
+
+        Id nodeId = node.getId();
+        InternalValidate.matchesLength(baseId.getBitLength(), nodeId);
+        InternalValidate.notMatchesBase(baseId, nodeId);
+
+        Node existing = routeTree.getBucketNode(nodeId);
+        if (existing == null) {
+            return RouterResult.NODE_NOT_FOUND;
+        } else if (!existing.getLink().equals(node.getLink())) {
+            return RouterResult.LINK_MISMATCH;
+        }
+        return null;
+    }
+
+    // true if a k-bucket has a node with node's ID but a different link (stale nodes don't count, they get replaced regardless of link)
+    private boolean isLinkMismatch(Node node) {
+        Id nodeId = node.getId();
+        Node existing = routeTree.getBucketNode(nodeId);
+        return existing != null && !existing.getLink().equals(node.getLink()) && routeTree.getState(nodeId) != NodeState.STALE;
+    }
+
+    /**
+     * Unlocks nodes whose backoff interval (see {@link #unresponsive(java.time.Instant, com.offbynull.kademlia.Node) }) is up. Unlocked
+     * nodes are returned by {@link #find(com.offbynull.kademlia.Id, int, boolean) } again.
+     * <p>
+     * Expirations are tracked using a timing wheel, so this method only does work proportional to the time passed since the last
+     * invocation and the number of nodes being unlocked. It's meant to be called periodically.
+     * @param time current time
+     * @return nodes that were unlocked, ordered by when their lock expired
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws BackwardTimeException if {@code time} is less than the time used in the previous invocation of this method
+     */
+    public List<Node> unlockExpired(Instant time) {
+        Validate.notNull(time);
+
+        List<Id> expiredIds = lockExpirations.advance(time);
+
+        List<Node> unlockedNodes = new ArrayList<>(expiredIds.size());
+        for (Id expiredId : expiredIds) {
+            Node node = lockedNodes.remove(expiredId);
+            routeTree.unlock(node);
+            unlockedNodes.add(node);
+        }
+
+        return unlockedNodes;
+    }
+
+    /**
+     * Resizes k-buckets in the route tree associated with this router whose parameters have changed in the bucket strategy. Nodes evicted
+     * from k-buckets as a result of shrinking have their locks and unresponsive counts discarded.
+     * <p>
+     * See {@link RouteTree#reconfigure() } for more information.
+     * @return changes to collection of stored nodes and replacement cache of each k-bucket that was resized
+     * @throws IllegalStateException if the bucket strategy generates invalid data (see interface for restrictions)
+     * @see RouteTree#reconfigure()
+     */
+    public List<RouterChangeSet> reconfigure() {
+        List<RouteTreeChangeSet> routeTreeChangeSets = routeTree.reconfigure();
+
+        List<RouterChangeSet> ret = new ArrayList<>(routeTreeChangeSets.size());
+        for (RouteTreeChangeSet routeTreeChangeSet : routeTreeChangeSets) {
+            forgetRemoved(routeTreeChangeSet);
+            ret.add(new RouterChangeSet(routeTreeChangeSet));
+        }
+        return ret;
+    }
+
+    Id getBaseId() {
+        return baseId;
+    }
+
+    // all nodes in the route tree (bucket and cache, regardless of state)
+    List<Node> dumpNodes() {
+        return routeTree.dumpNodes();
+    }
+
+    private void forgetRemoved(RouteTreeChangeSet routeTreeChangeSet) {
+        // Nodes removed from the k-bucket (e.g. stale nodes replaced by cache nodes) shouldn't have their unresponsive counters / locks
+        // linger around.
+        for (Activity removed : routeTreeChangeSet.getKBucketChangeSet().getBucketChangeSet().viewRemoved()) {
+            Id removedId = removed.getNode().getId();
+            unresponsiveCounts.remove(removedId);
+            smoothedRtts.remove(removedId);
+            if (lockedNodes.remove(removedId) != null) {
+                lockExpirations.remove(removedId);
+            }
+        }
+    }
+
+    private final class FindAllTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 128; // ids searched per task before splitting further
+
+        private final List<Id> sortedIds;
+        private final int[] order; // index in sortedIds to index in results
+        private final List<List<Node>> results;
+        private final int start;
+        private final int end;
+        private final int max;
+        private final boolean includeStale;
+
+        FindAllTask(List<Id> sortedIds, int[] order, List<List<Node>> results, int start, int end, int max, boolean includeStale) {
+            this.sortedIds = sortedIds;
+            this.order = order;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+            this.max = max;
+            this.includeStale = includeStale;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= THRESHOLD) {
+                List<List<Activity>> found = routeTree.findAllSorted(sortedIds.subList(start, end), max, includeStale);
+                for (int i = start; i < end; i++) {
+                    List<Activity> activities = found.get(i - start);
+                    List<Node> nodes = new ArrayList<>(activities.size());
+                    activities.forEach(x -> nodes.add(x.getNode()));
+                    results.set(order[i], nodes);
+                }
+                return;
+            }
+
+            int mid = (start + end) >>> 1;
+            invokeAll(
+                    new FindAllTask(sortedIds, order, results, start, mid, max, includeStale),
+                    new FindAllTask(sortedIds, order, results, mid, end, max, includeStale));
+        }
+    }
 }
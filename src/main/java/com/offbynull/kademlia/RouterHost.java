@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Hosts multiple Kademlia identities (base IDs) within the same process, each with its own {@link Router}, over a single pool of
+ * contacts.
+ * <p>
+ * Running many identities per process (e.g. for spreading load) means that the same contacts end up being added to the router of each
+ * identity. Rather than having each router hold its own copy of those contacts, this host keeps one {@link Node} object per ID in a
+ * shared pool and hands that same object to every router. Each pooled node is reference counted by the number of routers that hold it
+ * (either in a k-bucket or a replacement cache), and is dropped from the pool once no router holds it.
+ * <p>
+ * Since all routers share the pool, the pool is treated as authoritative for links: touching a node that has the same ID as a pooled node
+ * but a different link is rejected outright, even if the pooled node is stale in every router that holds it.
+ * @author Kasra Faghihi
+ */
+public final class RouterHost {
+    private final int branchesPerLevel;
+    private final int maxNodesPerBucket;
+    private final int maxCacheNodesPerBucket;
+
+    private final LinkedHashMap<Id, Router> routers; // base id to router for that base id
+    private final HashMap<Id, PooledNode> pool; // node id to node shared between routers
+    private int idBitLength;
+
+    private long lastTouchTime; // nanos since epoch (see Times)
+
+    /**
+     * Constructs a {@link RouterHost} object. The router for each identity is created as if by
+     * {@link Router#Router(com.offbynull.kademlia.Id, int, int, int) }.
+     * @param branchesPerLevel number of branches to generate whenever a k-bucket splits
+     * @param maxNodesPerBucket maximum number of nodes allowed in each k-bucket
+     * @param maxCacheNodesPerBucket maximum number of cache nodes allowed in each k-bucket
+     * @throws IllegalArgumentException if any numeric argument is {@code 0} or less, or if
+     * {@code branchesPerLevel < 2 || !isPowerOfTwo(branchesPerLevel)}
+     */
+    public RouterHost(int branchesPerLevel, int maxNodesPerBucket, int maxCacheNodesPerBucket) {
+        Validate.isTrue(branchesPerLevel >= 2);
+        Validate.isTrue(Integer.bitCount(branchesPerLevel) == 1);
+        Validate.isTrue(maxNodesPerBucket > 0);
+        Validate.isTrue(maxCacheNodesPerBucket > 0);
+
+        this.branchesPerLevel = branchesPerLevel;
+        this.maxNodesPerBucket = maxNodesPerBucket;
+        this.maxCacheNodesPerBucket = maxCacheNodesPerBucket;
+        this.routers = new LinkedHashMap<>();
+        this.pool = new HashMap<>();
+        this.idBitLength = -1;
+        this.lastTouchTime = Times.MIN;
+    }
+
+    /**
+     * Adds an identity to this host. The router for the new identity starts off empty -- only nodes touched from this point onward will
+     * be added to it.
+     * @param baseId ID of the identity to add
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if this host already has an identity with {@code baseId}, or if the number of branches per level
+     * this host was constructed with doesn't divide evenly in to the bitlength of {@code baseId}
+     * @throws IdLengthMismatchException if the bitlength of {@code baseId} doesn't match the bitlength of the IDs of identities already in
+     * this host
+     */
+    public void addIdentity(Id baseId) {
+        Validate.notNull(baseId);
+        Validate.isTrue(!routers.containsKey(baseId));
+        if (idBitLength != -1) {
+            InternalValidate.matchesLength(idBitLength, baseId);
+        }
+
+        Router router = new Router(baseId, branchesPerLevel, maxNodesPerBucket, maxCacheNodesPerBucket);
+        routers.put(baseId, router);
+        idBitLength = baseId.getBitLength();
+    }
+
+    /**
+     * Removes an identity from this host. Pooled nodes that were only being held by the removed identity's router are dropped from the
+     * pool.
+     * @param baseId ID of the identity to remove
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if this host doesn't have an identity with {@code baseId}
+     */
+    public void removeIdentity(Id baseId) {
+        Validate.notNull(baseId);
+        Router router = routers.remove(baseId);
+        Validate.isTrue(router != null);
+
+        for (Node node : router.dumpNodes()) {
+            release(node.getId());
+        }
+    }
+
+    /**
+     * Touches a node in the router of every identity in this host (with the exception of the identity that has the same ID as
+     * {@code node}, if there is one). When any of the identities in this host receives a request or response from some other node in the
+     * network, this method should be called.
+     * <p>
+     * See {@link Router#touch(java.time.Instant, com.offbynull.kademlia.Node) } for more information.
+     * @param time time which request or response came in
+     * @param node node which issued the request or response
+     * @return identity IDs mapped to the changes to the router of that identity
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code time} is outside of the range that can be held as nanoseconds since the epoch
+     * @throws IdLengthMismatchException if the bitlength of {@code node}'s ID doesn't match the bitlength of the IDs of identities in this
+     * host
+     * @throws BackwardTimeException if {@code time} is less than the time used in the previous invocation of this method
+     * @throws LinkMismatchException if the pool already contains a node with {@code node}'s ID but with a different link
+     */
+    public Map<Id, RouterChangeSet> touch(Instant time, Node node) {
+        Validate.notNull(time);
+        Validate.notNull(node);
+
+        // Validate everything up front, so that if something's wrong nothing gets changed in any of the routers
+        Id nodeId = node.getId();
+        if (idBitLength != -1) {
+            InternalValidate.matchesLength(idBitLength, nodeId);
+        }
+        long timeNanos = Times.toNanos(time);
+        InternalValidate.forwardTime(lastTouchTime, timeNanos);
+        Node pooledNode = acquire(node);
+        lastTouchTime = timeNanos;
+
+        LinkedHashMap<Id, RouterChangeSet> ret = new LinkedHashMap<>();
+        for (Entry<Id, Router> entry : routers.entrySet()) {
+            Id baseId = entry.getKey();
+            if (baseId.equals(nodeId)) { // don't add an identity to its own router
+                continue;
+            }
+
+            Router router = entry.getValue();
+            RouterChangeSet changeSet = router.touch(time, pooledNode);
+            updateReferences(changeSet);
+            ret.put(baseId, changeSet);
+        }
+
+        releaseIfUnreferenced(nodeId);
+
+        return Collections.unmodifiableMap(ret);
+    }
+
+    /**
+     * Marks a node as stale in the router of every identity in this host that holds it.
+     * <p>
+     * See {@link Router#stale(com.offbynull.kademlia.Node) } for more information.
+     * @param node node to mark as stale
+     * @return identity IDs mapped to the changes to the router of that identity (identities whose routers don't hold {@code node} are left
+     * out)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws NodeNotFoundException if no router in this host holds {@code node}
+     * @throws LinkMismatchException if the pool contains a node with {@code node}'s ID but with a different link
+     */
+    public Map<Id, RouterChangeSet> stale(Node node) {
+        Validate.notNull(node);
+
+        Id nodeId = node.getId();
+        PooledNode pooledNode = pool.get(nodeId);
+        if (pooledNode == null) {
+            throw new NodeNotFoundException(node);
+        }
+        if (!pooledNode.node.getLink().equals(node.getLink())) {
+            throw new LinkMismatchException(pooledNode.node, node.getLink());
+        }
+
+        LinkedHashMap<Id, RouterChangeSet> ret = new LinkedHashMap<>();
+        for (Entry<Id, Router> entry : routers.entrySet()) {
+            Id baseId = entry.getKey();
+            if (baseId.equals(nodeId)) {
+                continue;
+            }
+
+            Router router = entry.getValue();
+            RouterResult result = router.tryStale(pooledNode.node);
+            if (result.getStatus() == RouterStatus.NODE_NOT_FOUND) {
+                continue; // this router doesn't hold the node (or holds it in its cache), skip it
+            }
+            Validate.validState(result.getStatus() == RouterStatus.APPLIED); // sanity check, routers only ever hold the pooled node
+            RouterChangeSet changeSet = result.getChangeSet();
+            updateReferences(changeSet);
+            ret.put(baseId, changeSet);
+        }
+
+        return Collections.unmodifiableMap(ret);
+    }
+
+    /**
+     * Searches the router of an identity in this host for the closest nodes to some ID.
+     * <p>
+     * See {@link Router#find(com.offbynull.kademlia.Id, int, boolean) } for more information.
+     * @param baseId ID of the identity whose router to search
+     * @param id ID to search for
+     * @param max maximum number of results to give back
+     * @param includeStale if {@code true}, includes stale nodes in the results
+     * @return up to {@code max} closest nodes to {@code id}
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if this host doesn't have an identity with {@code baseId}, or if any numeric argument is negative
+     * @throws IdLengthMismatchException if the bitlength of {@code id} doesn't match the bitlength of {@code baseId}
+     */
+    public List<Node> find(Id baseId, Id id, int max, boolean includeStale) {
+        Validate.notNull(baseId);
+        Router router = routers.get(baseId);
+        Validate.isTrue(router != null);
+
+        return router.find(id, max, includeStale);
+    }
+
+    /**
+     * Get the IDs of all identities in this host.
+     * @return IDs of all identities in this host, in the order they were added
+     */
+    public List<Id> getIdentities() {
+        return new ArrayList<>(routers.keySet());
+    }
+
+    /**
+     * Get the number of distinct nodes held across the routers of all identities in this host.
+     * @return number of nodes in the shared pool
+     */
+    public int getPoolSize() {
+        return pool.size();
+    }
+
+    private Node acquire(Node node) {
+        Id nodeId = node.getId();
+        PooledNode pooledNode = pool.get(nodeId);
+        if (pooledNode == null) {
+            pooledNode = new PooledNode(node);
+            pool.put(nodeId, pooledNode);
+        } else if (!pooledNode.node.getLink().equals(node.getLink())) {
+            throw new LinkMismatchException(pooledNode.node, node.getLink());
+        }
+        return pooledNode.node;
+    }
+
+    private void updateReferences(RouterChangeSet changeSet) {
+        // A node moving between the bucket and the cache of the same k-bucket shows up as both a removal and an addition, so it nets out
+        KBucketChangeSet kBucketChangeSet = changeSet.getRouteTreeChangeSet().getKBucketChangeSet();
+        for (ActivityChangeSet activityChangeSet : new ActivityChangeSet[] {
+                kBucketChangeSet.getBucketChangeSet(), kBucketChangeSet.getCacheChangeSet() }) {
+            for (Activity added : activityChangeSet.viewAdded()) {
+                pool.get(added.getNode().getId()).refCount++;
+            }
+            for (Activity removed : activityChangeSet.viewRemoved()) {
+                release(removed.getNode().getId());
+            }
+        }
+    }
+
+    private void release(Id nodeId) {
+        PooledNode pooledNode = pool.get(nodeId);
+        Validate.validState(pooledNode != null && pooledNode.refCount > 0); // sanity check
+        pooledNode.refCount--;
+        releaseIfUnreferenced(nodeId);
+    }
+
+    private void releaseIfUnreferenced(Id nodeId) {
+        PooledNode pooledNode = pool.get(nodeId);
+        if (pooledNode != null && pooledNode.refCount == 0) {
+            pool.remove(nodeId);
+        }
+    }
+
+    private static final class PooledNode {
+        private final Node node;
+        private int refCount;
+
+        PooledNode(Node node) {
+            this.node = node;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.util.Objects;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Result of a try operation performed on a {@link Router} (e.g. {@link Router#tryTouch(java.time.Instant, com.offbynull.kademlia.Node) }).
+ * @author Kasra Faghihi
+ */
+public final class RouterResult {
+    static final RouterResult LINK_MISMATCH = new RouterResult(RouterStatus.LINK_MISMATCH, null);
+    static final RouterResult NODE_NOT_FOUND = new RouterResult(RouterStatus.NODE_NOT_FOUND, null);
+
+    private final RouterStatus status;
+    private final RouterChangeSet changeSet;
+
+    RouterResult(RouterChangeSet changeSet) {
+        this(RouterStatus.APPLIED, changeSet);
+        Validate.notNull(changeSet);
+    }
+
+    private RouterResult(RouterStatus status, RouterChangeSet changeSet) {
+        this.status = status;
+        this.changeSet = changeSet;
+    }
+
+    /**
+     * Get the outcome of the operation.
+     * @return outcome of the operation
+     */
+    public RouterStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the changes resulting from the operation.
+     * @return changes resulting from the operation, or {@code null} if the operation wasn't applied (status isn't
+     * {@link RouterStatus#APPLIED})
+     */
+    public RouterChangeSet getChangeSet() {
+        return changeSet;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 53 * hash + Objects.hashCode(this.status);
+        hash = 53 * hash + Objects.hashCode(this.changeSet);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final RouterResult other = (RouterResult) obj;
+        if (this.status != other.status) {
+            return false;
+        }
+        if (!Objects.equals(this.changeSet, other.changeSet)) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "RouterResult{" + "status=" + status + ", changeSet=" + changeSet + '}';
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+/**
+ * Outcome of a try operation performed on a {@link Router} (e.g. {@link Router#tryTouch(java.time.Instant, com.offbynull.kademlia.Node) }).
+ * Outcomes that are expected under normal network conditions are reported as one of these rather than thrown as an exception.
+ * @author Kasra Faghihi
+ */
+public enum RouterStatus {
+    /**
+     * Operation was applied.
+     */
+    APPLIED,
+    /**
+     * Operation wasn't applied because the router contains a node with the same ID but a different link (the equivalent of a
+     * {@link LinkMismatchException}).
+     */
+    LINK_MISMATCH,
+    /**
+     * Operation wasn't applied because the router doesn't contain the node (the equivalent of a {@link NodeNotFoundException}).
+     */
+    NODE_NOT_FOUND
+}
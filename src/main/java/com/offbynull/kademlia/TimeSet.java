@@ -16,7 +16,6 @@
  */
 package com.offbynull.kademlia;
 
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -28,9 +27,9 @@ import org.apache.commons.collections4.map.MultiValueMap;
 import org.apache.commons.lang3.Validate;
 
 final class TimeSet<V> {
-    private final HashMap<V, Instant> valueLookup;
-    private final TreeMap<Instant, HashSet<V>> timeLookup;
-    private final MultiValueMap<Instant, V> timeLookupDecorator;
+    private final HashMap<V, Long> valueLookup;
+    private final TreeMap<Long, HashSet<V>> timeLookup;
+    private final MultiValueMap<Long, V> timeLookupDecorator;
 
     TimeSet() {
         valueLookup = new HashMap<>();
@@ -41,7 +40,7 @@ final class TimeSet<V> {
     public void remove(V value) {
         Validate.notNull(value);
         
-        Instant time = valueLookup.remove(value);
+        Long time = valueLookup.remove(value);
         if (time == null) {
             return;
         }
@@ -49,20 +48,17 @@ final class TimeSet<V> {
         timeLookupDecorator.removeMapping(time, value);
     }
 
-    public void insert(Instant time, V value) {
-        Validate.notNull(time);
+    public void insert(long time, V value) { // time is nanos since epoch (see Times)
         Validate.notNull(value);
         
-        Instant existing = valueLookup.putIfAbsent(value, time);
+        Long existing = valueLookup.putIfAbsent(value, time);
         Validate.isTrue(existing == null); // should not allow putting in a value that already exists
         
         timeLookupDecorator.put(time, value);
     }
     
-    public List<V> getBefore(Instant time, boolean inclusive) {
-        Validate.notNull(time);
-        
-        Map<Instant, HashSet<V>> subMap = timeLookup.headMap(time, inclusive);
+    public List<V> getBefore(long time, boolean inclusive) {
+        Map<Long, HashSet<V>> subMap = timeLookup.headMap(time, inclusive);
         
         LinkedList<V> ret = new LinkedList<>();
         subMap.entrySet().stream()
@@ -72,10 +68,8 @@ final class TimeSet<V> {
         return new ArrayList<>(ret);
     }
 
-    public List<V> getAfter(Instant time, boolean inclusive) {
-        Validate.notNull(time);
-        
-        Map<Instant, HashSet<V>> subMap = timeLookup.tailMap(time, inclusive);
+    public List<V> getAfter(long time, boolean inclusive) {
+        Map<Long, HashSet<V>> subMap = timeLookup.tailMap(time, inclusive);
         
         LinkedList<V> ret = new LinkedList<>();
         subMap.entrySet().stream()
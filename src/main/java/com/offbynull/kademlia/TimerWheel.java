@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import org.apache.commons.lang3.Validate;
+
+// Hashed timing wheel. Like everything else in this package, it doesn't have a clock of its own -- time is pushed in by the caller through
+// advance(). Each value is hashed in to the slot for the tick its deadline lands on, and advance() only visits the slots for the ticks that
+// have passed since the last call (at most one full rotation). Inserts/removes are O(1), and advancing is proportional to the number of
+// ticks passed + number of values in the slots visited.
+//
+// Values never expire early -- they expire on the first tick boundary at or after their deadline, meaning they can be up to 1 tick late.
+final class TimerWheel<V> {
+    private final long tickMillis;
+    private final Entry<V>[] slots;
+    private final int slotMask;
+    private final HashMap<V, Entry<V>> entries;
+
+    private boolean started;
+    private long currentTick;
+    private Instant lastAdvanceTime;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimerWheel(Duration tickDuration, int slotCount) {
+        Validate.notNull(tickDuration);
+        Validate.isTrue(tickDuration.toMillis() > 0L);
+        Validate.isTrue(slotCount > 0);
+        Validate.isTrue(Integer.bitCount(slotCount) == 1); // must be power of 2, so we can mask instead of mod
+
+        this.tickMillis = tickDuration.toMillis();
+        this.slots = (Entry<V>[]) new Entry[slotCount];
+        this.slotMask = slotCount - 1;
+        this.entries = new HashMap<>();
+        this.lastAdvanceTime = Instant.MIN;
+    }
+
+    public void insert(Instant deadline, V value) {
+        Validate.notNull(deadline);
+        Validate.notNull(value);
+        Validate.isTrue(!entries.containsKey(value)); // should not allow putting in a value that already exists
+
+        long deadlineTick = ceilTick(deadline);
+
+        // If the deadline has already passed, put it in the slot for the current tick -- the current tick's slot is always the first slot
+        // that gets visited by advance(), so it'll be expired on the next call.
+        long slotTick = started && deadlineTick <= currentTick ? currentTick : deadlineTick;
+
+        Entry<V> entry = new Entry<>(value, deadline, deadlineTick, (int) (slotTick & slotMask));
+        link(entry);
+        entries.put(value, entry);
+    }
+
+    public boolean remove(V value) {
+        Validate.notNull(value);
+
+        Entry<V> entry = entries.remove(value);
+        if (entry == null) {
+            return false;
+        }
+
+        unlink(entry);
+        return true;
+    }
+
+    public boolean contains(V value) {
+        Validate.notNull(value);
+        return entries.containsKey(value);
+    }
+
+    public Instant getDeadline(V value) { // deadline of value, or null if value isn't in the wheel
+        Validate.notNull(value);
+
+        Entry<V> entry = entries.get(value);
+        return entry == null ? null : entry.deadline;
+    }
+
+    public List<V> advance(Instant time) { // returns everything that's expired, ordered by deadline
+        Validate.notNull(time);
+        InternalValidate.forwardTime(lastAdvanceTime, time); // time must be >= lastAdvanceTime
+        lastAdvanceTime = time;
+
+        long nowTick = floorTick(time);
+
+        // Visit every slot from the current tick up to (and including) the new tick. If more than a full rotation has passed, every slot
+        // needs to be visited exactly once. If this is the first time advancing, we don't know which slots values were put in relative to
+        // the current time, so also visit every slot.
+        int visitCount;
+        long startTick;
+        if (!started || nowTick - currentTick >= slots.length) {
+            startTick = nowTick;
+            visitCount = slots.length;
+        } else {
+            startTick = currentTick;
+            visitCount = (int) (nowTick - currentTick) + 1;
+        }
+        started = true;
+        currentTick = nowTick;
+
+        List<Entry<V>> expired = new ArrayList<>();
+        for (int i = 0; i < visitCount; i++) {
+            int slotIdx = (int) ((startTick + i) & slotMask);
+            Entry<V> entry = slots[slotIdx];
+            while (entry != null) {
+                Entry<V> next = entry.next;
+                if (entry.deadlineTick <= nowTick) { // anything with a later deadline tick is for a future rotation, leave it be
+                    unlink(entry);
+                    entries.remove(entry.value);
+                    expired.add(entry);
+                }
+                entry = next;
+            }
+        }
+
+        expired.sort((x, y) -> x.deadline.compareTo(y.deadline));
+
+        List<V> ret = new ArrayList<>(expired.size());
+        expired.forEach(x -> ret.add(x.value));
+        return ret;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private long floorTick(Instant time) {
+        return Math.floorDiv(time.toEpochMilli(), tickMillis);
+    }
+
+    private long ceilTick(Instant time) {
+        // toEpochMilli() truncates sub-millisecond parts, so bump up by 1 milli if there are any so the deadline is rounded up
+        long millis = time.toEpochMilli();
+        if (time.getNano() % 1_000_000 != 0) {
+            millis++;
+        }
+        return -Math.floorDiv(-millis, tickMillis);
+    }
+
+    private void link(Entry<V> entry) {
+        Entry<V> head = slots[entry.slotIdx];
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        }
+        slots[entry.slotIdx] = entry;
+    }
+
+    private void unlink(Entry<V> entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            slots[entry.slotIdx] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final Instant deadline;
+        private final long deadlineTick;
+        private final int slotIdx;
+        private Entry<V> prev;
+        private Entry<V> next;
+
+        Entry(V value, Instant deadline, long deadlineTick, int slotIdx) {
+            this.value = value;
+            this.deadline = deadline;
+            this.deadlineTick = deadlineTick;
+            this.slotIdx = slotIdx;
+        }
+    }
+}
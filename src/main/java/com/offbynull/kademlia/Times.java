@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.time.Instant;
+import org.apache.commons.lang3.Validate;
+
+final class Times {
+    // Internally, times are held as nanoseconds since the epoch. Instant.MIN and Instant.MAX are used as sentinels throughout, so they're
+    // mapped to the ends of the long range. Anything else must fit in a long's worth of nanoseconds (roughly years 1677 to 2262).
+    static final long MIN = Long.MIN_VALUE;
+    static final long MAX = Long.MAX_VALUE;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private Times() {
+        // do nothing
+    }
+
+    static long toNanos(Instant time) {
+        Validate.notNull(time);
+
+        if (time.equals(Instant.MIN)) {
+            return MIN;
+        }
+        if (time.equals(Instant.MAX)) {
+            return MAX;
+        }
+
+        long ret;
+        try {
+            ret = Math.addExact(Math.multiplyExact(time.getEpochSecond(), NANOS_PER_SECOND), time.getNano());
+        } catch (ArithmeticException ae) {
+            throw new IllegalArgumentException("Time out of range: " + time, ae);
+        }
+        Validate.isTrue(ret != MIN && ret != MAX, "Time out of range: %s", time); // reserved for sentinels
+        return ret;
+    }
+
+    static long toNanosSaturated(Instant time) { // for thresholds, where clamping to the ends of the range gives the same answer
+        Validate.notNull(time);
+
+        if (time.getEpochSecond() < 0L) {
+            return time.isBefore(toInstant(MIN + 1L)) ? MIN : toNanos(time);
+        } else {
+            return time.isAfter(toInstant(MAX - 1L)) ? MAX : toNanos(time);
+        }
+    }
+
+    static Instant toInstant(long time) {
+        if (time == MIN) {
+            return Instant.MIN;
+        }
+        if (time == MAX) {
+            return Instant.MAX;
+        }
+
+        return Instant.ofEpochSecond(Math.floorDiv(time, NANOS_PER_SECOND), Math.floorMod(time, NANOS_PER_SECOND));
+    }
+}
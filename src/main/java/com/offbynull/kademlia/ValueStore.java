@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2017, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.kademlia;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Key/value store for the values a Kademlia node is responsible for (values received via STORE and handed out via FIND_VALUE).
+ * <p>
+ * Values are keyed by {@link Id} and expire once their time-to-live is up. Like {@link Router}, implementations don't keep time
+ * themselves -- time is pushed in by the caller, and expired values are removed by calling {@link #expire(java.time.Instant) }.
+ * Implementations are bounded in size. When full, values whose keys are furthest away from the base ID (the ID of the node the store is
+ * for) get evicted first, since those are the values the node is least responsible for.
+ * @author Kasra Faghihi
+ */
+public interface ValueStore {
+
+    /**
+     * Stores a value, replacing the existing value for {@code key} if one exists.
+     * @param time current time
+     * @param key key of value
+     * @param value value to store (copied)
+     * @param ttl duration to keep the value around for
+     * @return {@code true} if the value was stored, {@code false} if it couldn't fit (the value is too large to fit in an empty store, or
+     * the store is full and every value in it is closer to the base ID than {@code key})
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code ttl} is negative
+     * @throws IdLengthMismatchException if the bitlength of {@code key} doesn't match the bitlength of the base ID
+     * @throws BackwardTimeException if {@code time} is less than the time used in the previous invocation of this method or
+     * {@link #expire(java.time.Instant) }
+     */
+    boolean put(Instant time, Id key, byte[] value, Duration ttl);
+
+    /**
+     * Gets a value.
+     * @param key key of value
+     * @return copy of value, or {@code null} if no value is stored for {@code key}
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code key} doesn't match the bitlength of the base ID
+     */
+    byte[] get(Id key);
+
+    /**
+     * Gets the time a value expires.
+     * @param key key of value
+     * @return expiration time of value, or {@code null} if no value is stored for {@code key}
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code key} doesn't match the bitlength of the base ID
+     */
+    Instant getExpiration(Id key);
+
+    /**
+     * Removes a value.
+     * @param key key of value
+     * @return {@code true} if a value was removed, {@code false} if no value is stored for {@code key}
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IdLengthMismatchException if the bitlength of {@code key} doesn't match the bitlength of the base ID
+     */
+    boolean remove(Id key);
+
+    /**
+     * Removes values whose time-to-live is up. Meant to be called periodically.
+     * @param time current time
+     * @return keys of values that were removed, ordered by expiration time
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws BackwardTimeException if {@code time} is less than the time used in the previous invocation of this method or
+     * {@link #put(java.time.Instant, com.offbynull.kademlia.Id, byte[], java.time.Duration) }
+     */
+    List<Id> expire(Instant time);
+
+    /**
+     * Gets the keys closest to some ID. Key closeness is determined by the XOR metric -- Kademlia's notion of distance.
+     * @param id ID to search for
+     * @param max maximum number of keys to give back
+     * @return up to {@code max} keys closest to {@code id}, ordered from closest to furthest
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if any numeric argument is negative
+     * @throws IdLengthMismatchException if the bitlength of {@code id} doesn't match the bitlength of the base ID
+     */
+    List<Id> getClosestKeys(Id id, int max);
+
+    /**
+     * Gets the keys that start with some prefix. All keys that share a prefix are a contiguous range in XOR space (e.g. the keys closer to
+     * some ID A than to some ID B are the keys that start with the bits A and B have in common followed by the first bit of A that
+     * differs from B).
+     * @param prefix prefix to search for
+     * @return keys that start with {@code prefix}, in bit order
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if the bitlength of {@code prefix} is greater than the bitlength of the base ID
+     */
+    List<Id> getKeysWithPrefix(BitString prefix);
+
+    /**
+     * Gets the number of values stored.
+     * @return number of values stored
+     */
+    int size();
+}
@@ -0,0 +1,84 @@
+package com.offbynull.kademlia;
+
+import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetRemoved;
+import static com.offbynull.kademlia.TestUtils.verifyNodes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class AdaptiveBucketStrategyTest {
+
+    private static final Node NODE_0000 = new Node(Id.createFromLong(0x00L, 4), "0"); // 0000
+    private static final Node NODE_1000 = new Node(Id.createFromLong(0x08L, 4), "8");
+    private static final Node NODE_1001 = new Node(Id.createFromLong(0x09L, 4), "9");
+    private static final Node NODE_1010 = new Node(Id.createFromLong(0x0AL, 4), "A");
+    private static final Node NODE_1011 = new Node(Id.createFromLong(0x0BL, 4), "B");
+
+    private static final BitString PREFIX_1 = BitString.createFromString("1");
+
+    private static final Instant BASE_TIME = Instant.ofEpochMilli(0L);
+
+    private AdaptiveBucketStrategy fixture = new AdaptiveBucketStrategy(new KBucketParameters(2, 1), new KBucketParameters(4, 3), 100);
+    private Router router = new Router(NODE_0000.getId(),
+            new SimpleRouteTreeStrategy(NODE_0000.getId(), 2, 2, 1),
+            fixture,
+            new BackoffParameters(Duration.ofSeconds(1L), Duration.ofSeconds(4L), 2));
+
+    @Test
+    public void mustGrowBucketAndCacheWhenChurnIsHigh() throws Throwable {
+        growBucket1();
+
+        assertEquals(3, fixture.getBucketParameters(PREFIX_1).getBucketSize());
+        assertEquals(2, fixture.getBucketParameters(PREFIX_1).getCacheSize());
+        assertEquals(1, fixture.getBucketParameters(BitString.createFromString("01")).getCacheSize()); // untouched, left alone
+
+        List<RouterChangeSet> res = router.reconfigure();
+        assertEquals(1, res.size());
+        assertEquals(PREFIX_1, res.get(0).getRouteTreeChangeSet().getKBucketPrefix());
+
+        router.touch(BASE_TIME.plusMillis(3L), NODE_1011); // now fits in bucket
+        verifyNodes(router.find(NODE_1000.getId(), 100, false), NODE_1001, NODE_1010, NODE_1011);
+    }
+
+    @Test
+    public void mustShrinkBucketWhenChurnIsLow() throws Throwable {
+        growBucket1();
+        router.reconfigure();
+        fixture.recordTouch(router.touch(BASE_TIME.plusMillis(3L), NODE_1011));
+        for (int i = 0; i < 20; i++) {
+            fixture.recordTouch(router.touch(BASE_TIME.plusMillis(4L + i), NODE_1011));
+        }
+
+        fixture.adapt(router.dumpBucketPrefixes());
+        assertEquals(2, fixture.getBucketParameters(PREFIX_1).getBucketSize());
+        assertEquals(1, fixture.getBucketParameters(PREFIX_1).getCacheSize());
+
+        List<RouterChangeSet> res = router.reconfigure();
+        assertEquals(1, res.size());
+        verifyActivityChangeSetRemoved(res.get(0).getRouteTreeChangeSet().getKBucketChangeSet().getBucketChangeSet(), NODE_1001);
+        verifyNodes(router.find(NODE_1000.getId(), 100, false), NODE_1010, NODE_1011);
+    }
+
+    @Test
+    public void mustCapTotalSlots() throws Throwable {
+        fixture = new AdaptiveBucketStrategy(new KBucketParameters(2, 1), new KBucketParameters(4, 3), 16); // 5 buckets at minimum is 15
+        router = new Router(NODE_0000.getId(),
+                new SimpleRouteTreeStrategy(NODE_0000.getId(), 2, 2, 1),
+                fixture,
+                new BackoffParameters(Duration.ofSeconds(1L), Duration.ofSeconds(4L), 2));
+        growBucket1();
+
+        assertEquals(3, fixture.getBucketParameters(PREFIX_1).getBucketSize());
+        assertEquals(1, fixture.getBucketParameters(PREFIX_1).getCacheSize()); // cache slot taken away first
+    }
+
+    private void growBucket1() {
+        fixture.recordTouch(router.touch(BASE_TIME.plusMillis(1L), NODE_1000));
+        fixture.recordTouch(router.touch(BASE_TIME.plusMillis(1L), NODE_1001));
+        fixture.recordTouch(router.touch(BASE_TIME.plusMillis(2L), NODE_1010)); // goes in to cache
+        fixture.recordStale(router.stale(NODE_1000)); // replaced by 1010
+        fixture.adapt(router.dumpBucketPrefixes());
+    }
+}
@@ -3,6 +3,7 @@ package com.offbynull.kademlia;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.apache.commons.lang3.StringUtils.repeat;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -146,6 +147,18 @@ public class BitStringTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void mustAppendBitsOfLongSameAsAppendingId() {
+        BitString bitString = BitString.createLogicalOrder(toBytes(0x3C5A000000000000L), 0, 13);
+        assertEquals(bitString, bitString.appendBits(0L, 0));
+        for (int len = 1; len <= 12; len++) {
+            for (int i = 0; i < (1 << len); i++) {
+                BitString expected = bitString.appendBits(Id.createFromLong(i, len).getBitString());
+                assertEquals(expected, bitString.appendBits(i, len));
+            }
+        }
+    }
+
     @Test
     public void mustSetGroupsOfBitsTo0() {
         BitString bitString = BitString.createLogicalOrder(toBytes(0x3C5A000000000000L), 0, 16);
@@ -304,6 +317,20 @@ public class BitStringTest {
 
     }
     
+    @Test
+    public void mustPackAndUnpackWords() {
+        for (String str : new String[] {"1", "10110", "1011001110001111", "1" + repeat('0', 63), "10100101" + repeat('1', 152)}) {
+            BitString bitString = BitString.createFromString(str);
+            int wordCount = BitString.calculateRequiredWordCount(str.length());
+            long[] words = new long[wordCount + 2];
+            bitString.packWords(words, 1);
+            
+            assertEquals(0L, words[0]);
+            assertEquals(0L, words[wordCount + 1]);
+            assertEquals(bitString, BitString.unpackWords(words, 1, str.length()));
+        }
+    }
+    
     private static byte[] toBytes(long data) { // returns in big endian format
         byte[] bytes = new byte[8];
         for (int i = 0; i < 8; i++) {
@@ -0,0 +1,115 @@
+package com.offbynull.kademlia;
+
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.reverse;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class IdTrieTest {
+
+    private static final Id NODE_0000 = Id.createFromLong(0x00L, 4);
+    private static final Id NODE_0001 = Id.createFromLong(0x01L, 4);
+    private static final Id NODE_0100 = Id.createFromLong(0x04L, 4);
+    private static final Id NODE_1010 = Id.createFromLong(0x0AL, 4);
+    private static final Id NODE_1011 = Id.createFromLong(0x0BL, 4);
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private IdTrie fixture = new IdTrie(4);
+
+    @Test
+    public void mustAddAndRemove() {
+        assertTrue(fixture.add(NODE_0001));
+        assertTrue(fixture.add(NODE_1010));
+        assertFalse(fixture.add(NODE_0001));
+        assertEquals(2, fixture.size());
+        assertTrue(fixture.contains(NODE_0001));
+        assertFalse(fixture.contains(NODE_0000));
+
+        assertFalse(fixture.remove(NODE_0000));
+        assertTrue(fixture.remove(NODE_0001));
+        assertFalse(fixture.contains(NODE_0001));
+        assertTrue(fixture.remove(NODE_1010));
+        assertEquals(0, fixture.size());
+        assertEquals(emptyList(), fixture.nearest(NODE_0000, 10));
+    }
+
+    @Test
+    public void mustGetNearest() {
+        fixture.add(NODE_0001);
+        fixture.add(NODE_0100);
+        fixture.add(NODE_1010);
+        fixture.add(NODE_1011);
+
+        assertEquals(asList(NODE_1011, NODE_1010, NODE_0100, NODE_0001), fixture.nearest(Id.createFromLong(0x0FL, 4), 10));
+        assertEquals(asList(NODE_0001, NODE_0100), fixture.nearest(NODE_0000, 2));
+        assertEquals(emptyList(), fixture.nearest(NODE_0000, 0));
+    }
+
+    @Test
+    public void mustGetWithPrefix() {
+        fixture.add(NODE_0001);
+        fixture.add(NODE_0100);
+        fixture.add(NODE_1010);
+        fixture.add(NODE_1011);
+
+        assertEquals(asList(NODE_1010, NODE_1011), fixture.getWithPrefix(BitString.createFromString("101")));
+        assertEquals(asList(NODE_0001, NODE_0100), fixture.getWithPrefix(BitString.createFromString("0")));
+        assertEquals(emptyList(), fixture.getWithPrefix(BitString.createFromString("11")));
+        assertEquals(asList(NODE_0001, NODE_0100, NODE_1010, NODE_1011), fixture.getWithPrefix(BitString.createFromString("")));
+    }
+
+    @Test
+    public void mustFailWhenIdLengthDoesNotMatch() {
+        expectedException.expect(IdLengthMismatchException.class);
+        fixture.add(Id.createFromLong(0x00L, 5));
+    }
+
+    @Test
+    public void mustOrderSameAsXorComparatorAcrossRandomAddsAndRemoves() {
+        Random random = new Random(1L);
+        IdTrie trie = new IdTrie(20);
+        Set<Id> expected = new HashSet<>();
+        for (int i = 0; i < 5000; i++) {
+            Id id = Id.createFromLong(random.nextInt(1 << 20) & 0xFFF0FL, 20); // cluster ids so branches get shared
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(id), trie.remove(id));
+            } else {
+                assertEquals(expected.add(id), trie.add(id));
+            }
+            assertEquals(expected.size(), trie.size());
+
+            if (i % 100 == 0) {
+                Id target = Id.createFromLong(random.nextInt(1 << 20), 20);
+                List<Id> sorted = new ArrayList<>(expected);
+                sorted.sort(new IdXorMetricComparator(target));
+                assertEquals(sorted.subList(0, Math.min(10, sorted.size())), trie.nearest(target, 10));
+
+                List<Id> furthest = new ArrayList<>();
+                trie.visitFurthest(target, x -> furthest.add(x));
+                List<Id> reversed = new ArrayList<>(sorted);
+                reverse(reversed);
+                assertEquals(reversed, furthest);
+
+                BitString prefix = target.getBitString().getBits(0, 6);
+                List<Id> withPrefix = expected.stream()
+                        .filter(x -> x.getBitString().getBits(0, 6).equals(prefix))
+                        .sorted(new IdXorMetricComparator(Id.createFromLong(0L, 20)))
+                        .collect(Collectors.toList());
+                assertEquals(withPrefix, trie.getWithPrefix(prefix));
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.offbynull.kademlia;
+
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class IdXorMetricRankerTest {
+
+    private static final Id NODE_0000 = Id.createFromLong(0x00L, 4);
+    private static final Id NODE_0001 = Id.createFromLong(0x01L, 4);
+    private static final Id NODE_0100 = Id.createFromLong(0x04L, 4);
+    private static final Id NODE_0111 = Id.createFromLong(0x07L, 4);
+    private static final Id NODE_1010 = Id.createFromLong(0x0AL, 4);
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private IdXorMetricRanker fixture = new IdXorMetricRanker(NODE_0111);
+
+    @Test
+    public void mustRankClosestFirst() {
+        List<Id> ids = asList(NODE_1010, NODE_0000, NODE_0100, NODE_0001);
+
+        assertEquals(asList(NODE_0100, NODE_0001, NODE_0000, NODE_1010), fixture.rank(ids, 10));
+        assertEquals(asList(NODE_0100, NODE_0001), fixture.rank(ids, 2));
+        assertArrayEquals(new int[] {2, 3}, fixture.rank(fixture.pack(ids), 2));
+        assertArrayEquals(new int[0], fixture.rank(fixture.pack(ids), 0));
+    }
+
+    @Test
+    public void mustOrderSameDistanceByIndex() {
+        List<Id> ids = asList(NODE_0001, NODE_0000, NODE_0001);
+
+        assertArrayEquals(new int[] {0, 2, 1}, fixture.rank(fixture.pack(ids), 3));
+    }
+
+    @Test
+    public void mustCalculateDistancesInBitStringOrder() {
+        long[] dists = fixture.distances(fixture.pack(asList(NODE_0000, NODE_1010)));
+
+        assertArrayEquals(new long[] {0x7L << 60, 0xDL << 60}, dists);
+    }
+
+    @Test
+    public void mustFailWhenIdLengthDoesNotMatch() {
+        expectedException.expect(IdLengthMismatchException.class);
+        fixture.pack(asList(Id.createFromLong(0x00L, 5)));
+    }
+
+    @Test
+    public void mustRankSameAsXorComparatorAcrossMultipleWords() {
+        Random random = new Random(1L);
+        for (int bitLength : new int[] {8, 64, 65, 160}) {
+            byte[] data = new byte[(bitLength + 7) / 8];
+            random.nextBytes(data);
+            Id target = Id.create(data, bitLength);
+
+            List<Id> ids = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                random.nextBytes(data);
+                data[0] = (byte) (target.getBitsAsLong(0, 8) ^ random.nextInt(4)); // make prefixes collide so later words get compared
+                ids.add(Id.create(data, bitLength));
+            }
+
+            List<Id> expected = new ArrayList<>(ids);
+            expected.sort(new IdXorMetricComparator(target));
+
+            IdXorMetricRanker ranker = new IdXorMetricRanker(target);
+            assertEquals(expected.subList(0, 20), ranker.rank(ids, 20));
+            assertEquals(expected, ranker.rank(ids, ids.size()));
+        }
+    }
+}
@@ -6,7 +6,9 @@ import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetRemoved;
 import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetUpdated;
 import static com.offbynull.kademlia.TestUtils.verifyNodesInActivities;
 import static com.offbynull.kademlia.TestUtils.verifyTimeInActivities;
+import java.time.Duration;
 import java.time.Instant;
+import static java.util.Arrays.asList;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import org.junit.Rule;
@@ -191,6 +193,24 @@ public class KBucketTest {
         verifyNodesInActivities(fixture.dumpBucket(true, false, false), NODE_1000, node0010WithDifferentLink);
     }
 
+    @Test
+    public void mustMoveReplacedNodeToMostRecentWhenReplacingLink() throws Throwable {
+        fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010);
+        fixture.touch(BASE_TIME.plusMillis(2L), NODE_1000);
+        fixture.touch(BASE_TIME.plusMillis(3L), NODE_0100);
+
+        Node node0010WithDifferentLink = new Node(NODE_0010.getId(), "fakelink");
+
+        KBucketChangeSet res = fixture.touch(Times.toNanos(BASE_TIME.plusMillis(4L)), node0010WithDifferentLink, true);
+        verifyActivityChangeSetCounts(res.getBucketChangeSet(), 0, 0, 1);
+        verifyActivityChangeSetUpdated(res.getBucketChangeSet(), node0010WithDifferentLink);
+        verifyNodesInActivities(fixture.dumpBucket(true, true, true), NODE_1000, NODE_0100, node0010WithDifferentLink);
+        verifyTimeInActivities(fixture.dumpBucket(true, true, true),
+                BASE_TIME.plusMillis(2L),
+                BASE_TIME.plusMillis(3L),
+                BASE_TIME.plusMillis(4L));
+    }
+
     @Test
     public void mustAllowConflictingCacheNodeOnTouch() throws Throwable {
         fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010);
@@ -816,5 +836,116 @@ public class KBucketTest {
         expectedException.expect(IllegalArgumentException.class);
         fixture.stale(NODE_0000);
     }
-    
+
+    @Test
+    public void mustBulkLoadFirstNodesInToBucketAndLastNodesInToCache() throws Throwable {
+        KBucketChangeSet res = fixture.load(asList(
+                new Activity(NODE_0001, BASE_TIME.plusMillis(1L)),
+                new Activity(NODE_0010, BASE_TIME.plusMillis(2L)),
+                new Activity(NODE_0011, BASE_TIME.plusMillis(3L)),
+                new Activity(NODE_0100, BASE_TIME.plusMillis(4L)),
+                new Activity(NODE_0101, BASE_TIME.plusMillis(5L)), // would have been evicted from cache
+                new Activity(NODE_0110, BASE_TIME.plusMillis(6L)),
+                new Activity(NODE_0111, BASE_TIME.plusMillis(7L)),
+                new Activity(NODE_1000, BASE_TIME.plusMillis(8L))));
+        verifyActivityChangeSetAdded(res.getBucketChangeSet(), NODE_0001, NODE_0010, NODE_0011, NODE_0100);
+        verifyActivityChangeSetAdded(res.getCacheChangeSet(), NODE_0110, NODE_0111, NODE_1000);
+
+        verifyNodesInActivities(fixture.dumpBucket(true, true, true), NODE_0001, NODE_0010, NODE_0011, NODE_0100);
+        verifyNodesInActivities(fixture.dumpCache(), NODE_0110, NODE_0111, NODE_1000);
+
+        expectedException.expect(BackwardTimeException.class);
+        fixture.touch(BASE_TIME.plusMillis(7L), NODE_1001);
+    }
+
+    @Test
+    public void mustInsertLateTouchesWithinTolerance() throws Throwable {
+        fixture.setTouchTolerance(Duration.ofMillis(5L));
+        KBucketChangeSet res;
+
+        fixture.touch(BASE_TIME.plusMillis(10L), NODE_0001);
+        fixture.touch(BASE_TIME.plusMillis(20L), NODE_0010);
+        res = fixture.touch(BASE_TIME.plusMillis(15L), NODE_0011); // late, goes in before 0010
+        verifyActivityChangeSetAdded(res.getBucketChangeSet(), NODE_0011);
+        verifyNodesInActivities(fixture.dumpBucket(true, true, true), NODE_0001, NODE_0011, NODE_0010);
+
+        res = fixture.touch(BASE_TIME.plusMillis(16L), NODE_0010); // late, but 0010 was already touched later so its time stays
+        verifyActivityChangeSetUpdated(res.getBucketChangeSet(), NODE_0010);
+        verifyTimeInActivities(res.getBucketChangeSet().viewUpdated(), BASE_TIME.plusMillis(20L));
+
+        fixture.touch(BASE_TIME.plusMillis(25L), NODE_0100);
+        res = fixture.touch(BASE_TIME.plusMillis(21L), NODE_0101); // late and bucket full, goes to cache rather than pushing out 0100
+        verifyActivityChangeSetCounts(res.getBucketChangeSet(), 0, 0, 0);
+        verifyActivityChangeSetAdded(res.getCacheChangeSet(), NODE_0101);
+
+        verifyNodesInActivities(fixture.dumpBucket(true, true, true), NODE_0001, NODE_0011, NODE_0010, NODE_0100);
+        verifyTimeInActivities(fixture.dumpBucket(true, true, true),
+                BASE_TIME.plusMillis(10L),
+                BASE_TIME.plusMillis(15L),
+                BASE_TIME.plusMillis(20L),
+                BASE_TIME.plusMillis(25L));
+        verifyNodesInActivities(fixture.dumpCache(), NODE_0101);
+    }
+
+    @Test
+    public void mustRejectLateTouchesOutsideTolerance() throws Throwable {
+        fixture.setTouchTolerance(Duration.ofMillis(5L));
+        fixture.touch(BASE_TIME.plusMillis(10L), NODE_0001);
+        fixture.touch(BASE_TIME.plusMillis(5L), NODE_0010); // right at the edge of the tolerance
+
+        expectedException.expect(BackwardTimeException.class);
+        fixture.touch(BASE_TIME.plusMillis(4L), NODE_0011);
+    }
+
+    @Test
+    public void mustKeepTouchToleranceWhenSplit() throws Throwable {
+        fixture.setTouchTolerance(Duration.ofMillis(5L));
+        fixture.touch(BASE_TIME.plusMillis(10L), NODE_0001);
+        KBucket[] buckets = fixture.split(1);
+
+        buckets[0].touch(BASE_TIME.plusMillis(6L), NODE_0010);
+        verifyNodesInActivities(buckets[0].dumpBucket(true, true, true), NODE_0010, NODE_0001);
+    }
+
+    @Test
+    public void mustFailToBulkLoadWhenNotEmpty() throws Throwable {
+        fixture.touch(BASE_TIME, NODE_0001);
+
+        expectedException.expect(IllegalStateException.class);
+        fixture.load(asList(new Activity(NODE_0010, BASE_TIME)));
+    }
+
+    @Test
+    public void mustBehaveTheSameWithPackedStorage() throws Throwable {
+        LinkTable linkTable = new LinkTable();
+        KBucket packed = new KBucket(BASE_ID, BASE_ID.getBitString().getBits(0, 16), 4, 3,
+                () -> new PackedActivityStore(32, linkTable), () -> new PackedActivityStore(32, linkTable));
+
+        Node[] nodes = new Node[] {NODE_0001, NODE_0010, NODE_0011, NODE_0100, NODE_0101, NODE_0110, NODE_0111, NODE_1000, NODE_1001};
+        for (int i = 0; i < nodes.length; i++) {
+            assertEquals(fixture.touch(BASE_TIME.plusMillis(i), nodes[i]), packed.touch(BASE_TIME.plusMillis(i), nodes[i]));
+        }
+        assertEquals(fixture.touch(BASE_TIME.plusMillis(10L), NODE_0010), packed.touch(BASE_TIME.plusMillis(10L), NODE_0010));
+        assertEquals(fixture.stale(NODE_0001), packed.stale(NODE_0001)); // replaced by latest cache node
+        fixture.lock(NODE_0011);
+        packed.lock(NODE_0011);
+        assertEquals(fixture.resizeBucket(2), packed.resizeBucket(2));
+        assertEquals(fixture.resizeCache(1), packed.resizeCache(1));
+
+        assertEquals(fixture.dumpBucket(true, true, true), packed.dumpBucket(true, true, true));
+        assertEquals(fixture.dumpBucket(true, false, false), packed.dumpBucket(true, false, false));
+        assertEquals(fixture.dumpCache(), packed.dumpCache());
+        assertEquals(3, linkTable.size()); // only links of nodes still held (2 in bucket, 1 in cache)
+
+        // k-buckets generated by splitting share the link table, and links are released once nothing holds them
+        KBucket[] fixtureSplit = fixture.split(1);
+        KBucket[] packedSplit = packed.split(1);
+        packed.discard();
+        for (int i = 0; i < fixtureSplit.length; i++) {
+            assertEquals(fixtureSplit[i].dumpBucket(true, true, true), packedSplit[i].dumpBucket(true, true, true));
+            assertEquals(fixtureSplit[i].dumpCache(), packedSplit[i].dumpCache());
+            packedSplit[i].discard();
+        }
+        assertEquals(0, linkTable.size());
+    }
 }
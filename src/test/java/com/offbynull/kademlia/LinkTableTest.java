@@ -0,0 +1,77 @@
+package com.offbynull.kademlia;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+public class LinkTableTest {
+
+    private LinkTable fixture = new LinkTable();
+
+    @Test
+    public void mustShareIndexBetweenReferencesToSameLink() {
+        int idx1 = fixture.acquire("link");
+        int idx2 = fixture.acquire(new String("link")); // equal but not same object
+        int otherIdx = fixture.acquire("other");
+
+        assertEquals(idx1, idx2);
+        assertNotEquals(idx1, otherIdx);
+        assertEquals("link", fixture.get(idx1));
+        assertEquals(2, fixture.size());
+
+        fixture.release(idx1);
+        assertEquals("link", fixture.get(idx1)); // still referenced once
+        assertEquals(2, fixture.size());
+
+        fixture.release(idx2);
+        assertNull(fixture.get(idx1));
+        assertEquals(1, fixture.size());
+    }
+
+    @Test
+    public void mustReuseIndexOnceReleased() {
+        int idx = fixture.acquire("link");
+        fixture.release(idx);
+
+        assertEquals(idx, fixture.acquire("other"));
+        assertEquals("other", fixture.get(idx));
+    }
+
+    @Test
+    public void mustKeepFindingLinksAcrossGrowthAndRemovals() {
+        Random random = new Random(1L);
+        Map<String, Integer> expectedRefCounts = new HashMap<>();
+        Map<String, Integer> expectedIndices = new HashMap<>();
+        List<String> held = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            if (!held.isEmpty() && random.nextInt(3) == 0) {
+                String link = held.remove(random.nextInt(held.size()));
+                fixture.release(expectedIndices.get(link));
+                if (expectedRefCounts.merge(link, -1, Integer::sum) == 0) {
+                    expectedRefCounts.remove(link);
+                    expectedIndices.remove(link);
+                }
+            } else {
+                String link = "link" + random.nextInt(2000);
+                int idx = fixture.acquire(link);
+                Integer expectedIdx = expectedIndices.putIfAbsent(link, idx);
+                if (expectedIdx != null) {
+                    assertEquals((int) expectedIdx, idx);
+                }
+                expectedRefCounts.merge(link, 1, Integer::sum);
+                held.add(link);
+            }
+        }
+
+        assertEquals(expectedIndices.size(), fixture.size());
+        for (Map.Entry<String, Integer> entry : expectedIndices.entrySet()) {
+            assertEquals(entry.getKey(), fixture.get(entry.getValue()));
+        }
+    }
+}
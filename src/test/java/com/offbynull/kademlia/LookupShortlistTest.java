@@ -0,0 +1,127 @@
+package com.offbynull.kademlia;
+
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class LookupShortlistTest {
+
+    private static final Node NODE_0000 = new Node(Id.createFromLong(0x00L, 4), "0");
+    private static final Node NODE_0001 = new Node(Id.createFromLong(0x01L, 4), "1");
+    private static final Node NODE_0010 = new Node(Id.createFromLong(0x02L, 4), "2");
+    private static final Node NODE_0100 = new Node(Id.createFromLong(0x04L, 4), "4");
+    private static final Node NODE_1000 = new Node(Id.createFromLong(0x08L, 4), "8");
+    private static final Node NODE_1111 = new Node(Id.createFromLong(0x0FL, 4), "F");
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private LookupShortlist fixture = new LookupShortlist(NODE_0000.getId(), 2, 3);
+
+    @Test
+    public void mustKeepClosestCandidatesWithoutDuplicates() {
+        assertEquals(2, fixture.add(asList(NODE_1111, NODE_0100, NODE_0100)));
+        assertEquals(2, fixture.add(asList(NODE_0001, NODE_1000, NODE_0100, NODE_0010)));
+
+        assertEquals(3, fixture.size());
+        assertEquals(asList(NODE_0001, NODE_0010), fixture.getClosest());
+        assertEquals(LookupState.UNQUERIED, fixture.getState(NODE_0100.getId()));
+        assertNull(fixture.getState(NODE_1000.getId())); // pushed out
+        assertNull(fixture.getState(NODE_1111.getId())); // pushed out
+    }
+
+    @Test
+    public void mustHandOutClosestUnqueriedFirst() {
+        fixture.add(asList(NODE_0100, NODE_0010));
+
+        assertEquals(NODE_0010, fixture.next());
+        fixture.add(asList(NODE_0001));
+        assertEquals(NODE_0001, fixture.next());
+        assertEquals(NODE_0100, fixture.next());
+        assertNull(fixture.next());
+        assertEquals(3, fixture.getInFlightCount());
+        assertEquals(LookupState.IN_FLIGHT, fixture.getState(NODE_0001.getId()));
+    }
+
+    @Test
+    public void mustFinishOnceClosestHaveResponded() {
+        fixture.add(asList(NODE_0001, NODE_0010, NODE_0100));
+        fixture.next();
+        fixture.next();
+        assertFalse(fixture.isFinished());
+
+        assertTrue(fixture.responded(NODE_0010.getId()));
+        assertFalse(fixture.isFinished());
+        assertTrue(fixture.responded(NODE_0001.getId()));
+        assertTrue(fixture.isFinished()); // 0100 is past k, so it doesn't matter that it wasn't queried
+        assertFalse(fixture.responded(NODE_0001.getId())); // not in flight anymore
+        assertEquals(LookupState.RESPONDED, fixture.getState(NODE_0001.getId()));
+
+        fixture.add(asList(NODE_0000)); // closer candidate comes in, so not finished anymore
+        assertFalse(fixture.isFinished());
+    }
+
+    @Test
+    public void mustReplaceFailedCandidatesWithNextClosest() {
+        fixture.add(asList(NODE_0001, NODE_0010, NODE_0100));
+        fixture.next();
+        fixture.next();
+        fixture.responded(NODE_0001.getId());
+
+        assertTrue(fixture.failed(NODE_0010.getId()));
+        assertEquals(LookupState.FAILED, fixture.getState(NODE_0010.getId()));
+        assertEquals(asList(NODE_0001, NODE_0100), fixture.getClosest());
+        assertEquals(0, fixture.getInFlightCount());
+        assertFalse(fixture.isFinished());
+
+        assertEquals(0, fixture.add(asList(NODE_0010))); // failed, so never added back in
+        assertEquals(NODE_0100, fixture.next());
+        fixture.responded(NODE_0100.getId());
+        assertTrue(fixture.isFinished());
+    }
+
+    @Test
+    public void mustBeFinishedWhenEmpty() {
+        assertTrue(fixture.isFinished());
+        assertNull(fixture.next());
+    }
+
+    @Test
+    public void mustFailWhenIdLengthDoesNotMatch() {
+        expectedException.expect(IdLengthMismatchException.class);
+        fixture.add(asList(new Node(Id.createFromLong(0x00L, 5), "x")));
+    }
+
+    @Test
+    public void mustOrderSameAsXorComparator() {
+        Random random = new Random(1L);
+        Id target = Id.createFromLong(0x5A5A5L, 20);
+        LookupShortlist shortlist = new LookupShortlist(target, 8, 20);
+        Set<Id> all = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            List<Node> batch = new ArrayList<>();
+            for (int j = 0; j < 30; j++) {
+                Id id = Id.createFromLong(random.nextInt(1 << 20), 20);
+                batch.add(new Node(id, "link"));
+                all.add(id);
+            }
+            shortlist.add(batch);
+
+            List<Id> expected = new ArrayList<>(all);
+            expected.sort(new IdXorMetricComparator(target));
+            List<Id> actual = new ArrayList<>();
+            shortlist.getClosest().forEach(x -> actual.add(x.getId()));
+            assertEquals(expected.subList(0, 8), actual);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.offbynull.kademlia;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import java.util.HashSet;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedValueStoreTest {
+
+    private static final Id ID_0000 = Id.createFromLong(0x00L, 4);
+    private static final Id ID_0001 = Id.createFromLong(0x01L, 4);
+    private static final Id ID_0010 = Id.createFromLong(0x02L, 4);
+    private static final Id ID_0100 = Id.createFromLong(0x04L, 4);
+    private static final Id ID_1000 = Id.createFromLong(0x08L, 4);
+    private static final Id ID_1111 = Id.createFromLong(0x0FL, 4);
+
+    private static final Instant BASE_TIME = Instant.ofEpochMilli(0L);
+    private static final Duration TTL = Duration.ofMinutes(1L);
+
+    private static final int SEGMENT_SIZE = 64;
+    private static final int RECORD_SIZE = 21 + 1 + 4; // header + 1 byte key + 4 byte value
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+    private MappedValueStore fixture;
+
+    @Before
+    public void before() throws IOException {
+        directory = temporaryFolder.getRoot().toPath();
+        fixture = new MappedValueStore(ID_0000, directory, SEGMENT_SIZE, Long.MAX_VALUE, Duration.ofSeconds(1L));
+    }
+
+    @After
+    public void after() throws IOException {
+        fixture.close();
+    }
+
+    @Test
+    public void mustStoreAndRetrieveValues() {
+        assertTrue(fixture.put(BASE_TIME, ID_0001, new byte[] { 1, 2, 3, 4 }, TTL));
+        assertTrue(fixture.put(BASE_TIME, ID_0010, new byte[] { 5, 6, 7, 8 }, TTL));
+        assertTrue(fixture.put(BASE_TIME, ID_0100, new byte[] { 9, 10, 11, 12 }, TTL)); // rolls over to new segment
+
+        assertArrayEquals(new byte[] { 1, 2, 3, 4 }, fixture.get(ID_0001));
+        assertArrayEquals(new byte[] { 5, 6, 7, 8 }, fixture.get(ID_0010));
+        assertArrayEquals(new byte[] { 9, 10, 11, 12 }, fixture.get(ID_0100));
+        assertEquals(BASE_TIME.plus(TTL), fixture.getExpiration(ID_0100));
+        assertNull(fixture.get(ID_1000));
+        assertEquals(2, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void mustReloadValuesAfterRestart() throws IOException {
+        fixture.put(BASE_TIME, ID_0001, new byte[] { 1, 1, 1, 1 }, TTL);
+        fixture.put(BASE_TIME, ID_0010, new byte[] { 2, 2, 2, 2 }, TTL);
+        fixture.put(BASE_TIME, ID_0100, new byte[] { 3, 3, 3, 3 }, TTL);
+        fixture.put(BASE_TIME, ID_0001, new byte[] { 4, 4, 4, 4 }, TTL); // replaced
+        fixture.remove(ID_0010); // removed
+        fixture.close();
+
+        fixture = new MappedValueStore(ID_0000, directory, SEGMENT_SIZE, Long.MAX_VALUE, Duration.ofSeconds(1L));
+
+        assertEquals(2, fixture.size());
+        assertArrayEquals(new byte[] { 4, 4, 4, 4 }, fixture.get(ID_0001));
+        assertNull(fixture.get(ID_0010));
+        assertArrayEquals(new byte[] { 3, 3, 3, 3 }, fixture.get(ID_0100));
+        assertEquals(asList(ID_0001, ID_0100), fixture.getClosestKeys(ID_0000, 10));
+        assertEquals(RECORD_SIZE * 2L, fixture.getLiveBytes());
+    }
+
+    @Test
+    public void mustExpireReloadedValues() throws IOException {
+        fixture.put(BASE_TIME, ID_0001, new byte[] { 1, 1, 1, 1 }, TTL);
+        fixture.close();
+
+        fixture = new MappedValueStore(ID_0000, directory, SEGMENT_SIZE, Long.MAX_VALUE, Duration.ofSeconds(1L));
+
+        assertEquals(asList(ID_0001), fixture.expire(BASE_TIME.plus(TTL)));
+        assertEquals(0, fixture.size());
+    }
+
+    @Test
+    public void mustIgnorePartiallyWrittenRecordsWhenReloading() throws IOException {
+        fixture.put(BASE_TIME, ID_0001, new byte[] { 1, 1, 1, 1 }, TTL);
+        fixture.put(BASE_TIME, ID_0010, new byte[] { 2, 2, 2, 2 }, TTL);
+        fixture.close();
+
+        File segmentFile = temporaryFolder.getRoot().listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segmentFile, "rw")) {
+            raf.seek(RECORD_SIZE * 2L - 1L); // corrupt last byte of second record
+            raf.write(0xFF);
+        }
+
+        fixture = new MappedValueStore(ID_0000, directory, SEGMENT_SIZE, Long.MAX_VALUE, Duration.ofSeconds(1L));
+
+        assertArrayEquals(new byte[] { 1, 1, 1, 1 }, fixture.get(ID_0001));
+        assertNull(fixture.get(ID_0010));
+
+        assertTrue(fixture.put(BASE_TIME, ID_0100, new byte[] { 3, 3, 3, 3 }, TTL)); // writes over the corrupt record
+        assertArrayEquals(new byte[] { 3, 3, 3, 3 }, fixture.get(ID_0100));
+    }
+
+    @Test
+    public void mustCompactOldestSegmentOnceMostlyGarbage() throws IOException {
+        fixture.put(BASE_TIME, ID_0001, new byte[] { 1, 1, 1, 1 }, TTL);
+        fixture.put(BASE_TIME, ID_0010, new byte[] { 2, 2, 2, 2 }, Duration.ofSeconds(1L));
+        fixture.put(BASE_TIME, ID_0100, new byte[] { 3, 3, 3, 3 }, Duration.ofSeconds(1L)); // new segment
+
+        assertFalse(fixture.compact()); // nothing is garbage yet
+
+        assertEquals(new HashSet<>(asList(ID_0010, ID_0100)), new HashSet<>(fixture.expire(BASE_TIME.plusSeconds(1L))));
+        assertEquals(RECORD_SIZE * 2L, fixture.getGarbageBytes());
+
+        assertTrue(fixture.compact()); // moves ID_0001 from first segment in to second segment
+        assertEquals(1, temporaryFolder.getRoot().list().length);
+        assertEquals(RECORD_SIZE, fixture.getGarbageBytes());
+        assertArrayEquals(new byte[] { 1, 1, 1, 1 }, fixture.get(ID_0001));
+        assertFalse(fixture.compact()); // only 1 segment left
+
+        fixture.close();
+        fixture = new MappedValueStore(ID_0000, directory, SEGMENT_SIZE, Long.MAX_VALUE, Duration.ofSeconds(1L));
+        assertArrayEquals(new byte[] { 1, 1, 1, 1 }, fixture.get(ID_0001));
+        assertEquals(asList(ID_0100), fixture.expire(BASE_TIME.plusSeconds(1L))); // second segment still has the expired 0100 record
+        assertEquals(1, fixture.size());
+    }
+
+    @Test
+    public void mustEvictFurthestValuesWhenFull() throws IOException {
+        fixture.close();
+        fixture = new MappedValueStore(ID_0000, directory, SEGMENT_SIZE, RECORD_SIZE * 2L, Duration.ofSeconds(1L));
+
+        assertTrue(fixture.put(BASE_TIME, ID_1111, new byte[] { 1, 1, 1, 1 }, TTL));
+        assertTrue(fixture.put(BASE_TIME, ID_0100, new byte[] { 2, 2, 2, 2 }, TTL));
+        assertTrue(fixture.put(BASE_TIME, ID_0001, new byte[] { 3, 3, 3, 3 }, TTL)); // evicts 1111
+        assertFalse(fixture.put(BASE_TIME, ID_1000, new byte[] { 4, 4, 4, 4 }, TTL)); // everything is closer
+
+        assertEquals(asList(ID_0001, ID_0100), fixture.getClosestKeys(ID_0000, 10));
+
+        fixture.close();
+        fixture = new MappedValueStore(ID_0000, directory, SEGMENT_SIZE, RECORD_SIZE * 2L, Duration.ofSeconds(1L));
+        assertEquals(asList(ID_0001, ID_0100), fixture.getClosestKeys(ID_0000, 10)); // eviction must have been persisted
+    }
+
+    @Test
+    public void mustRejectValuesLargerThanSegment() {
+        assertFalse(fixture.put(BASE_TIME, ID_0001, new byte[SEGMENT_SIZE], TTL));
+        assertEquals(emptyList(), fixture.getClosestKeys(ID_0000, 10));
+    }
+
+    @Test
+    public void mustFailWhenTimeGoesBackwards() {
+        fixture.expire(BASE_TIME.plusSeconds(1L));
+
+        expectedException.expect(BackwardTimeException.class);
+        fixture.put(BASE_TIME, ID_0001, new byte[0], TTL);
+    }
+}
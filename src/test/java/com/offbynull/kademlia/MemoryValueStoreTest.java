@@ -0,0 +1,146 @@
+package com.offbynull.kademlia;
+
+import java.time.Duration;
+import java.time.Instant;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class MemoryValueStoreTest {
+
+    private static final Id ID_0000 = Id.createFromLong(0x00L, 4);
+    private static final Id ID_0001 = Id.createFromLong(0x01L, 4);
+    private static final Id ID_0010 = Id.createFromLong(0x02L, 4);
+    private static final Id ID_0100 = Id.createFromLong(0x04L, 4);
+    private static final Id ID_0111 = Id.createFromLong(0x07L, 4);
+    private static final Id ID_1000 = Id.createFromLong(0x08L, 4);
+    private static final Id ID_1010 = Id.createFromLong(0x0AL, 4);
+    private static final Id ID_1111 = Id.createFromLong(0x0FL, 4);
+
+    private static final Instant BASE_TIME = Instant.ofEpochMilli(0L);
+    private static final Duration TTL = Duration.ofMinutes(1L);
+
+    private static final long ENTRY_COST = 1L + 1L + 256L; // 1 byte value + 1 byte key + overhead
+
+    private MemoryValueStore fixture = new MemoryValueStore(ID_0000, Long.MAX_VALUE, Duration.ofSeconds(1L));
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void mustStoreAndRetrieveValues() {
+        byte[] value = new byte[] { 1, 2, 3 };
+        assertTrue(fixture.put(BASE_TIME, ID_0001, value, TTL));
+        value[0] = 9; // must have been copied
+
+        assertArrayEquals(new byte[] { 1, 2, 3 }, fixture.get(ID_0001));
+        assertEquals(BASE_TIME.plus(TTL), fixture.getExpiration(ID_0001));
+        assertNull(fixture.get(ID_0010));
+        assertEquals(1, fixture.size());
+    }
+
+    @Test
+    public void mustReplaceExistingValues() {
+        fixture.put(BASE_TIME, ID_0001, new byte[] { 1 }, TTL);
+        fixture.put(BASE_TIME.plusSeconds(30L), ID_0001, new byte[] { 2 }, TTL);
+
+        assertArrayEquals(new byte[] { 2 }, fixture.get(ID_0001));
+        assertEquals(emptyList(), fixture.expire(BASE_TIME.plus(TTL))); // ttl reset by replace
+        assertEquals(asList(ID_0001), fixture.expire(BASE_TIME.plus(TTL).plusSeconds(30L)));
+        assertEquals(0, fixture.size());
+        assertEquals(0L, fixture.getUsedBytes());
+    }
+
+    @Test
+    public void mustExpireValuesInExpirationOrder() {
+        fixture.put(BASE_TIME, ID_0001, new byte[] { 1 }, Duration.ofSeconds(30L));
+        fixture.put(BASE_TIME, ID_0010, new byte[] { 2 }, Duration.ofSeconds(10L));
+        fixture.put(BASE_TIME, ID_0100, new byte[] { 3 }, Duration.ofSeconds(90L));
+
+        assertEquals(asList(ID_0010, ID_0001), fixture.expire(BASE_TIME.plusSeconds(60L)));
+        assertNull(fixture.get(ID_0001));
+        assertNull(fixture.get(ID_0010));
+        assertArrayEquals(new byte[] { 3 }, fixture.get(ID_0100));
+    }
+
+    @Test
+    public void mustRemoveValues() {
+        fixture.put(BASE_TIME, ID_0001, new byte[] { 1 }, TTL);
+
+        assertTrue(fixture.remove(ID_0001));
+        assertFalse(fixture.remove(ID_0001));
+        assertEquals(emptyList(), fixture.expire(BASE_TIME.plus(TTL)));
+        assertEquals(emptyList(), fixture.getClosestKeys(ID_0001, 10));
+    }
+
+    @Test
+    public void mustGetClosestKeysByXorMetric() {
+        fixture.put(BASE_TIME, ID_0001, new byte[0], TTL);
+        fixture.put(BASE_TIME, ID_0010, new byte[0], TTL);
+        fixture.put(BASE_TIME, ID_0100, new byte[0], TTL);
+        fixture.put(BASE_TIME, ID_0111, new byte[0], TTL);
+        fixture.put(BASE_TIME, ID_1000, new byte[0], TTL);
+        fixture.put(BASE_TIME, ID_1010, new byte[0], TTL);
+        fixture.put(BASE_TIME, ID_1111, new byte[0], TTL);
+
+        // distances from 0110: 0001=0111, 0010=0100, 0100=0010, 0111=0001, 1000=1110, 1010=1100, 1111=1001
+        assertEquals(asList(ID_0111, ID_0100, ID_0010, ID_0001, ID_1111, ID_1010, ID_1000),
+                fixture.getClosestKeys(Id.createFromLong(0x06L, 4), 100));
+        assertEquals(asList(ID_1010, ID_1000),
+                fixture.getClosestKeys(ID_1010, 2));
+        assertEquals(emptyList(), fixture.getClosestKeys(ID_1010, 0));
+    }
+
+    @Test
+    public void mustEvictFurthestValuesWhenFull() {
+        fixture = new MemoryValueStore(ID_0000, ENTRY_COST * 2L, Duration.ofSeconds(1L));
+
+        assertTrue(fixture.put(BASE_TIME, ID_1111, new byte[] { 1 }, TTL));
+        assertTrue(fixture.put(BASE_TIME, ID_0100, new byte[] { 2 }, TTL));
+        assertTrue(fixture.put(BASE_TIME, ID_0001, new byte[] { 3 }, TTL)); // evicts 1111
+
+        assertNull(fixture.get(ID_1111));
+        assertEquals(asList(ID_0001, ID_0100), fixture.getClosestKeys(ID_0000, 10));
+        assertEquals(ENTRY_COST * 2L, fixture.getUsedBytes());
+    }
+
+    @Test
+    public void mustRejectValueWhenFullOfCloserValues() {
+        fixture = new MemoryValueStore(ID_0000, ENTRY_COST * 2L, Duration.ofSeconds(1L));
+
+        assertTrue(fixture.put(BASE_TIME, ID_0001, new byte[] { 1 }, TTL));
+        assertTrue(fixture.put(BASE_TIME, ID_0010, new byte[] { 2 }, TTL));
+        assertFalse(fixture.put(BASE_TIME, ID_1000, new byte[] { 3 }, TTL));
+
+        assertEquals(asList(ID_0001, ID_0010), fixture.getClosestKeys(ID_0000, 10));
+    }
+
+    @Test
+    public void mustRejectValueLargerThanStore() {
+        fixture = new MemoryValueStore(ID_0000, ENTRY_COST, Duration.ofSeconds(1L));
+
+        assertFalse(fixture.put(BASE_TIME, ID_0001, new byte[2], TTL));
+        assertEquals(0, fixture.size());
+    }
+
+    @Test
+    public void mustFailOnKeyLengthMismatch() {
+        expectedException.expect(IdLengthMismatchException.class);
+        fixture.put(BASE_TIME, Id.createFromLong(0x00L, 5), new byte[0], TTL);
+    }
+
+    @Test
+    public void mustFailWhenTimeGoesBackwards() {
+        fixture.expire(BASE_TIME.plusSeconds(1L));
+
+        expectedException.expect(BackwardTimeException.class);
+        fixture.put(BASE_TIME, ID_0001, new byte[0], TTL);
+    }
+}
@@ -4,9 +4,7 @@ import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetAdded;
 import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetCounts;
 import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetRemoved;
 import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetUpdated;
-import java.time.Instant;
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNull;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -21,7 +19,7 @@ public class NodeLeastRecentSetTest {
     private static final Node NODE_1100 = new Node(Id.createFromLong(0x1234C000L, 32), "4");
     private static final Node NODE_1111 = new Node(Id.createFromLong(0x1234F000L, 32), "5");
     
-    private static final Instant BASE_TIME = Instant.ofEpochMilli(0L);
+    private static final long BASE_TIME = 0L;
     
     private NodeLeastRecentSet fixture = new NodeLeastRecentSet(BASE_ID, 4); // bucket for prefix of 16 bits, bucket capacity of 4
     
@@ -32,11 +30,11 @@ public class NodeLeastRecentSetTest {
     public void mustInsertNodes() throws Throwable {
         ActivityChangeSet res;
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
         
@@ -49,19 +47,19 @@ public class NodeLeastRecentSetTest {
     public void mustInsertNodesWhenProvidedInBackwardsOrder() throws Throwable {
         ActivityChangeSet res;
 
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(3L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 3L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
         
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
        
@@ -76,23 +74,23 @@ public class NodeLeastRecentSetTest {
     public void mustNotOverrideExistingNodesIfBucketFullAndTimestampUnchanged() throws Throwable {
         ActivityChangeSet res;
 
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 0, 0, 0);
        
         assertEquals(NODE_1100, fixture.dump().get(0).getNode());
@@ -107,23 +105,23 @@ public class NodeLeastRecentSetTest {
     public void mustNotOverrideExistingNodesIfBucketFullAndTimestampLater() throws Throwable {
         ActivityChangeSet res;
 
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 0, 0, 0);
        
         assertEquals(NODE_1100, fixture.dump().get(0).getNode());
@@ -137,23 +135,23 @@ public class NodeLeastRecentSetTest {
     public void mustRejectNodeInsertionIfFullAndInFuture() throws Throwable {
         ActivityChangeSet res;
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(3L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 3L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
         
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(5L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 5L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 0, 0, 0);
         
         assertEquals(NODE_0010, fixture.dump().get(0).getNode());
@@ -175,11 +173,11 @@ public class NodeLeastRecentSetTest {
     public void mustRemoveNode() throws Throwable {
         ActivityChangeSet res;
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
 
@@ -199,19 +197,19 @@ public class NodeLeastRecentSetTest {
     public void mustAllowNodeInsertionIfNodeRemoved() throws Throwable {
         ActivityChangeSet res;
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(3L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 3L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
         
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
 
@@ -219,7 +217,7 @@ public class NodeLeastRecentSetTest {
         verifyActivityChangeSetCounts(res, 0, 1, 0);
         verifyActivityChangeSetRemoved(res, NODE_1100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(5L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 5L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1111);
         
@@ -236,26 +234,26 @@ public class NodeLeastRecentSetTest {
         
         assertEquals(0, fixture.size());
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(3L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 3L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
         
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(5L), NODE_1111, false); // must fail, bucket is full and too far in future
+        res = fixture.touch(BASE_TIME + 5L, NODE_1111, false); // must fail, bucket is full and too far in future
         verifyActivityChangeSetCounts(res, 0, 0, 0);
         
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 0, 0, 1);
         verifyActivityChangeSetUpdated(res, NODE_0010);
 
@@ -272,23 +270,23 @@ public class NodeLeastRecentSetTest {
         
         assertEquals(0, fixture.size());
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(3L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 3L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
         
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
         
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 0, 0, 0);
 
         assertEquals(NODE_0010, fixture.dump().get(0).getNode());
@@ -304,28 +302,28 @@ public class NodeLeastRecentSetTest {
         
         assertEquals(0, fixture.size());
 
-        res = fixture.touch(BASE_TIME.plusMillis(5L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 5L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1111);
         
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(3L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 3L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
 
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 1, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         verifyActivityChangeSetRemoved(res, NODE_1111);
         
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 0, 0, 1);
         verifyActivityChangeSetUpdated(res, NODE_0010);
 
@@ -340,7 +338,7 @@ public class NodeLeastRecentSetTest {
     public void mustRejectRemovesForSameIdButFromDifferentLinks() throws Throwable {
         ActivityChangeSet res;
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1111);
         
@@ -352,42 +350,56 @@ public class NodeLeastRecentSetTest {
     public void mustRejectTouchesForSameIdButFromDifferentLinks() throws Throwable {
         ActivityChangeSet res;
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1111);
         
         expectedException.expect(LinkMismatchException.class);
-        fixture.touch(BASE_TIME.plusMillis(1L), new Node(NODE_1111.getId(), "fakelink"), false);
+        fixture.touch(BASE_TIME + 1L, new Node(NODE_1111.getId(), "fakelink"), false);
     }
     
     @Test
     public void mustAllowTouchesForSameIdButFromDifferentLinks() throws Throwable {
         ActivityChangeSet res;
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1111);
 
         Node node1111WithDifferentLink = new Node(NODE_1111.getId(), "fakelink");
-        res = fixture.touch(BASE_TIME.plusMillis(1L), node1111WithDifferentLink, true);
+        res = fixture.touch(BASE_TIME + 1L, node1111WithDifferentLink, true);
         verifyActivityChangeSetCounts(res, 0, 0, 1);
         verifyActivityChangeSetUpdated(res, node1111WithDifferentLink);
     }
 
     @Test
     public void mustGetLatestActivityTime() throws Throwable {
-        fixture.touch(BASE_TIME.plusMillis(5L), NODE_1111, false);
-        fixture.touch(BASE_TIME.plusMillis(4L), NODE_1100, false);
-        fixture.touch(BASE_TIME.plusMillis(3L), NODE_1000, false);
-        fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
-        fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
-        fixture.touch(BASE_TIME.plusMillis(4L), NODE_0010, false);
-
-        assertEquals(BASE_TIME.plusMillis(4L), fixture.lastestActivityTime());
+        fixture.touch(BASE_TIME + 5L, NODE_1111, false);
+        fixture.touch(BASE_TIME + 4L, NODE_1100, false);
+        fixture.touch(BASE_TIME + 3L, NODE_1000, false);
+        fixture.touch(BASE_TIME + 2L, NODE_0100, false);
+        fixture.touch(BASE_TIME + 1L, NODE_0010, false);
+        fixture.touch(BASE_TIME + 4L, NODE_0010, false);
+
+        assertEquals(BASE_TIME + 4L, fixture.lastestActivityTime());
     }
 
     @Test
-    public void mustGetNullForLatestActivityTimeIfEmpty() throws Throwable {
-        assertNull(fixture.lastestActivityTime());
+    public void mustGetMinForLatestActivityTimeIfEmpty() throws Throwable {
+        assertEquals(Times.MIN, fixture.lastestActivityTime());
+    }
+
+    @Test
+    public void mustOnlyDiscardNodesThatDontFitWhenShrinking() throws Throwable {
+        fixture.touch(BASE_TIME + 1L, NODE_0010, false);
+        fixture.touch(BASE_TIME + 2L, NODE_0100, false);
+
+        ActivityChangeSet res = fixture.resize(3); // still fits
+        verifyActivityChangeSetCounts(res, 0, 0, 0);
+
+        res = fixture.resize(1);
+        verifyActivityChangeSetCounts(res, 0, 1, 0);
+        verifyActivityChangeSetRemoved(res, NODE_0010);
+        assertEquals(1, fixture.size());
     }
 }
@@ -4,9 +4,7 @@ import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetAdded;
 import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetCounts;
 import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetRemoved;
 import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetUpdated;
-import java.time.Instant;
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNull;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -21,7 +19,7 @@ public final class NodeMostRecentSetTest {
     private static final Node NODE_1100 = new Node(Id.createFromLong(0x1234C000L, 32), "4");
     private static final Node NODE_1111 = new Node(Id.createFromLong(0x1234F000L, 32), "5");
     
-    private static final Instant BASE_TIME = Instant.ofEpochMilli(0L);
+    private static final long BASE_TIME = 0L;
     
     private NodeMostRecentSet fixture = new NodeMostRecentSet(BASE_ID, 4); // bucket for prefix of 16 bits, bucket capacity of 4
     
@@ -32,11 +30,11 @@ public final class NodeMostRecentSetTest {
     public void mustInsertNodes() throws Throwable {
         ActivityChangeSet res;
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
         
@@ -49,19 +47,19 @@ public final class NodeMostRecentSetTest {
     public void mustInsertNodesWhenProvidedInBackwardsOrder() throws Throwable {
         ActivityChangeSet res;
 
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(3L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 3L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
         
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
        
@@ -76,23 +74,23 @@ public final class NodeMostRecentSetTest {
     public void mustNotOverrideExistingNodesIfBucketFullAndTimestampUnchanged() throws Throwable {
         ActivityChangeSet res;
 
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 0, 0, 0);    // should this be updated instead of ignored?
                                                      //  unsure... if all nodes being added have the same time, should the nodes added later
                                                      //  be seen as "more recent" than the ones previous? keep as-is for now.
@@ -109,23 +107,23 @@ public final class NodeMostRecentSetTest {
     public void mustNotOverrideExistingNodesIfBucketFullAndTimestampEarlier() throws Throwable {
         ActivityChangeSet res;
 
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(0L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 0L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 0, 0, 0);
        
         assertEquals(NODE_1100, fixture.dump().get(3).getNode());
@@ -140,23 +138,23 @@ public final class NodeMostRecentSetTest {
     public void mustRejectNodeInsertionIfFullAndInPast() throws Throwable {
         ActivityChangeSet res;
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(3L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 3L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
         
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(0L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 0L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 0, 0, 0);
         
         assertEquals(NODE_0010, fixture.dump().get(0).getNode());
@@ -178,11 +176,11 @@ public final class NodeMostRecentSetTest {
     public void mustRemoveNode() throws Throwable {
         ActivityChangeSet res;
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
 
@@ -202,19 +200,19 @@ public final class NodeMostRecentSetTest {
     public void mustAllowNodeInsertionIfNodeRemoved() throws Throwable {
         ActivityChangeSet res;
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(3L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 3L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
         
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
 
@@ -222,7 +220,7 @@ public final class NodeMostRecentSetTest {
         verifyActivityChangeSetCounts(res, 0, 1, 0);
         verifyActivityChangeSetRemoved(res, NODE_1100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(5L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 5L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1111);
         
@@ -239,26 +237,26 @@ public final class NodeMostRecentSetTest {
         
         assertEquals(0, fixture.size());
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(3L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 3L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
         
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(0L), NODE_1111, false); // must fail, bucket is full and too far in past
+        res = fixture.touch(BASE_TIME + 0L, NODE_1111, false); // must fail, bucket is full and too far in past
         verifyActivityChangeSetCounts(res, 0, 0, 0);
         
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 0, 0, 1);
         verifyActivityChangeSetUpdated(res, NODE_0010);
 
@@ -275,23 +273,23 @@ public final class NodeMostRecentSetTest {
         
         assertEquals(0, fixture.size());
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(3L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 3L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
         
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 0, 0, 0);
 
         assertEquals(NODE_0010, fixture.dump().get(0).getNode());
@@ -307,26 +305,26 @@ public final class NodeMostRecentSetTest {
         
         assertEquals(0, fixture.size());
 
-        res = fixture.touch(BASE_TIME.plusMillis(5L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 5L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1111);
         
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_1100, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_1100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1100);
 
-        res = fixture.touch(BASE_TIME.plusMillis(3L), NODE_1000, false);
+        res = fixture.touch(BASE_TIME + 3L, NODE_1000, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1000);
 
-        res = fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
+        res = fixture.touch(BASE_TIME + 2L, NODE_0100, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_0100);
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 0, 0, 0);
         
-        res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_0010, false);
+        res = fixture.touch(BASE_TIME + 4L, NODE_0010, false);
         verifyActivityChangeSetCounts(res, 1, 1, 0);
         verifyActivityChangeSetAdded(res, NODE_0010);
         verifyActivityChangeSetRemoved(res, NODE_0100);
@@ -342,7 +340,7 @@ public final class NodeMostRecentSetTest {
     public void mustRejectRemovesForSameIdButFromDifferentLinks() throws Throwable {
         ActivityChangeSet res;
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1111);
         
@@ -355,42 +353,42 @@ public final class NodeMostRecentSetTest {
     public void mustRejectTouchesForSameIdButFromDifferentLinks() throws Throwable {
         ActivityChangeSet res;
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1111);
         
         expectedException.expect(LinkMismatchException.class);
-        fixture.touch(BASE_TIME.plusMillis(1L), new Node(NODE_1111.getId(), "fakelink"), false);
+        fixture.touch(BASE_TIME + 1L, new Node(NODE_1111.getId(), "fakelink"), false);
     }
 
     @Test
     public void mustAllowTouchesForSameIdButFromDifferentLinks() throws Throwable {
         ActivityChangeSet res;
         
-        res = fixture.touch(BASE_TIME.plusMillis(1L), NODE_1111, false);
+        res = fixture.touch(BASE_TIME + 1L, NODE_1111, false);
         verifyActivityChangeSetCounts(res, 1, 0, 0);
         verifyActivityChangeSetAdded(res, NODE_1111);
 
         Node node1111WithDifferentLink = new Node(NODE_1111.getId(), "fakelink");
-        res = fixture.touch(BASE_TIME.plusMillis(1L), node1111WithDifferentLink, true);
+        res = fixture.touch(BASE_TIME + 1L, node1111WithDifferentLink, true);
         verifyActivityChangeSetCounts(res, 0, 0, 1);
         verifyActivityChangeSetUpdated(res, node1111WithDifferentLink);
     }
 
     @Test
     public void mustGetLatestActivityTime() throws Throwable {
-        fixture.touch(BASE_TIME.plusMillis(5L), NODE_1111, false);
-        fixture.touch(BASE_TIME.plusMillis(4L), NODE_1100, false);
-        fixture.touch(BASE_TIME.plusMillis(3L), NODE_1000, false);
-        fixture.touch(BASE_TIME.plusMillis(2L), NODE_0100, false);
-        fixture.touch(BASE_TIME.plusMillis(1L), NODE_0010, false);
-        fixture.touch(BASE_TIME.plusMillis(4L), NODE_0010, false);
-
-        assertEquals(BASE_TIME.plusMillis(5L), fixture.lastestActivityTime());
+        fixture.touch(BASE_TIME + 5L, NODE_1111, false);
+        fixture.touch(BASE_TIME + 4L, NODE_1100, false);
+        fixture.touch(BASE_TIME + 3L, NODE_1000, false);
+        fixture.touch(BASE_TIME + 2L, NODE_0100, false);
+        fixture.touch(BASE_TIME + 1L, NODE_0010, false);
+        fixture.touch(BASE_TIME + 4L, NODE_0010, false);
+
+        assertEquals(BASE_TIME + 5L, fixture.lastestActivityTime());
     }
 
     @Test
-    public void mustGetNullForLatestActivityTimeIfEmpty() throws Throwable {
-        assertNull(fixture.lastestActivityTime());
+    public void mustGetMinForLatestActivityTimeIfEmpty() throws Throwable {
+        assertEquals(Times.MIN, fixture.lastestActivityTime());
     }
 }
@@ -0,0 +1,53 @@
+package com.offbynull.kademlia;
+
+import java.util.Random;
+import static org.apache.commons.lang3.StringUtils.repeat;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class OffHeapActivityStoreTest {
+
+    private static final Id BASE_ID = Id.create(new byte[20], 160);
+
+    private LinkTable linkTable = new LinkTable();
+    private NodeMostRecentSet expected = new NodeMostRecentSet(BASE_ID, 64);
+    private NodeMostRecentSet fixture = new NodeMostRecentSet(BASE_ID, 64, new OffHeapActivityStore(160, linkTable));
+
+    @Test
+    public void mustBehaveTheSameAsObjectStorage() {
+        Random random = new Random(1L);
+        long time = 0L;
+        for (int i = 0; i < 5000; i++) {
+            int op = random.nextInt(20);
+            if (op == 0) {
+                int count = random.nextInt(4);
+                assertEquals(expected.removeMostRecent(count), fixture.removeMostRecent(count));
+            } else if (op == 1) {
+                int maxSize = 32 + random.nextInt(64);
+                assertEquals(expected.resize(maxSize), fixture.resize(maxSize));
+            } else {
+                Node node = randomNode(random);
+                time += random.nextInt(3); // same time sometimes
+                assertEquals(expected.touch(time, node, true), fixture.touch(time, node, true));
+            }
+            assertEquals(expected.size(), fixture.size());
+            assertEquals(expected.lastestActivityTime(), fixture.lastestActivityTime());
+        }
+        assertEquals(expected.dump(), fixture.dump());
+
+        fixture.resize(0);
+        assertEquals(0, linkTable.size()); // links too large to be held off-heap are released once removed
+    }
+
+    private static Node randomNode(Random random) {
+        int idx = random.nextInt(200);
+        byte[] data = new byte[20];
+        data[0] = (byte) idx; // spread across first and last word
+        data[19] = (byte) (idx >>> 4);
+        Id id = Id.create(data, 160);
+        String link = random.nextBoolean()
+                ? "link" + idx + "_" + random.nextInt(2)
+                : repeat('x', OffHeapActivityStore.MAX_INLINE_LINK_BYTES) + idx; // too large, goes in to link table
+        return new Node(id, link);
+    }
+}
@@ -0,0 +1,130 @@
+package com.offbynull.kademlia;
+
+import static com.offbynull.kademlia.TestUtils.verifyNodes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class PendingRequestTableTest {
+
+    private static final Node NODE_0000 = new Node(Id.createFromLong(0x00L, 4), "0"); // 0000
+    private static final Node NODE_0001 = new Node(Id.createFromLong(0x01L, 4), "1");
+    private static final Node NODE_1000 = new Node(Id.createFromLong(0x08L, 4), "8");
+    private static final Node NODE_1001 = new Node(Id.createFromLong(0x09L, 4), "9");
+    private static final Node NODE_1010 = new Node(Id.createFromLong(0x0AL, 4), "A");
+
+    private static final Instant BASE_TIME = Instant.ofEpochMilli(0L);
+    private static final Duration TIMEOUT = Duration.ofSeconds(5L);
+
+    private Router router = createRouter();
+    private PendingRequestTable<Integer> fixture = new PendingRequestTable<>(router, Duration.ofMillis(100L));
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void mustTimeOutRequestsOnlyOnceDeadlinePasses() {
+        router.touch(BASE_TIME, NODE_1000);
+        fixture.add(BASE_TIME, 1, NODE_1000, TIMEOUT);
+
+        assertTrue(fixture.expire(BASE_TIME.plusMillis(4999L)).viewTimedOut().isEmpty());
+        assertEquals(1, fixture.size());
+
+        Map<Integer, Node> expected = new LinkedHashMap<>();
+        expected.put(1, NODE_1000);
+        assertEquals(expected, fixture.expire(BASE_TIME.plus(TIMEOUT)).viewTimedOut());
+        assertEquals(0, fixture.size());
+    }
+
+    @Test
+    public void mustNotTimeOutRequestsThatWereRespondedTo() {
+        router.touch(BASE_TIME, NODE_1000);
+        fixture.add(BASE_TIME, 1, NODE_1000, TIMEOUT);
+
+        assertEquals(NODE_1000, fixture.respond(1));
+        assertNull(fixture.respond(1));
+
+        PendingRequestTimeouts<Integer> res = fixture.expire(BASE_TIME.plus(TIMEOUT));
+        assertTrue(res.viewTimedOut().isEmpty());
+        assertTrue(res.viewRouterChangeSets().isEmpty());
+        verifyNodes(router.find(NODE_1000.getId(), 1, false), NODE_1000);
+    }
+
+    @Test
+    public void mustReportTimedOutNodeAsUnresponsiveOncePerBatch() {
+        router.touch(BASE_TIME, NODE_1000);
+        fixture.add(BASE_TIME, 1, NODE_1000, TIMEOUT);
+        fixture.add(BASE_TIME, 2, NODE_1000, TIMEOUT);
+        fixture.add(BASE_TIME, 3, NODE_1000, TIMEOUT);
+
+        PendingRequestTimeouts<Integer> res = fixture.expire(BASE_TIME.plus(TIMEOUT));
+        assertEquals(3, res.viewTimedOut().size());
+        assertEquals(1, res.viewRouterChangeSets().size());
+
+        // reported once, so only locked (2 failures are allowed before being marked stale)
+        assertTrue(router.find(NODE_1000.getId(), 1, true).isEmpty());
+        assertEquals(1, router.unlockExpired(BASE_TIME.plus(TIMEOUT).plusSeconds(1L)).size());
+        verifyNodes(router.find(NODE_1000.getId(), 1, false), NODE_1000);
+    }
+
+    @Test
+    public void mustMarkStaleAfterRepeatedTimeouts() {
+        router.touch(BASE_TIME, NODE_1000);
+        router.touch(BASE_TIME, NODE_1001);
+        router.touch(BASE_TIME, NODE_1010); // goes in to replacement cache
+
+        Instant time = BASE_TIME;
+        for (int i = 0; i < 3; i++) {
+            fixture.add(time, i, NODE_1000, TIMEOUT);
+            time = time.plus(TIMEOUT);
+            fixture.expire(time);
+            router.unlockExpired(time);
+        }
+
+        verifyNodes(router.find(NODE_1000.getId(), 2, true), NODE_1001, NODE_1010);
+    }
+
+    @Test
+    public void mustTimeOutRequestsToNodesNotInRouter() {
+        fixture.add(BASE_TIME, 1, NODE_0001, TIMEOUT);
+
+        PendingRequestTimeouts<Integer> res = fixture.expire(BASE_TIME.plus(TIMEOUT));
+        assertEquals(NODE_0001, res.viewTimedOut().get(1));
+        assertTrue(res.viewRouterChangeSets().isEmpty());
+    }
+
+    @Test
+    public void mustFailOnDuplicateTransactionId() {
+        fixture.add(BASE_TIME, 1, NODE_1000, TIMEOUT);
+
+        expectedException.expect(IllegalArgumentException.class);
+        fixture.add(BASE_TIME, 1, NODE_1001, TIMEOUT);
+    }
+
+    @Test
+    public void mustFailOnBaseNode() {
+        expectedException.expect(BaseIdMatchException.class);
+        fixture.add(BASE_TIME, 1, NODE_0000, TIMEOUT);
+    }
+
+    @Test
+    public void mustFailWhenTimeGoesBackwards() {
+        fixture.expire(BASE_TIME.plusSeconds(1L));
+
+        expectedException.expect(BackwardTimeException.class);
+        fixture.add(BASE_TIME, 1, NODE_1000, TIMEOUT);
+    }
+
+    private static Router createRouter() {
+        SimpleRouteTreeStrategy strategy = new SimpleRouteTreeStrategy(NODE_0000.getId(), 2, 2, 2);
+        BackoffParameters backoffParameters = new BackoffParameters(Duration.ofSeconds(1L), Duration.ofSeconds(4L), 2);
+        return new Router(NODE_0000.getId(), strategy, strategy, backoffParameters);
+    }
+}
@@ -0,0 +1,84 @@
+package com.offbynull.kademlia;
+
+import java.time.Duration;
+import java.time.Instant;
+import static java.util.Arrays.asList;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RepublisherTest {
+
+    private static final Node NODE_0000 = new Node(Id.createFromLong(0x00L, 4), "0"); // 0000
+    private static final Node NODE_0001 = new Node(Id.createFromLong(0x01L, 4), "1");
+    private static final Node NODE_1000 = new Node(Id.createFromLong(0x08L, 4), "8");
+    private static final Node NODE_1001 = new Node(Id.createFromLong(0x09L, 4), "9");
+    private static final Node NODE_1100 = new Node(Id.createFromLong(0x0CL, 4), "C");
+
+    private static final Id KEY_0001 = Id.createFromLong(0x01L, 4);
+    private static final Id KEY_0100 = Id.createFromLong(0x04L, 4);
+    private static final Id KEY_1000 = Id.createFromLong(0x08L, 4);
+    private static final Id KEY_1001 = Id.createFromLong(0x09L, 4);
+    private static final Id KEY_1100 = Id.createFromLong(0x0CL, 4);
+
+    private static final Instant BASE_TIME = Instant.ofEpochMilli(0L);
+
+    private Router router = new Router(NODE_0000.getId(), 2, 2, 2);
+    private MemoryValueStore store = new MemoryValueStore(NODE_0000.getId(), Long.MAX_VALUE, Duration.ofSeconds(1L));
+
+    @Before
+    public void before() {
+        for (Id key : asList(KEY_0001, KEY_0100, KEY_1000, KEY_1001, KEY_1100)) {
+            store.put(BASE_TIME, key, new byte[0], Duration.ofHours(1L));
+        }
+    }
+
+    @Test
+    public void mustReplicateOnlyKeysCloserToNewNode() {
+        Republisher fixture = new Republisher(router, store, 1);
+
+        Map<Node, List<Id>> res = fixture.process(router.touch(BASE_TIME, NODE_1100));
+
+        assertEquals(1, res.size());
+        assertEquals(asList(KEY_1000, KEY_1001, KEY_1100), res.get(NODE_1100)); // 0001 and 0100 are closer to us
+    }
+
+    @Test
+    public void mustReplicateOnlyKeysWhereNewNodeIsAmongClosest() {
+        Republisher fixture = new Republisher(router, store, 1);
+
+        fixture.process(router.touch(BASE_TIME, NODE_1100));
+        Map<Node, List<Id>> res = fixture.process(router.touch(BASE_TIME, NODE_1000));
+
+        assertEquals(asList(KEY_1000, KEY_1001), res.get(NODE_1000)); // 1100 is still closest to KEY_1100
+    }
+
+    @Test
+    public void mustReplicateToAllOfClosestWhenReplicationCountAllows() {
+        Republisher fixture = new Republisher(router, store, 2);
+
+        fixture.process(router.touch(BASE_TIME, NODE_1100));
+        Map<Node, List<Id>> res = fixture.process(router.touch(BASE_TIME, NODE_1000));
+
+        assertEquals(asList(KEY_1000, KEY_1001, KEY_1100), res.get(NODE_1000));
+    }
+
+    @Test
+    public void mustReplicateNothingWhenNoNodesAdded() {
+        Republisher fixture = new Republisher(router, store, 1);
+
+        fixture.process(router.touch(BASE_TIME, NODE_1001));
+        assertTrue(fixture.process(router.touch(BASE_TIME.plusSeconds(1L), NODE_1001)).isEmpty()); // already in router, only updated
+    }
+
+    @Test
+    public void mustReplicateNothingWhenNoKeysChangeHands() {
+        store.remove(KEY_0001);
+        Republisher fixture = new Republisher(router, store, 1);
+
+        assertTrue(fixture.process(router.touch(BASE_TIME, NODE_0001)).isEmpty()); // no keys start with 0001
+    }
+}
@@ -5,9 +5,16 @@ import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetCounts;
 import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetRemoved;
 import static com.offbynull.kademlia.TestUtils.verifyNodesInActivities;
 import static com.offbynull.kademlia.TestUtils.verifyPrefixMatches;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
 import static org.junit.Assert.assertEquals;
 import org.junit.Rule;
 import org.junit.Test;
@@ -534,4 +541,357 @@ public final class RouteTreeTest {
         expectedException.expect(IllegalArgumentException.class);
         fixture.stale(NODE_0000);
     }
+
+    @Test
+    public void mustBulkLoadSameAsTouchingInTimeOrder() throws Throwable {
+        Map<Node, Instant> nodes = new HashMap<>();
+        nodes.put(NODE_1111, BASE_TIME.plusMillis(3L));
+        nodes.put(NODE_0001, BASE_TIME.plusMillis(7L));
+        nodes.put(NODE_1000, BASE_TIME.plusMillis(1L));
+        nodes.put(NODE_0100, BASE_TIME.plusMillis(6L));
+        nodes.put(NODE_1010, BASE_TIME.plusMillis(4L));
+        nodes.put(NODE_0011, BASE_TIME.plusMillis(5L));
+        nodes.put(NODE_1100, BASE_TIME.plusMillis(2L));
+        
+        SimpleRouteTreeStrategy specSupplier = new SimpleRouteTreeStrategy(NODE_0000.getId(), 2, 2, 2);
+        RouteTree touched = new RouteTree(NODE_0000.getId(), specSupplier, specSupplier);
+        touched.touch(BASE_TIME.plusMillis(1L), NODE_1000);
+        touched.touch(BASE_TIME.plusMillis(2L), NODE_1100);
+        touched.touch(BASE_TIME.plusMillis(3L), NODE_1111); // goes in to cache
+        touched.touch(BASE_TIME.plusMillis(4L), NODE_1010); // goes in to cache
+        touched.touch(BASE_TIME.plusMillis(5L), NODE_0011);
+        touched.touch(BASE_TIME.plusMillis(6L), NODE_0100);
+        touched.touch(BASE_TIME.plusMillis(7L), NODE_0001);
+
+        List<RouteTreeChangeSet> res = fixture.load(nodes);
+        assertEquals(4, res.size());
+        
+        for (BitString prefix : fixture.dumpBucketPrefixes()) {
+            if (prefix.getBitLength() == 4) { // bucket for base id, not accessible
+                continue;
+            }
+            assertEquals(touched.dumpBucket(prefix), fixture.dumpBucket(prefix));
+        }
+        assertEquals(touched.find(NODE_0000.getId(), 100, true), fixture.find(NODE_0000.getId(), 100, true));
+        
+        // cache must be the same as well -- once the bucket nodes go stale, the same cache nodes must replace them
+        touched.stale(NODE_1000);
+        touched.stale(NODE_1100);
+        fixture.stale(NODE_1000);
+        fixture.stale(NODE_1100);
+        verifyNodesInActivities(fixture.dumpBucket(BitString.createFromString("1")), NODE_1111, NODE_1010);
+        assertEquals(touched.dumpBucket(BitString.createFromString("1")), fixture.dumpBucket(BitString.createFromString("1")));
+    }
+
+    @Test
+    public void mustFailToBulkLoadDuplicateIds() throws Throwable {
+        Map<Node, Instant> nodes = new HashMap<>();
+        nodes.put(NODE_1000, BASE_TIME);
+        nodes.put(new Node(NODE_1000.getId(), "other"), BASE_TIME);
+
+        expectedException.expect(IllegalArgumentException.class);
+        fixture.load(nodes);
+    }
+
+    @Test
+    public void mustExposeAllBucketPrefixesBeforeAnythingIsTouched() throws Throwable {
+        List<BitString> prefixes = fixture.dumpBucketPrefixes();
+        assertEquals(Arrays.asList(
+                BitString.createFromString("0000"),
+                BitString.createFromString("0001"),
+                BitString.createFromString("001"),
+                BitString.createFromString("01"),
+                BitString.createFromString("1")),
+                prefixes);
+        assertEquals(4, fixture.getStagnantBuckets(BASE_TIME).size()); // everything but the bucket for self
+        assertEquals(0, fixture.find(NODE_1111.getId(), 100, true).size());
+    }
+
+    @Test
+    public void mustFailToStaleNodeInUntouchedBucket() throws Throwable {
+        fixture.touch(BASE_TIME, NODE_0001); // other bucket materialized, 1xxx bucket is not
+
+        expectedException.expect(NodeNotFoundException.class);
+        fixture.stale(NODE_1000);
+    }
+
+    @Test
+    public void mustSplitOnlyFullBucketsCoveringSelfInDynamicMode() throws Throwable {
+        SimpleRouteTreeStrategy specSupplier = new SimpleRouteTreeStrategy(NODE_0000.getId(), 2, 2, 2);
+        fixture = RouteTree.createDynamic(NODE_0000.getId(), specSupplier, specSupplier, 0);
+        verifyPrefixes(fixture.dumpBucketPrefixes(), "0", "1");
+
+        fixture.touch(BASE_TIME.plusMillis(1L), NODE_1000);
+        fixture.touch(BASE_TIME.plusMillis(2L), NODE_1001);
+        RouteTreeChangeSet res = fixture.touch(BASE_TIME.plusMillis(3L), NODE_1010); // 1 doesn't cover self, goes in to cache
+        verifyPrefixMatches(res.getKBucketPrefix(), "1");
+        verifyActivityChangeSetAdded(res.getKBucketChangeSet().getCacheChangeSet(), NODE_1010);
+        verifyPrefixes(fixture.dumpBucketPrefixes(), "0", "1");
+
+        fixture.touch(BASE_TIME.plusMillis(4L), NODE_0100);
+        fixture.touch(BASE_TIME.plusMillis(5L), NODE_0101);
+        res = fixture.touch(BASE_TIME.plusMillis(6L), NODE_0001); // 0 covers self, splits
+        verifyPrefixMatches(res.getKBucketPrefix(), "00");
+        verifyActivityChangeSetAdded(res.getKBucketChangeSet().getBucketChangeSet(), NODE_0001);
+        verifyPrefixes(fixture.dumpBucketPrefixes(), "00", "01", "1");
+        verifyNodesInActivities(fixture.dumpBucket(BitString.createFromString("01")), NODE_0100, NODE_0101);
+
+        res = fixture.touch(BASE_TIME.plusMillis(7L), NODE_0110); // 01 doesn't cover self, goes in to cache
+        verifyActivityChangeSetAdded(res.getKBucketChangeSet().getCacheChangeSet(), NODE_0110);
+        verifyPrefixes(fixture.dumpBucketPrefixes(), "00", "01", "1");
+
+        assertEquals(Arrays.asList(NODE_0001, NODE_0100, NODE_0101, NODE_1000, NODE_1001),
+                fixture.find(NODE_0000.getId(), 100, false).stream().map(x -> x.getNode()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void mustSplitUnbalancedRegionsUpToRelaxedDepthInDynamicMode() throws Throwable {
+        SimpleRouteTreeStrategy specSupplier = new SimpleRouteTreeStrategy(NODE_0000.getId(), 2, 2, 2);
+        fixture = RouteTree.createDynamic(NODE_0000.getId(), specSupplier, specSupplier, 2);
+
+        fixture.touch(BASE_TIME.plusMillis(1L), NODE_1000);
+        fixture.touch(BASE_TIME.plusMillis(2L), NODE_1001);
+        fixture.touch(BASE_TIME.plusMillis(3L), NODE_1100); // 1 isn't at a multiple of 2 bits, splits
+        verifyPrefixes(fixture.dumpBucketPrefixes(), "0", "10", "11");
+
+        RouteTreeChangeSet res = fixture.touch(BASE_TIME.plusMillis(4L), NODE_1010); // 10 is at a multiple of 2 bits, goes in to cache
+        verifyPrefixMatches(res.getKBucketPrefix(), "10");
+        verifyActivityChangeSetAdded(res.getKBucketChangeSet().getCacheChangeSet(), NODE_1010);
+        verifyPrefixes(fixture.dumpBucketPrefixes(), "0", "10", "11");
+    }
+
+    private static void verifyPrefixes(List<BitString> actual, String ... expected) {
+        assertEquals(Arrays.stream(expected).map(x -> BitString.createFromString(x)).collect(Collectors.toList()), actual);
+    }
+
+    @Test
+    public void mustFindAllSameAsFindingEachIndividually() throws Throwable {
+        for (int branches : new int[] { 2, 4 }) {
+            SimpleRouteTreeStrategy specSupplier = new SimpleRouteTreeStrategy(NODE_0000.getId(), branches, 2, 2);
+            fixture = new RouteTree(NODE_0000.getId(), specSupplier, specSupplier);
+            verifyFindAllSameAsFind();
+
+            fixture = RouteTree.createDynamic(NODE_0000.getId(), specSupplier, specSupplier, 0);
+            verifyFindAllSameAsFind();
+        }
+    }
+
+    @Test
+    public void mustRefreshCachedFindWhenReadBucketChanges() throws Throwable {
+        fixture.touch(BASE_TIME.plusMillis(1L), NODE_0100);
+        fixture.touch(BASE_TIME.plusMillis(2L), NODE_1000);
+        verifyNodesInActivities(fixture.find(NODE_0111.getId(), 2, false), NODE_0100, NODE_1000);
+
+        fixture.touch(BASE_TIME.plusMillis(3L), NODE_0101); // same bucket as 0100, read by the find above
+        verifyNodesInActivities(fixture.find(NODE_0111.getId(), 2, false), NODE_0101, NODE_0100);
+
+        fixture.stale(NODE_0101);
+        verifyNodesInActivities(fixture.find(NODE_0111.getId(), 2, false), NODE_0100, NODE_1000);
+    }
+
+    @Test
+    public void mustRefreshCachedFindWhenBucketMaterialized() throws Throwable {
+        fixture.touch(BASE_TIME.plusMillis(1L), NODE_1000);
+        verifyNodesInActivities(fixture.find(NODE_0111.getId(), 1, false), NODE_1000);
+
+        fixture.touch(BASE_TIME.plusMillis(2L), NODE_0110); // bucket 01 didn't exist when the find above ran
+        verifyNodesInActivities(fixture.find(NODE_0111.getId(), 1, false), NODE_0110);
+    }
+
+    @Test
+    public void mustNotShareCachedFindResultWithCaller() throws Throwable {
+        fixture.touch(BASE_TIME.plusMillis(1L), NODE_0100);
+        fixture.touch(BASE_TIME.plusMillis(2L), NODE_1000);
+
+        fixture.find(NODE_0111.getId(), 2, false).clear();
+        verifyNodesInActivities(fixture.find(NODE_0111.getId(), 2, false), NODE_0100, NODE_1000);
+    }
+
+    @Test
+    public void mustTrackNodesInIndex() throws Throwable {
+        fixture.touch(BASE_TIME.plusMillis(1L), NODE_1000);
+        fixture.touch(BASE_TIME.plusMillis(2L), NODE_1001);
+        fixture.touch(BASE_TIME.plusMillis(3L), NODE_1010); // goes in to cache
+
+        assertEquals(NodeState.ACTIVE, fixture.getState(NODE_1000.getId()));
+        assertEquals(NodeState.CACHED, fixture.getState(NODE_1010.getId()));
+        assertEquals(null, fixture.getState(NODE_1111.getId()));
+        assertEquals(false, fixture.contains(NODE_1111.getId()));
+        assertEquals(NODE_1001, fixture.get(NODE_1001.getId()).getNode());
+        assertEquals(BASE_TIME.plusMillis(2L), fixture.get(NODE_1001.getId()).getTime());
+
+        fixture.touch(BASE_TIME.plusMillis(4L), NODE_1001);
+        assertEquals(BASE_TIME.plusMillis(4L), fixture.get(NODE_1001.getId()).getTime());
+
+        fixture.stale(NODE_1000); // replaced by 1010 from cache
+        assertEquals(false, fixture.contains(NODE_1000.getId()));
+        assertEquals(NodeState.ACTIVE, fixture.getState(NODE_1010.getId()));
+
+        fixture.stale(NODE_1001); // cache empty, stays in bucket
+        assertEquals(NodeState.STALE, fixture.getState(NODE_1001.getId()));
+
+        fixture.lock(NODE_1010);
+        assertEquals(NodeState.LOCKED, fixture.getState(NODE_1010.getId()));
+    }
+
+    @Test
+    public void mustKeepIndexConsistentAcrossSplits() throws Throwable {
+        SimpleRouteTreeStrategy specSupplier = new SimpleRouteTreeStrategy(NODE_0000.getId(), 2, 2, 2);
+        fixture = RouteTree.createDynamic(NODE_0000.getId(), specSupplier, specSupplier, 0);
+
+        Node[] nodes = new Node[] { NODE_1000, NODE_1001, NODE_1010, NODE_0100, NODE_0101, NODE_0110, NODE_0001, NODE_0010, NODE_0011 };
+        for (int i = 0; i < nodes.length; i++) {
+            fixture.touch(BASE_TIME.plusMillis(i), nodes[i]);
+            verifyIndexMatchesDump();
+        }
+        fixture.touch(BASE_TIME.plusMillis(100L), NODE_1001); // known node, goes straight to its k-bucket
+        verifyIndexMatchesDump();
+    }
+
+    @Test
+    public void mustBehaveTheSameWithPackedStorage() throws Throwable {
+        SimpleRouteTreeStrategy specSupplier = new SimpleRouteTreeStrategy(NODE_0000.getId(), 2, 2, 2);
+        RouteTree expected = RouteTree.createDynamic(NODE_0000.getId(), specSupplier, specSupplier, 0);
+        fixture = RouteTree.createDynamic(NODE_0000.getId(), specSupplier, prefix -> new KBucketParameters(2, 2, true), 0);
+
+        Node[] nodes = new Node[] { NODE_1000, NODE_1001, NODE_1010, NODE_0100, NODE_0101, NODE_0110, NODE_0001, NODE_0010, NODE_0011 };
+        for (int i = 0; i < nodes.length; i++) {
+            assertEquals(expected.touch(BASE_TIME.plusMillis(i), nodes[i]), fixture.touch(BASE_TIME.plusMillis(i), nodes[i]));
+            verifyIndexMatchesDump();
+        }
+        assertEquals(expected.stale(NODE_0100), fixture.stale(NODE_0100));
+
+        for (int i = 0; i < 16; i++) {
+            Id id = Id.createFromLong(i, 4);
+            assertEquals(expected.find(id, 16, true), fixture.find(id, 16, true));
+            assertEquals(expected.get(id), fixture.get(id));
+            assertEquals(expected.getState(id), fixture.getState(id));
+        }
+    }
+
+    @Test
+    public void mustBehaveTheSameWithTouchCoalescing() throws Throwable {
+        SimpleRouteTreeStrategy specSupplier = new SimpleRouteTreeStrategy(NODE_0000.getId(), 2, 2, 2);
+        RouteTree expected = RouteTree.createDynamic(NODE_0000.getId(), specSupplier, specSupplier, 0);
+        fixture = RouteTree.createDynamic(NODE_0000.getId(), specSupplier, specSupplier, 0);
+        fixture.setTouchCoalescing(Duration.ofMillis(10L));
+
+        Random random = new Random(1L);
+        for (int i = 0; i < 2000; i++) {
+            Instant time = BASE_TIME.plusMillis(i);
+            Node node = new Node(Id.createFromLong(1 + random.nextInt(15), 4), "link");
+            if (random.nextInt(20) == 0 && expected.getState(node.getId()) == NodeState.ACTIVE) {
+                assertEquals(expected.stale(node), fixture.stale(node));
+            } else {
+                assertEquals(expected.touch(time, node), fixture.touch(time, node));
+            }
+
+            if (random.nextInt(10) == 0) {
+                Id id = Id.createFromLong(random.nextInt(16), 4);
+                assertEquals(expected.find(id, 16, true), fixture.find(id, 16, true));
+                assertEquals(expected.getStagnantBuckets(time.minusMillis(5L)), fixture.getStagnantBuckets(time.minusMillis(5L)));
+            }
+        }
+
+        for (int i = 0; i < 16; i++) {
+            Id id = Id.createFromLong(i, 4);
+            assertEquals(expected.find(id, 16, true), fixture.find(id, 16, true));
+            assertEquals(expected.get(id), fixture.get(id));
+            assertEquals(expected.getState(id), fixture.getState(id));
+        }
+    }
+
+    @Test
+    public void mustAcceptLateTouchesWithinTolerance() throws Throwable {
+        fixture.setTouchTolerance(Duration.ofMillis(5L));
+        RouteTreeChangeSet res;
+
+        fixture.touch(BASE_TIME.plusMillis(10L), NODE_1000);
+        fixture.touch(BASE_TIME.plusMillis(20L), NODE_1001);
+        res = fixture.touch(BASE_TIME.plusMillis(15L), NODE_1010); // late and k-bucket full, goes to cache rather than pushing out 1001
+        verifyActivityChangeSetCounts(res.getKBucketChangeSet().getBucketChangeSet(), 0, 0, 0);
+        verifyActivityChangeSetAdded(res.getKBucketChangeSet().getCacheChangeSet(), NODE_1010);
+
+        fixture.touch(BASE_TIME.plusMillis(22L), NODE_0100);
+        res = fixture.touch(BASE_TIME.plusMillis(18L), NODE_0101); // late, goes in before 0100 (k-bucket created after tolerance set)
+        verifyPrefixMatches(res.getKBucketPrefix(), "01");
+        verifyActivityChangeSetAdded(res.getKBucketChangeSet().getBucketChangeSet(), NODE_0101);
+
+        verifyNodesInActivities(fixture.dumpBucket(BitString.createFromString("1")), NODE_1000, NODE_1001);
+        verifyNodesInActivities(fixture.dumpBucket(BitString.createFromString("01")), NODE_0101, NODE_0100);
+
+        expectedException.expect(BackwardTimeException.class);
+        fixture.touch(BASE_TIME.plusMillis(16L), NODE_0110);
+    }
+
+    @Test
+    public void mustBehaveTheSameWithTouchCoalescingWhenTouchesAreLate() throws Throwable {
+        SimpleRouteTreeStrategy specSupplier = new SimpleRouteTreeStrategy(NODE_0000.getId(), 2, 2, 2);
+        RouteTree expected = RouteTree.createDynamic(NODE_0000.getId(), specSupplier, specSupplier, 0);
+        expected.setTouchTolerance(Duration.ofMillis(10L));
+        fixture = RouteTree.createDynamic(NODE_0000.getId(), specSupplier, specSupplier, 0);
+        fixture.setTouchTolerance(Duration.ofMillis(10L));
+        fixture.setTouchCoalescing(Duration.ofMillis(10L));
+
+        // times are unique, but shuffled around within small windows so that some come in late
+        Random random = new Random(1L);
+        List<Long> times = new ArrayList<>();
+        for (long i = 0; i < 2000L; i++) {
+            times.add(i);
+        }
+        for (int i = 0; i < times.size(); i += 5) {
+            Collections.shuffle(times.subList(i, i + 5), random);
+        }
+
+        for (long timeOffset : times) {
+            Instant time = BASE_TIME.plusMillis(timeOffset);
+            Node node = new Node(Id.createFromLong(1 + random.nextInt(15), 4), "link");
+            assertEquals(expected.touch(time, node), fixture.touch(time, node));
+
+            if (random.nextInt(10) == 0) {
+                Id id = Id.createFromLong(random.nextInt(16), 4);
+                assertEquals(expected.find(id, 16, true), fixture.find(id, 16, true));
+            }
+        }
+
+        for (int i = 0; i < 16; i++) {
+            Id id = Id.createFromLong(i, 4);
+            assertEquals(expected.find(id, 16, true), fixture.find(id, 16, true));
+            assertEquals(expected.get(id), fixture.get(id));
+        }
+    }
+
+    private void verifyIndexMatchesDump() {
+        List<Node> dumped = fixture.dumpNodes();
+        for (int i = 1; i < 16; i++) {
+            Id id = Id.createFromLong(i, 4);
+            Node expected = dumped.stream().filter(x -> x.getId().equals(id)).findAny().orElse(null);
+            assertEquals(expected != null, fixture.contains(id));
+            assertEquals(expected, expected == null ? null : fixture.get(id).getNode());
+        }
+    }
+
+    private void verifyFindAllSameAsFind() {
+        Node[] nodes = new Node[] { NODE_0001, NODE_0010, NODE_0011, NODE_0100, NODE_0111, NODE_1000, NODE_1011, NODE_1100, NODE_1110 };
+        for (int i = 0; i < nodes.length; i++) {
+            fixture.touch(BASE_TIME.plusMillis(i), nodes[i]);
+        }
+        fixture.stale(NODE_0010);
+
+        List<Id> ids = new ArrayList<>();
+        for (int i = 15; i >= 0; i--) { // out of order, with repeats
+            ids.add(Id.createFromLong(i, 4));
+            ids.add(Id.createFromLong(i ^ 0x05, 4));
+        }
+
+        for (int max = 0; max <= 10; max++) {
+            for (boolean includeStale : new boolean[] { true, false }) {
+                List<List<Activity>> res = fixture.findAll(ids, max, includeStale);
+                assertEquals(ids.size(), res.size());
+                for (int i = 0; i < ids.size(); i++) {
+                    assertEquals(fixture.find(ids.get(i), max, includeStale), res.get(i));
+                }
+            }
+        }
+    }
 }
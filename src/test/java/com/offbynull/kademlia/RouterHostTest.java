@@ -0,0 +1,99 @@
+package com.offbynull.kademlia;
+
+import static com.offbynull.kademlia.TestUtils.verifyNodes;
+import java.time.Instant;
+import static java.util.Arrays.asList;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class RouterHostTest {
+
+    private static final Node NODE_0000 = new Node(Id.createFromLong(0x00L, 4), "0"); // 0000
+    private static final Node NODE_0001 = new Node(Id.createFromLong(0x01L, 4), "1");
+    private static final Node NODE_0111 = new Node(Id.createFromLong(0x07L, 4), "7");
+    private static final Node NODE_1000 = new Node(Id.createFromLong(0x08L, 4), "8");
+    private static final Node NODE_1001 = new Node(Id.createFromLong(0x09L, 4), "9");
+    private static final Node NODE_1111 = new Node(Id.createFromLong(0x0FL, 4), "F");
+
+    private static final Instant BASE_TIME = Instant.ofEpochMilli(0L);
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private RouterHost fixture = new RouterHost(2, 1, 1);
+
+    public RouterHostTest() {
+        fixture.addIdentity(NODE_0000.getId());
+        fixture.addIdentity(NODE_1111.getId());
+    }
+
+    @Test
+    public void mustFanOutTouchesToAllIdentitiesWithSharedNode() throws Throwable {
+        Map<Id, RouterChangeSet> res = fixture.touch(BASE_TIME, NODE_0111);
+        assertEquals(asList(NODE_0000.getId(), NODE_1111.getId()), asList(res.keySet().toArray()));
+
+        Node copy = new Node(NODE_0111.getId(), NODE_0111.getLink());
+        fixture.touch(BASE_TIME.plusMillis(1L), copy); // same id and link, but different object
+
+        Node nodeFrom0000 = fixture.find(NODE_0000.getId(), NODE_0111.getId(), 1, true).get(0);
+        Node nodeFrom1111 = fixture.find(NODE_1111.getId(), NODE_0111.getId(), 1, true).get(0);
+        assertSame(NODE_0111, nodeFrom0000);
+        assertSame(NODE_0111, nodeFrom1111);
+        assertEquals(1, fixture.getPoolSize());
+    }
+
+    @Test
+    public void mustNotTouchIdentityWithItself() throws Throwable {
+        Map<Id, RouterChangeSet> res = fixture.touch(BASE_TIME, NODE_1111);
+
+        assertEquals(asList(NODE_0000.getId()), asList(res.keySet().toArray()));
+        verifyNodes(fixture.find(NODE_1111.getId(), NODE_1111.getId(), 10, true));
+        verifyNodes(fixture.find(NODE_0000.getId(), NODE_1111.getId(), 10, true), NODE_1111);
+    }
+
+    @Test
+    public void mustDropNodesFromPoolOnceNoRouterHoldsThem() throws Throwable {
+        fixture.touch(BASE_TIME, NODE_1000); // bucket of 1xxx for 0000 and bucket of 10xx for 1111
+        fixture.touch(BASE_TIME.plusMillis(1L), NODE_1001); // cache of 1xxx for 0000 and cache of 10xx for 1111
+        assertEquals(2, fixture.getPoolSize());
+
+        fixture.stale(NODE_1000); // replaced by cache node in both
+        verifyNodes(fixture.find(NODE_0000.getId(), NODE_1000.getId(), 10, true), NODE_1001);
+        verifyNodes(fixture.find(NODE_1111.getId(), NODE_1000.getId(), 10, true), NODE_1001);
+        assertEquals(1, fixture.getPoolSize());
+
+        fixture.touch(BASE_TIME.plusMillis(2L), NODE_0111);
+        assertEquals(2, fixture.getPoolSize());
+
+        fixture.removeIdentity(NODE_0000.getId());
+        assertEquals(2, fixture.getPoolSize()); // still held by 1111
+        fixture.removeIdentity(NODE_1111.getId());
+        assertEquals(0, fixture.getPoolSize());
+    }
+
+    @Test
+    public void mustRejectLinkMismatchBeforeTouchingAnyRouter() throws Throwable {
+        fixture.touch(BASE_TIME, NODE_0001);
+
+        expectedException.expect(LinkMismatchException.class);
+        fixture.touch(BASE_TIME.plusMillis(1L), new Node(NODE_0001.getId(), "different"));
+    }
+
+    @Test
+    public void mustFailStaleOnUnknownNode() throws Throwable {
+        expectedException.expect(NodeNotFoundException.class);
+        fixture.stale(NODE_0001);
+    }
+
+    @Test
+    public void mustFailWhenTimeGoesBackwards() throws Throwable {
+        fixture.touch(BASE_TIME.plusMillis(1L), NODE_0001);
+
+        expectedException.expect(BackwardTimeException.class);
+        fixture.touch(BASE_TIME, NODE_1000);
+    }
+}
@@ -1,8 +1,18 @@
 package com.offbynull.kademlia;
 
+import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetAdded;
+import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetRemoved;
+import static com.offbynull.kademlia.TestUtils.verifyActivityChangeSetUpdated;
 import static com.offbynull.kademlia.TestUtils.verifyNodes;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.Assert.assertEquals;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -118,4 +128,305 @@ public class RouterTest {
         ret = fixture.find(NODE_1001.getId(), 100, false);
         verifyNodes(ret, node1001WithDifferentLink, NODE_1010); // 1001 and 1010 in kbucket
     }
+
+    @Test
+    public void mustLockUnresponsiveNodeRatherThanMarkingStale() throws Throwable {
+        Router router = createBackoffRouter();
+        router.touch(BASE_TIME.plusMillis(1L), NODE_1000);
+        router.touch(BASE_TIME.plusMillis(2L), NODE_1001);
+        router.touch(BASE_TIME.plusMillis(3L), NODE_1010); // goes in to cache
+
+        RouterChangeSet res = router.unresponsive(BASE_TIME.plusMillis(4L), NODE_1000);
+        assertEquals(0, res.getRouteTreeChangeSet().getKBucketChangeSet().getBucketChangeSet().viewRemoved().size());
+
+        // locked, so not findable -- but not evicted either, even though cache has a replacement available
+        verifyNodes(router.find(NODE_1000.getId(), 100, true), NODE_1001);
+    }
+
+    @Test
+    public void mustGetKnownNodesAndTheirStates() throws Throwable {
+        Router router = createBackoffRouter();
+        router.touch(BASE_TIME.plusMillis(1L), NODE_1000);
+        router.touch(BASE_TIME.plusMillis(2L), NODE_1001);
+        router.touch(BASE_TIME.plusMillis(3L), NODE_1010); // goes in to cache
+        router.unresponsive(BASE_TIME.plusMillis(4L), NODE_1000);
+
+        assertEquals(NODE_1000, router.get(NODE_1000.getId()));
+        assertEquals(NodeState.LOCKED, router.getState(NODE_1000.getId()));
+        assertEquals(NodeState.ACTIVE, router.getState(NODE_1001.getId()));
+        assertEquals(NodeState.CACHED, router.getState(NODE_1010.getId()));
+        assertEquals(false, router.contains(NODE_1111.getId()));
+        assertEquals(null, router.get(NODE_1111.getId()));
+    }
+
+    @Test
+    public void mustUnlockUnresponsiveNodeOnceBackoffExpires() throws Throwable {
+        Router router = createBackoffRouter();
+        router.touch(BASE_TIME, NODE_1000);
+        router.touch(BASE_TIME, NODE_1001);
+
+        router.unresponsive(BASE_TIME, NODE_1000); // 1st failure, locked for 1 second
+        verifyNodes(router.unlockExpired(BASE_TIME.plusMillis(999L)));
+        verifyNodes(router.unlockExpired(BASE_TIME.plusMillis(1000L)), NODE_1000);
+        verifyNodes(router.find(NODE_1000.getId(), 100, false), NODE_1000, NODE_1001);
+    }
+
+    @Test
+    public void mustExponentiallyIncreaseBackoffInterval() throws Throwable {
+        Router router = createBackoffRouter();
+        router.touch(BASE_TIME, NODE_1000);
+
+        router.unresponsive(BASE_TIME, NODE_1000); // 1st failure, locked for 1 second
+        verifyNodes(router.unlockExpired(BASE_TIME.plusMillis(1000L)), NODE_1000);
+
+        router.unresponsive(BASE_TIME.plusMillis(1000L), NODE_1000); // 2nd failure, locked for 2 seconds
+        verifyNodes(router.unlockExpired(BASE_TIME.plusMillis(2999L)));
+        verifyNodes(router.unlockExpired(BASE_TIME.plusMillis(3000L)), NODE_1000);
+    }
+
+    @Test
+    public void mustNotUnlockWhenLockedNodeTouched() throws Throwable {
+        Router router = createBackoffRouter();
+        router.touch(BASE_TIME, NODE_1000);
+
+        router.unresponsive(BASE_TIME, NODE_1000);
+        router.touch(BASE_TIME.plusMillis(500L), NODE_1000);
+        verifyNodes(router.find(NODE_1000.getId(), 100, false));
+    }
+
+    @Test
+    public void mustResetBackoffWhenUnlockedNodeTouched() throws Throwable {
+        Router router = createBackoffRouter();
+        router.touch(BASE_TIME, NODE_1000);
+
+        router.unresponsive(BASE_TIME, NODE_1000); // 1st failure, locked for 1 second
+        router.unlockExpired(BASE_TIME.plusMillis(1000L));
+        router.touch(BASE_TIME.plusMillis(1000L), NODE_1000); // responded, resets counter
+
+        router.unresponsive(BASE_TIME.plusMillis(1000L), NODE_1000); // 1st failure again, locked for 1 second
+        verifyNodes(router.unlockExpired(BASE_TIME.plusMillis(2000L)), NODE_1000);
+    }
+
+    @Test
+    public void mustMarkStaleOnceUnresponsiveTooManyTimes() throws Throwable {
+        Router router = createBackoffRouter();
+        router.touch(BASE_TIME.plusMillis(1L), NODE_1000);
+        router.touch(BASE_TIME.plusMillis(2L), NODE_1001);
+        router.touch(BASE_TIME.plusMillis(3L), NODE_1010); // goes in to cache
+
+        router.unresponsive(BASE_TIME.plusMillis(3L), NODE_1000); // 1st failure, locked
+        router.unresponsive(BASE_TIME.plusMillis(3L), NODE_1000); // 2nd failure, locked
+        RouterChangeSet res = router.unresponsive(BASE_TIME.plusMillis(3L), NODE_1000); // 3rd failure, stale and replaced by cache node
+        TestUtils.verifyActivityChangeSetRemoved(res.getRouteTreeChangeSet().getKBucketChangeSet().getBucketChangeSet(), NODE_1000);
+        TestUtils.verifyActivityChangeSetAdded(res.getRouteTreeChangeSet().getKBucketChangeSet().getBucketChangeSet(), NODE_1010);
+
+        verifyNodes(router.find(NODE_1000.getId(), 100, true), NODE_1001, NODE_1010);
+        verifyNodes(router.unlockExpired(BASE_TIME.plusMillis(100000L))); // lock went away with the node
+    }
+
+    @Test
+    public void mustFailUnresponsiveOnUnknownNode() throws Throwable {
+        Router router = createBackoffRouter();
+
+        expectedException.expect(NodeNotFoundException.class);
+        router.unresponsive(BASE_TIME, NODE_1000);
+    }
+
+    private static Router createBackoffRouter() {
+        SimpleRouteTreeStrategy strategy = new SimpleRouteTreeStrategy(NODE_0000.getId(), 2, 2, 2);
+        BackoffParameters backoffParameters = new BackoffParameters(Duration.ofSeconds(1L), Duration.ofSeconds(4L), 2);
+        return new Router(NODE_0000.getId(), strategy, strategy, backoffParameters);
+    }
+
+    @Test
+    public void mustBulkLoadAndContinueTouchingFromLatestTime() throws Throwable {
+        Map<Node, Instant> nodes = new HashMap<>();
+        nodes.put(NODE_1001, BASE_TIME.plusMillis(2L));
+        nodes.put(NODE_1000, BASE_TIME.plusMillis(1L));
+        nodes.put(NODE_0010, BASE_TIME.plusMillis(3L));
+
+        List<RouterChangeSet> res = fixture.load(nodes);
+        assertEquals(2, res.size());
+        verifyNodes(fixture.find(NODE_1000.getId(), 100, true), NODE_1000, NODE_1001, NODE_0010);
+
+        fixture.touch(BASE_TIME.plusMillis(3L), NODE_1010); // same as latest loaded time, allowed
+        expectedException.expect(BackwardTimeException.class);
+        fixture.touch(BASE_TIME.plusMillis(2L), NODE_1011);
+    }
+
+    @Test
+    public void mustAcceptLateTouchesWithinTolerance() throws Throwable {
+        fixture.setTouchTolerance(Duration.ofMillis(5L));
+
+        fixture.touch(BASE_TIME.plusMillis(10L), NODE_1000);
+        fixture.touch(BASE_TIME.plusMillis(20L), NODE_0010);
+        fixture.touch(BASE_TIME.plusMillis(16L), NODE_1001); // late
+        verifyNodes(fixture.find(NODE_1000.getId(), 100, true), NODE_1000, NODE_1001, NODE_0010);
+
+        expectedException.expect(BackwardTimeException.class);
+        fixture.touch(BASE_TIME.plusMillis(14L), NODE_1010); // tolerance is from latest time, not from last late touch
+    }
+
+    @Test
+    public void mustReportLinkMismatchOnTryTouch() throws Throwable {
+        Node relinked = new Node(NODE_1000.getId(), "8'");
+        fixture.touch(BASE_TIME, NODE_1000);
+
+        RouterResult res = fixture.tryTouch(BASE_TIME.plusMillis(1L), relinked);
+        assertEquals(RouterStatus.LINK_MISMATCH, res.getStatus());
+        assertEquals(null, res.getChangeSet());
+        assertEquals(NODE_1000, fixture.get(NODE_1000.getId()));
+
+        res = fixture.tryTouch(BASE_TIME.plusMillis(2L), NODE_1001);
+        assertEquals(RouterStatus.APPLIED, res.getStatus());
+        verifyActivityChangeSetAdded(res.getChangeSet().getRouteTreeChangeSet().getKBucketChangeSet().getBucketChangeSet(), NODE_1001);
+    }
+
+    @Test
+    public void mustReplaceLinkWhenLinkMismatchPolicyIsReplace() throws Throwable {
+        Router router = createBackoffRouter();
+        router.setLinkMismatchPolicy(LinkMismatchPolicy.REPLACE);
+        Node relinked = new Node(NODE_1000.getId(), "8'");
+        router.touch(BASE_TIME, NODE_1000, Duration.ofMillis(100L));
+        router.touch(BASE_TIME, NODE_1001);
+        router.unresponsive(BASE_TIME, NODE_1000); // locked for 1 second
+
+        RouterChangeSet res = router.touch(BASE_TIME.plusMillis(1L), relinked);
+        verifyActivityChangeSetUpdated(res.getRouteTreeChangeSet().getKBucketChangeSet().getBucketChangeSet(), relinked);
+        assertEquals("8'", router.get(NODE_1000.getId()).getLink());
+        assertEquals(NodeState.LOCKED, router.getState(NODE_1000.getId()));
+        assertEquals(null, router.getSmoothedRtt(NODE_1000.getId())); // measured against old link, so dropped
+
+        assertEquals(RouterStatus.LINK_MISMATCH, router.tryStale(NODE_1000).getStatus()); // old link
+        verifyNodes(router.unlockExpired(BASE_TIME.plusMillis(1000L)), relinked);
+    }
+
+    @Test
+    public void mustReportMissingNodeOnTryStaleAndTryUnresponsive() throws Throwable {
+        fixture.touch(BASE_TIME, NODE_1000);
+        fixture.touch(BASE_TIME, NODE_1001);
+        fixture.touch(BASE_TIME, NODE_1010); // bucket full, goes in to cache
+
+        assertEquals(RouterStatus.NODE_NOT_FOUND, fixture.tryStale(NODE_0100).getStatus());
+        assertEquals(RouterStatus.NODE_NOT_FOUND, fixture.tryStale(NODE_1010).getStatus());
+        assertEquals(RouterStatus.NODE_NOT_FOUND, fixture.tryUnresponsive(BASE_TIME, NODE_0100).getStatus());
+        assertEquals(RouterStatus.LINK_MISMATCH, fixture.tryStale(new Node(NODE_1000.getId(), "8'")).getStatus());
+        assertEquals(NodeState.ACTIVE, fixture.getState(NODE_1000.getId()));
+
+        RouterResult res = fixture.tryStale(NODE_1000);
+        assertEquals(RouterStatus.APPLIED, res.getStatus());
+        verifyActivityChangeSetRemoved(res.getChangeSet().getRouteTreeChangeSet().getKBucketChangeSet().getBucketChangeSet(), NODE_1000);
+        assertEquals(RouterStatus.NODE_NOT_FOUND, fixture.tryStale(NODE_1000).getStatus()); // already evicted
+    }
+
+    @Test
+    public void mustFailToBulkLoadOnceTouched() throws Throwable {
+        fixture.touch(BASE_TIME, NODE_1000);
+
+        expectedException.expect(IllegalStateException.class);
+        fixture.load(new HashMap<>());
+    }
+
+    @Test
+    public void mustFindNodesInDynamicRouter() throws Throwable {
+        SimpleRouteTreeStrategy strategy = new SimpleRouteTreeStrategy(NODE_0000.getId(), 2, 2, 2);
+        BackoffParameters backoffParameters = new BackoffParameters(Duration.ofSeconds(1L), Duration.ofSeconds(4L), 2);
+        Router router = Router.createDynamic(NODE_0000.getId(), strategy, strategy, backoffParameters, 0);
+
+        router.touch(BASE_TIME, NODE_0010);
+        router.touch(BASE_TIME, NODE_0011);
+        router.touch(BASE_TIME, NODE_0001); // splits 0 in to 00 and 01, then 00 in to 000 and 001
+        router.touch(BASE_TIME, NODE_1111);
+        assertEquals(4, router.dumpBucketPrefixes().size());
+
+        verifyNodes(router.find(NODE_0000.getId(), 100, false), NODE_0001, NODE_0010, NODE_0011, NODE_1111);
+    }
+
+    @Test
+    public void mustForgetLockedNodeDroppedBySplitInDynamicRouter() throws Throwable {
+        // top-level k-buckets hold 3 nodes, but the k-buckets they split in to only hold 1
+        BackoffParameters backoffParameters = new BackoffParameters(Duration.ofSeconds(1L), Duration.ofSeconds(4L), 2);
+        Router router = Router.createDynamic(NODE_0000.getId(),
+                prefix -> 2,
+                prefix -> prefix.getBitLength() <= 1 ? new KBucketParameters(3, 1) : new KBucketParameters(1, 1),
+                backoffParameters,
+                0);
+
+        router.touch(BASE_TIME.plusMillis(1L), NODE_0100);
+        router.touch(BASE_TIME.plusMillis(2L), NODE_0101);
+        router.touch(BASE_TIME.plusMillis(3L), NODE_0110);
+        router.unresponsive(BASE_TIME.plusMillis(4L), NODE_0100); // locked for 1 second
+        assertEquals(NodeState.LOCKED, router.getState(NODE_0100.getId()));
+
+        RouterChangeSet res = router.touch(BASE_TIME.plusMillis(5L), NODE_0001); // splits 0, 01 bucket keeps only the latest node
+        verifyActivityChangeSetAdded(res.getRouteTreeChangeSet().getKBucketChangeSet().getBucketChangeSet(), NODE_0001);
+        verifyActivityChangeSetRemoved(res.getRouteTreeChangeSet().getKBucketChangeSet().getBucketChangeSet(), NODE_0100, NODE_0101);
+        assertEquals(null, router.getState(NODE_0100.getId()));
+
+        verifyNodes(router.unlockExpired(BASE_TIME.plusMillis(2000L))); // lock was discarded along with the node, so nothing to unlock
+        verifyNodes(router.find(NODE_0000.getId(), 100, true), NODE_0001, NODE_0110);
+    }
+
+    @Test
+    public void mustPreferLowerRttNodesWithinSameBucket() throws Throwable {
+        fixture.touch(BASE_TIME, NODE_1000, Duration.ofMillis(300L));
+        fixture.touch(BASE_TIME, NODE_1001, Duration.ofMillis(10L));
+        fixture.touch(BASE_TIME, NODE_0100, Duration.ofMillis(1L));
+        fixture.touch(BASE_TIME, NODE_0101); // no rtt
+
+        verifyNodes(fixture.find(NODE_1000.getId(), 100, false), NODE_1000, NODE_1001, NODE_0100, NODE_0101);
+        verifyNodes(fixture.findByProximity(NODE_1000.getId(), 100, false), NODE_1001, NODE_1000, NODE_0100, NODE_0101);
+        verifyNodes(fixture.findByProximity(NODE_1000.getId(), 1, false), NODE_1001); // whole bucket considered, not just closest
+    }
+
+    @Test
+    public void mustSmoothRtt() throws Throwable {
+        fixture.touch(BASE_TIME, NODE_1000, Duration.ofMillis(300L));
+        fixture.touch(BASE_TIME, NODE_1000, Duration.ofMillis(100L));
+        assertEquals(Duration.ofMillis(275L), fixture.getSmoothedRtt(NODE_1000.getId()));
+
+        fixture.touch(BASE_TIME, NODE_1001, Duration.ofMillis(10L));
+        fixture.touch(BASE_TIME, NODE_1010, Duration.ofMillis(10L)); // goes in to cache, not recorded
+        assertEquals(null, fixture.getSmoothedRtt(NODE_1010.getId()));
+    }
+
+    @Test
+    public void mustFindAllAlignedWithInput() throws Throwable {
+        for (Node node : new Node[] { NODE_0001, NODE_0010, NODE_0100, NODE_0111, NODE_1000, NODE_1011, NODE_1100, NODE_1111 }) {
+            fixture.touch(BASE_TIME, node);
+        }
+        fixture.stale(NODE_0111);
+
+        List<Id> ids = new ArrayList<>();
+        for (int i = 0; i < 300; i++) { // enough to split up in to multiple tasks
+            ids.add(Id.createFromLong(i % 16, 4));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<List<Node>> ret = fixture.findAll(ids, 3, false, pool);
+
+            assertEquals(ids.size(), ret.size());
+            for (int i = 0; i < ids.size(); i++) {
+                assertEquals(fixture.find(ids.get(i), 3, false), ret.get(i));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void mustFindAllWithNoIds() throws Throwable {
+        fixture.touch(BASE_TIME, NODE_0001);
+
+        assertEquals(0, fixture.findAll(new ArrayList<>(), 3, false).size());
+    }
+
+    @Test
+    public void mustFailFindAllUpFrontOnBadIdLength() throws Throwable {
+        fixture.touch(BASE_TIME, NODE_0001);
+
+        expectedException.expect(IdLengthMismatchException.class);
+        fixture.findAll(asList(NODE_0001.getId(), Id.createFromLong(0x01L, 5)), 3, false);
+    }
 }
@@ -0,0 +1,102 @@
+package com.offbynull.kademlia;
+
+import java.time.Duration;
+import java.time.Instant;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class TimerWheelTest {
+
+    private static final Instant BASE_TIME = Instant.ofEpochMilli(0L);
+
+    private TimerWheel<String> fixture = new TimerWheel<>(Duration.ofMillis(10L), 8); // 10ms per tick, 8 ticks per rotation
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void mustExpireInDeadlineOrder() {
+        fixture.advance(BASE_TIME);
+        fixture.insert(BASE_TIME.plusMillis(30L), "c");
+        fixture.insert(BASE_TIME.plusMillis(10L), "a");
+        fixture.insert(BASE_TIME.plusMillis(20L), "b");
+
+        assertEquals(asList("a", "b", "c"), fixture.advance(BASE_TIME.plusMillis(30L)));
+        assertEquals(0, fixture.size());
+    }
+
+    @Test
+    public void mustNeverExpireEarly() {
+        fixture.advance(BASE_TIME);
+        fixture.insert(BASE_TIME.plusMillis(15L), "a"); // lands between ticks, must wait for the tick after
+
+        assertEquals(emptyList(), fixture.advance(BASE_TIME.plusMillis(14L)));
+        assertEquals(emptyList(), fixture.advance(BASE_TIME.plusMillis(19L)));
+        assertEquals(asList("a"), fixture.advance(BASE_TIME.plusMillis(20L)));
+    }
+
+    @Test
+    public void mustNotExpireValuesForLaterRotations() {
+        fixture.advance(BASE_TIME);
+        fixture.insert(BASE_TIME.plusMillis(10L), "a");
+        fixture.insert(BASE_TIME.plusMillis(90L), "b"); // 9 ticks out, same slot as "a" but 1 rotation later
+
+        assertEquals(asList("a"), fixture.advance(BASE_TIME.plusMillis(10L)));
+        assertEquals(emptyList(), fixture.advance(BASE_TIME.plusMillis(80L)));
+        assertEquals(asList("b"), fixture.advance(BASE_TIME.plusMillis(90L)));
+    }
+
+    @Test
+    public void mustExpireEverythingWhenJumpingMultipleRotations() {
+        fixture.advance(BASE_TIME);
+        fixture.insert(BASE_TIME.plusMillis(10L), "a");
+        fixture.insert(BASE_TIME.plusMillis(50L), "b");
+        fixture.insert(BASE_TIME.plusMillis(250L), "c");
+        fixture.insert(BASE_TIME.plusMillis(1000L), "d");
+
+        assertEquals(asList("a", "b", "c"), fixture.advance(BASE_TIME.plusMillis(500L)));
+        assertEquals(1, fixture.size());
+    }
+
+    @Test
+    public void mustExpireOverdueValuesOnNextAdvance() {
+        fixture.advance(BASE_TIME.plusMillis(100L));
+        fixture.insert(BASE_TIME.plusMillis(50L), "a"); // deadline already passed
+
+        assertEquals(asList("a"), fixture.advance(BASE_TIME.plusMillis(100L)));
+    }
+
+    @Test
+    public void mustExpireValuesInsertedBeforeFirstAdvance() {
+        fixture.insert(BASE_TIME.plusMillis(10L), "a");
+        fixture.insert(BASE_TIME.plusMillis(1000L), "b");
+
+        assertEquals(asList("a"), fixture.advance(BASE_TIME.plusMillis(20L)));
+    }
+
+    @Test
+    public void mustNotExpireRemovedValues() {
+        fixture.advance(BASE_TIME);
+        fixture.insert(BASE_TIME.plusMillis(10L), "a");
+        fixture.insert(BASE_TIME.plusMillis(10L), "b");
+
+        assertTrue(fixture.remove("a"));
+        assertFalse(fixture.remove("a"));
+        assertFalse(fixture.contains("a"));
+        assertEquals(asList("b"), fixture.advance(BASE_TIME.plusMillis(10L)));
+    }
+
+    @Test
+    public void mustFailWhenTimeGoesBackwards() {
+        fixture.advance(BASE_TIME.plusMillis(10L));
+
+        expectedException.expect(BackwardTimeException.class);
+        fixture.advance(BASE_TIME);
+    }
+}
@@ -0,0 +1,55 @@
+package com.offbynull.kademlia;
+
+import java.time.Instant;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class TimesTest {
+    
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void mustRoundTripInstants() {
+        for (Instant time : new Instant[] {
+                Instant.ofEpochMilli(0L),
+                Instant.ofEpochSecond(1L, 1L),
+                Instant.ofEpochSecond(-1L, 999_999_999L),
+                Instant.parse("2017-06-01T12:34:56.123456789Z") }) {
+            assertEquals(time, Times.toInstant(Times.toNanos(time)));
+        }
+    }
+
+    @Test
+    public void mustMapSentinelsToEndsOfRange() {
+        assertEquals(Long.MIN_VALUE, Times.toNanos(Instant.MIN));
+        assertEquals(Long.MAX_VALUE, Times.toNanos(Instant.MAX));
+        assertEquals(Instant.MIN, Times.toInstant(Long.MIN_VALUE));
+        assertEquals(Instant.MAX, Times.toInstant(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void mustPreserveOrdering() {
+        Instant earlier = Instant.ofEpochSecond(-5L, 500L);
+        Instant later = Instant.ofEpochSecond(-5L, 501L);
+        assertTrue(Times.toNanos(earlier) < Times.toNanos(later));
+        assertTrue(Times.toNanos(Instant.MIN) < Times.toNanos(earlier));
+        assertTrue(Times.toNanos(later) < Times.toNanos(Instant.MAX));
+    }
+
+    @Test
+    public void mustFailToConvertOutOfRangeInstant() {
+        expectedException.expect(IllegalArgumentException.class);
+        Times.toNanos(Instant.parse("3000-01-01T00:00:00Z"));
+    }
+
+    @Test
+    public void mustSaturateOutOfRangeInstant() {
+        assertEquals(Long.MAX_VALUE, Times.toNanosSaturated(Instant.parse("3000-01-01T00:00:00Z")));
+        assertEquals(Long.MIN_VALUE, Times.toNanosSaturated(Instant.parse("1000-01-01T00:00:00Z")));
+        assertEquals(0L, Times.toNanosSaturated(Instant.ofEpochMilli(0L)));
+    }
+}